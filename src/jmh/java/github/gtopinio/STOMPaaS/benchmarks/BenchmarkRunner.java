@@ -0,0 +1,44 @@
+package github.gtopinio.STOMPaaS.benchmarks;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * BenchmarkRunner
+ * This runs the benchmarks once per thread count, with the GC profiler for the allocation rate per operation.
+ * The thread counts and the benchmark filter are read from the jmh.threads and jmh.include system properties,
+ * and the results of each thread count are written to target/jmh-result-{threads}t.json.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("jmh.include", ".*");
+        for (String threads : System.getProperty("jmh.threads", "1,4,16,64").split(",")) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-result-" + threads.trim() + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    /**
+     * This method is used to keep the application logs out of the measurements.
+     */
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+}
@@ -0,0 +1,69 @@
+package github.gtopinio.STOMPaaS.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.gtopinio.STOMPaaS.models.classes.SocketMessage;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.UserType;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMessageBroadcaster;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BroadcastBenchmark
+ * This measures the serialize-and-broadcast path of a SocketMessage up to the broker channel,
+ * next to the SimpMessagingTemplate path it replaced. The broker channel only keeps the last message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    private volatile Message<?> lastMessage;
+    private SocketMessageBroadcaster socketMessageBroadcaster;
+    private SimpMessagingTemplate simpMessagingTemplate;
+    private UUID socketRoomId;
+    private SocketMessage socketMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkRunner.quietLogging();
+        MessageChannel brokerChannel = (message, timeout) -> {
+            this.lastMessage = message;
+            return true;
+        };
+        ObjectMapper objectMapper = new ObjectMapper();
+        this.socketMessageBroadcaster = new SocketMessageBroadcaster(brokerChannel, objectMapper);
+        this.simpMessagingTemplate = new SimpMessagingTemplate(brokerChannel);
+        MappingJackson2MessageConverter messageConverter = new MappingJackson2MessageConverter();
+        messageConverter.setObjectMapper(objectMapper);
+        this.simpMessagingTemplate.setMessageConverter(messageConverter);
+
+        this.socketRoomId = UUID.randomUUID();
+        this.socketMessage = SocketMessage.builder()
+                .content("User benchmark-user has joined the chat")
+                .senderUsername(UserType.SYSTEM.toString())
+                .socketRoomId(this.socketRoomId)
+                .type(MessageType.JOIN)
+                .socketRoomCount(1024)
+                .exIncHubGamingRoomCount(16)
+                .build();
+    }
+
+    @Benchmark
+    public boolean serializeAndBroadcast() {
+        return this.socketMessageBroadcaster.broadcast(this.socketRoomId, this.socketMessage);
+    }
+
+    @Benchmark
+    public void convertAndSend() {
+        this.simpMessagingTemplate.convertAndSend("/topic/" + this.socketRoomId, this.socketMessage);
+    }
+}
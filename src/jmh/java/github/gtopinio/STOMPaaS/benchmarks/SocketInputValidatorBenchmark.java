@@ -0,0 +1,58 @@
+package github.gtopinio.STOMPaaS.benchmarks;
+
+import github.gtopinio.STOMPaaS.models.DTOs.SocketDTO;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.helpers.SocketInputValidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SocketInputValidatorBenchmark
+ * This measures the validation of a valid chat message and of an invalid one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SocketInputValidatorBenchmark {
+    private SocketInputValidator socketInputValidator;
+    private SocketDTO validInput;
+    private SocketDTO invalidInput;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkRunner.quietLogging();
+        this.socketInputValidator = new SocketInputValidator();
+        this.validInput = SocketDTO.builder()
+                .socketMessage("Hello, room!")
+                .senderUsername("benchmark-user")
+                .senderSocketId(UUID.randomUUID())
+                .socketRoomId(UUID.randomUUID())
+                .organizationId(UUID.randomUUID())
+                .categories(List.of("category-1"))
+                .messageType(MessageType.MESSAGE)
+                .isForMultipleUsers(true)
+                .build();
+        this.invalidInput = SocketDTO.builder()
+                .socketMessage("Hello, room!")
+                .senderUsername("")
+                .senderSocketId(UUID.randomUUID())
+                .messageType(MessageType.MESSAGE)
+                .build();
+    }
+
+    @Benchmark
+    public boolean validateValidInput() {
+        return this.socketInputValidator.validate(this.validInput);
+    }
+
+    @Benchmark
+    public boolean validateInvalidInput() {
+        return this.socketInputValidator.validate(this.invalidInput);
+    }
+}
@@ -0,0 +1,87 @@
+package github.gtopinio.STOMPaaS.benchmarks;
+
+import github.gtopinio.STOMPaaS.models.helpers.InMemorySessionRegistry;
+import github.gtopinio.STOMPaaS.models.helpers.SocketSessionMapper;
+import github.gtopinio.STOMPaaS.models.response.SocketMappingResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SocketSessionMapperBenchmark
+ * This measures the join and leave paths of the SocketSessionMapper against a registry of roomCount rooms holding roomSize sockets each.
+ * Every join is followed by the leave of the same socket, so the registry keeps its size for the whole run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SocketSessionMapperBenchmark {
+    @Param({"1", "100", "10000"})
+    public int roomCount;
+    @Param({"1", "100", "1000"})
+    public int roomSize;
+
+    private SocketSessionMapper socketSessionMapper;
+    private UUID[] socketRoomIds;
+    private List<List<String>> socketRoomCategories;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int nextRoomIndex(int roomCount) {
+            return this.random.nextInt(roomCount);
+        }
+
+        UUID nextSocketId() {
+            return new UUID(this.random.nextLong(), this.random.nextLong());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkRunner.quietLogging();
+        this.socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        this.socketRoomIds = new UUID[this.roomCount];
+        this.socketRoomCategories = new ArrayList<>(this.roomCount);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < this.roomCount; i++) {
+            this.socketRoomIds[i] = new UUID(random.nextLong(), random.nextLong());
+            this.socketRoomCategories.add(List.of("category-" + i, "region-" + (i % 8)));
+            for (int j = 0; j < this.roomSize; j++) {
+                this.socketSessionMapper.upsertSocketSession(
+                        new UUID(random.nextLong(), random.nextLong()), null, this.socketRoomCategories.get(i), this.socketRoomIds[i], true);
+            }
+        }
+    }
+
+    @Benchmark
+    public SocketMappingResponse uuidJoinAndLeave(ThreadState threadState) {
+        UUID socketRoomId = this.socketRoomIds[threadState.nextRoomIndex(this.roomCount)];
+        UUID senderSocketId = threadState.nextSocketId();
+        this.socketSessionMapper.upsertSocketSession(senderSocketId, null, Collections.emptyList(), socketRoomId, true);
+        return this.socketSessionMapper.removeSocketSession(senderSocketId, socketRoomId);
+    }
+
+    @Benchmark
+    public SocketMappingResponse categoryJoinAndLeave(ThreadState threadState) {
+        int roomIndex = threadState.nextRoomIndex(this.roomCount);
+        UUID senderSocketId = threadState.nextSocketId();
+        SocketMappingResponse joinResponse = this.socketSessionMapper.upsertSocketSession(
+                senderSocketId, null, this.socketRoomCategories.get(roomIndex), this.socketRoomIds[roomIndex], true);
+        return this.socketSessionMapper.removeSocketSession(senderSocketId, joinResponse.getSocketRoomId());
+    }
+
+    @Benchmark
+    public SocketMappingResponse removeAbsentSocket(ThreadState threadState) {
+        return this.socketSessionMapper.removeSocketSession(threadState.nextSocketId(), this.socketRoomIds[threadState.nextRoomIndex(this.roomCount)]);
+    }
+}
@@ -0,0 +1,57 @@
+package github.gtopinio.STOMPaaS.configs;
+
+import github.gtopinio.STOMPaaS.models.helpers.SessionBackpressureMonitor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * This bean publishes the queue depth of the client channels and the outbound buffers of the WebSocket sessions.
+     * The gauges are read when the metrics are scraped, so they add nothing to the message path.
+     */
+    @Bean
+    public MeterBinder stompChannelMetrics(
+            @Qualifier("clientInboundChannelExecutor") ThreadPoolTaskExecutor clientInboundChannelExecutor,
+            @Qualifier("clientOutboundChannelExecutor") ThreadPoolTaskExecutor clientOutboundChannelExecutor,
+            SessionBackpressureMonitor sessionBackpressureMonitor
+    ) {
+        return meterRegistry -> {
+            bindChannelExecutor(meterRegistry, "inbound", clientInboundChannelExecutor);
+            bindChannelExecutor(meterRegistry, "outbound", clientOutboundChannelExecutor);
+            Gauge.builder("stompaas.websocket.sessions", sessionBackpressureMonitor, SessionBackpressureMonitor::getSessionCount)
+                    .description("Open WebSocket sessions")
+                    .register(meterRegistry);
+            Gauge.builder("stompaas.websocket.buffered", sessionBackpressureMonitor, SessionBackpressureMonitor::getTotalBufferSize)
+                    .description("Outbound bytes waiting to be sent, across every WebSocket session")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        };
+    }
+
+    private static void bindChannelExecutor(MeterRegistry meterRegistry, String channel, ThreadPoolTaskExecutor channelExecutor) {
+        Gauge.builder("stompaas.channel.queue.depth", channelExecutor, MetricsConfig::getQueueDepth)
+                .description("Messages waiting for a client channel thread")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("stompaas.channel.active", channelExecutor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Client channel threads handling a message")
+                .tag("channel", channel)
+                .register(meterRegistry);
+    }
+
+    private static double getQueueDepth(ThreadPoolTaskExecutor channelExecutor) {
+        try {
+            return channelExecutor.getThreadPoolExecutor().getQueue().size();
+        } catch (IllegalStateException e) {
+            // The executor has not been initialized yet, or has been shut down
+            return 0;
+        }
+    }
+}
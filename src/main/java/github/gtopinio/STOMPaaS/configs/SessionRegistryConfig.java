@@ -0,0 +1,39 @@
+package github.gtopinio.STOMPaaS.configs;
+
+import github.gtopinio.STOMPaaS.models.helpers.DistributedSessionRegistry;
+import github.gtopinio.STOMPaaS.models.helpers.InMemorySessionRegistry;
+import github.gtopinio.STOMPaaS.models.helpers.RedisSessionRegistryStore;
+import github.gtopinio.STOMPaaS.models.interfaces.SessionRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@Configuration
+public class SessionRegistryConfig {
+
+    /**
+     * This bean keeps the room registry in this instance only. It is the default.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "stompaas.registry.mode", havingValue = "memory", matchIfMissing = true)
+    public SessionRegistry inMemorySessionRegistry() {
+        return new InMemorySessionRegistry();
+    }
+
+    /**
+     * This bean shares the room registry with every instance connected to the same Redis-compatible server.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "stompaas.registry.mode", havingValue = "redis")
+    public SessionRegistry distributedSessionRegistry(
+            StringRedisTemplate stringRedisTemplate,
+            @Value("${stompaas.registry.flush-interval:50}") long flushInterval,
+            @Value("${stompaas.registry.batch-size:500}") int batchSize,
+            @Value("${stompaas.registry.near-cache-ttl:1000}") long nearCacheTtl,
+            @Value("${stompaas.registry.instance-lease-ttl:10000}") long instanceLeaseTtl
+    ) {
+        return new DistributedSessionRegistry(new RedisSessionRegistryStore(stringRedisTemplate), flushInterval, batchSize, nearCacheTtl, instanceLeaseTtl);
+    }
+}
@@ -0,0 +1,59 @@
+package github.gtopinio.STOMPaaS.configs;
+
+import github.gtopinio.STOMPaaS.models.enums.SlowConsumerPolicy;
+import github.gtopinio.STOMPaaS.models.helpers.BackpressureSubProtocolWebSocketHandler;
+import github.gtopinio.STOMPaaS.models.helpers.SessionBackpressureMonitor;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+/**
+ * WebSocketBrokerConfig
+ * This takes the place of @EnableWebSocketMessageBroker, so the STOMP over WebSocket handler can apply the slow-consumer policy.
+ * The broker itself is still configured by the WebSocketMessageBrokerConfigurer beans, such as the WebSocketConfig.
+ */
+@Configuration(proxyBeanMethods = false)
+public class WebSocketBrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+    private final SessionBackpressureMonitor sessionBackpressureMonitor;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final SocketMetrics socketMetrics;
+    @Value("${stompaas.transport.native.message-size-limit:65536}")
+    private int nativeMessageSizeLimit;
+    @Value("${stompaas.transport.native.send-buffer-size-limit:524288}")
+    private int nativeSendBufferSizeLimit;
+    @Value("${stompaas.transport.native.idle-timeout:0}")
+    private long nativeIdleTimeout;
+
+    public WebSocketBrokerConfig(
+            SessionBackpressureMonitor sessionBackpressureMonitor,
+            @Value("${stompaas.transport.slow-consumer-policy:DISCONNECT}") SlowConsumerPolicy slowConsumerPolicy,
+            SocketMetrics socketMetrics
+    ) {
+        this.sessionBackpressureMonitor = sessionBackpressureMonitor;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.socketMetrics = socketMetrics;
+    }
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel
+    ) {
+        return new BackpressureSubProtocolWebSocketHandler(
+                clientInboundChannel,
+                clientOutboundChannel,
+                this.slowConsumerPolicy,
+                this.sessionBackpressureMonitor,
+                this.socketMetrics,
+                this.nativeMessageSizeLimit,
+                this.nativeSendBufferSizeLimit,
+                this.nativeIdleTimeout
+        );
+    }
+}
@@ -1,17 +1,127 @@
 package github.gtopinio.STOMPaaS.configs;
 
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import github.gtopinio.STOMPaaS.models.helpers.CborSubscriptionTracker;
+import github.gtopinio.STOMPaaS.models.helpers.SessionActivityTracker;
+import github.gtopinio.STOMPaaS.models.helpers.ChannelMetricsInterceptor;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMessageBroadcaster;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.messaging.simp.stomp.StompReactorNettyCodec;
+import org.springframework.messaging.tcp.reactor.ReactorNettyTcpClient;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.tcp.TcpClient;
 
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * WebSocketConfig
+ * This configures the STOMP endpoints, the broker, and the client channels. The message broker itself is enabled by the WebSocketBrokerConfig.
+ */
 @Configuration
-@EnableWebSocketMessageBroker
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    public static final String SIMPLE_BROKER_MODE = "simple";
+    public static final String RELAY_BROKER_MODE = "relay";
+    public static final String POOL_EXECUTION_MODE = "pool";
+    public static final String VIRTUAL_EXECUTION_MODE = "virtual";
+
+    @Value("${stompaas.broker.mode:" + SIMPLE_BROKER_MODE + "}")
+    private String brokerMode;
+    @Value("${stompaas.broker.relay.host:localhost}")
+    private String relayHost;
+    @Value("${stompaas.broker.relay.port:61613}")
+    private int relayPort;
+    @Value("${stompaas.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+    @Value("${stompaas.broker.relay.client-login:guest}")
+    private String relayClientLogin;
+    @Value("${stompaas.broker.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+    @Value("${stompaas.broker.relay.system-login:guest}")
+    private String relaySystemLogin;
+    @Value("${stompaas.broker.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+    @Value("${stompaas.broker.relay.system-heartbeat-send-interval:10000}")
+    private long relaySystemHeartbeatSendInterval;
+    @Value("${stompaas.broker.relay.system-heartbeat-receive-interval:10000}")
+    private long relaySystemHeartbeatReceiveInterval;
+    @Value("${stompaas.broker.relay.max-connections:10000}")
+    private int relayMaxConnections;
+    @Value("${stompaas.broker.relay.pending-acquire-timeout:5000}")
+    private long relayPendingAcquireTimeout;
+    @Value("${stompaas.channel.execution-mode:" + POOL_EXECUTION_MODE + "}")
+    private String channelExecutionMode;
+    @Value("${stompaas.channel.inbound.core-pool-size:16}")
+    private int inboundCorePoolSize;
+    @Value("${stompaas.channel.inbound.max-pool-size:64}")
+    private int inboundMaxPoolSize;
+    @Value("${stompaas.channel.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+    @Value("${stompaas.channel.outbound.core-pool-size:16}")
+    private int outboundCorePoolSize;
+    @Value("${stompaas.channel.outbound.max-pool-size:64}")
+    private int outboundMaxPoolSize;
+    @Value("${stompaas.channel.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+    @Value("${stompaas.channel.keep-alive-seconds:60}")
+    private int channelKeepAliveSeconds;
+    @Value("${stompaas.transport.send-time-limit:10000}")
+    private int transportSendTimeLimit;
+    @Value("${stompaas.transport.send-buffer-size-limit:524288}")
+    private int transportSendBufferSizeLimit;
+    @Value("${stompaas.transport.message-size-limit:65536}")
+    private int transportMessageSizeLimit;
+
+    @Value("${stompaas.heartbeat.send-interval:10000}")
+    private long heartbeatSendInterval;
+    @Value("${stompaas.heartbeat.receive-interval:10000}")
+    private long heartbeatReceiveInterval;
+
+    private final SocketMetrics socketMetrics;
+    private final CborSubscriptionTracker cborSubscriptionTracker;
+    private final SessionActivityTracker sessionActivityTracker;
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    public WebSocketConfig(SocketMetrics socketMetrics, CborSubscriptionTracker cborSubscriptionTracker, SessionActivityTracker sessionActivityTracker) {
+        this.socketMetrics = socketMetrics;
+        this.cborSubscriptionTracker = cborSubscriptionTracker;
+        this.sessionActivityTracker = sessionActivityTracker;
+    }
+
+    /**
+     * This method is used to get the scheduler of the broker, which sends and checks the heartbeats of the simple broker.
+     * It is lazy because the scheduler is created by the broker configuration that this configurer is part of.
+     *
+     * @param messageBrokerTaskScheduler The TaskScheduler of the message broker.
+     */
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler messageBrokerTaskScheduler) {
+        this.messageBrokerTaskScheduler = messageBrokerTaskScheduler;
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry){
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
+        // Plain WebSocket clients skip the SockJS framing; stompaas.transport.native.* tunes their sessions
+        registry.addEndpoint("/ws-native").setAllowedOriginPatterns("*");
     }
 
     @Override
@@ -21,6 +131,129 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // /topic: messages that are broadcast to all subscribing clients
         // /queue: messages that are sent to a specific client
         registry.setApplicationDestinationPrefixes("/app"); // for application destinations
-        registry.enableSimpleBroker("/topic", "/queue"); // for broker destinations
+
+        if (RELAY_BROKER_MODE.equalsIgnoreCase(this.brokerMode)) {
+            this.configureBrokerRelay(registry.enableStompBrokerRelay("/topic", "/queue")); // for broker destinations, shared by every instance
+            log.info("Message broker mode: relay ({}:{})", this.relayHost, this.relayPort);
+        } else {
+            registry.enableSimpleBroker("/topic", "/queue") // for broker destinations
+                    .setHeartbeatValue(new long[] {this.heartbeatSendInterval, this.heartbeatReceiveInterval})
+                    .setTaskScheduler(this.messageBrokerTaskScheduler);
+            log.info("Message broker mode: simple (heartbeats {}/{} ms)", this.heartbeatSendInterval, this.heartbeatReceiveInterval);
+        }
+        registry.configureBrokerChannel().interceptors(new ChannelMetricsInterceptor(this.socketMetrics, true));
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Per-session outbound limits; what happens when the buffer limit is hit depends on stompaas.transport.slow-consumer-policy
+        registration
+                .setSendTimeLimit(this.transportSendTimeLimit)
+                .setSendBufferSizeLimit(this.transportSendBufferSizeLimit)
+                .setMessageSizeLimit(this.transportMessageSizeLimit);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Frames from clients, including the @MessageMapping handlers, run on this pool
+        this.configureChannelExecutor(registration, "stompaas-inbound-", this.inboundCorePoolSize, this.inboundMaxPoolSize, this.inboundQueueCapacity);
+        registration.interceptors(this.cborSubscriptionTracker, this.sessionActivityTracker);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        if (this.cborSubscriptionTracker.isCborEnabled()) {
+            // Only frames sent with content-type:application/cbor are read as CBOR; every other frame still goes to the default Jackson converter
+            MappingJackson2MessageConverter cborMessageConverter = new MappingJackson2MessageConverter(SocketMessageBroadcaster.APPLICATION_CBOR);
+            cborMessageConverter.setObjectMapper(new CBORMapper());
+            cborMessageConverter.setStrictContentTypeMatch(true);
+            messageConverters.add(cborMessageConverter);
+        }
+        return true; // Keep the default converters
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Frames to clients, including every broadcast fan-out, run on this pool
+        this.configureChannelExecutor(registration, "stompaas-outbound-", this.outboundCorePoolSize, this.outboundMaxPoolSize, this.outboundQueueCapacity);
+        registration.interceptors(new ChannelMetricsInterceptor(this.socketMetrics, false));
+    }
+
+    /**
+     * This method is used to configure the executor of a client channel.
+     *
+     * @param registration The ChannelRegistration object to configure.
+     * @param threadNamePrefix The prefix of the executor thread names.
+     * @param corePoolSize The core pool size of the executor.
+     * @param maxPoolSize The max pool size of the executor.
+     * @param queueCapacity The queue capacity of the executor.
+     */
+    private void configureChannelExecutor(
+            ChannelRegistration registration,
+            String threadNamePrefix,
+            int corePoolSize,
+            int maxPoolSize,
+            int queueCapacity
+    ) {
+        registration.taskExecutor(createChannelExecutor(threadNamePrefix, this.channelExecutionMode))
+                .corePoolSize(corePoolSize)
+                .maxPoolSize(maxPoolSize)
+                .queueCapacity(queueCapacity)
+                .keepAliveSeconds(this.channelKeepAliveSeconds);
+    }
+
+    /**
+     * This method is used to create the executor of a client channel.
+     * In the virtual execution mode the pool threads are virtual threads, which needs Java 21 or higher.
+     * The build targets Java 17, so until the baseline moves to Java 21 the mode only takes effect when the jar runs on a newer runtime;
+     * on Java 17 it falls back to platform threads and logs a warning.
+     *
+     * @param threadNamePrefix The prefix of the executor thread names.
+     * @param channelExecutionMode The execution mode, "pool" or "virtual".
+     */
+    static ThreadPoolTaskExecutor createChannelExecutor(String threadNamePrefix, String channelExecutionMode) {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setThreadNamePrefix(threadNamePrefix);
+        if (VIRTUAL_EXECUTION_MODE.equalsIgnoreCase(channelExecutionMode)) {
+            if (Runtime.version().feature() >= 21) {
+                // The pool keeps its queue and sizes, and only its threads are virtual
+                taskExecutor.setThreadFactory(new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory());
+            } else {
+                log.warn("Virtual threads need Java 21 or higher, {} is using platform threads", threadNamePrefix);
+            }
+        }
+        return taskExecutor;
+    }
+
+    /**
+     * This method is used to configure the relay to an external STOMP broker (e.g., RabbitMQ or ActiveMQ Artemis).
+     * Every client STOMP session holds one relay connection, plus one shared system connection,
+     * so the connection pool must be sized for the expected number of sessions per instance.
+     *
+     * @param registration The StompBrokerRelayRegistration object to configure.
+     */
+    private void configureBrokerRelay(StompBrokerRelayRegistration registration) {
+        registration
+                .setRelayHost(this.relayHost)
+                .setRelayPort(this.relayPort)
+                .setClientLogin(this.relayClientLogin)
+                .setClientPasscode(this.relayClientPasscode)
+                .setSystemLogin(this.relaySystemLogin)
+                .setSystemPasscode(this.relaySystemPasscode)
+                .setSystemHeartbeatSendInterval(this.relaySystemHeartbeatSendInterval)
+                .setSystemHeartbeatReceiveInterval(this.relaySystemHeartbeatReceiveInterval);
+
+        if (!this.relayVirtualHost.isEmpty()) {
+            registration.setVirtualHost(this.relayVirtualHost);
+        }
+
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("stompaas-broker-relay")
+                .maxConnections(this.relayMaxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(this.relayPendingAcquireTimeout))
+                .build();
+        TcpClient tcpClient = TcpClient.create(connectionProvider)
+                .host(this.relayHost)
+                .port(this.relayPort);
+        registration.setTcpClient(new ReactorNettyTcpClient<>(tcpClient, new StompReactorNettyCodec()));
     }
 }
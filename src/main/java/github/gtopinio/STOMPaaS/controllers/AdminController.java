@@ -0,0 +1,67 @@
+package github.gtopinio.STOMPaaS.controllers;
+
+import github.gtopinio.STOMPaaS.models.classes.SessionQueueStats;
+import github.gtopinio.STOMPaaS.models.helpers.SessionBackpressureMonitor;
+import github.gtopinio.STOMPaaS.models.helpers.SocketSessionMapper;
+import github.gtopinio.STOMPaaS.models.response.SocketRoomSnapshotPage;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * AdminController
+ * This exposes the operator endpoints that list the rooms and sessions of every tenant.
+ * They have no authentication of their own, so the controller is only registered when stompaas.admin.enabled is true,
+ * which should only be set where /api/admin is reachable by operators alone; otherwise these paths return 404.
+ */
+@RestController
+@RequestMapping("/api/admin")
+@ConditionalOnProperty(name = "stompaas.admin.enabled", havingValue = "true")
+@Tag(name = "STOMPaaS Admin Controller", description = "Operator endpoints for STOMPaaS, disabled unless stompaas.admin.enabled is true")
+public class AdminController {
+    private final SessionBackpressureMonitor sessionBackpressureMonitor;
+    private final SocketSessionMapper socketSessionMapper;
+
+    public AdminController(
+            SessionBackpressureMonitor sessionBackpressureMonitor,
+            SocketSessionMapper socketSessionMapper
+    ) {
+        this.sessionBackpressureMonitor = sessionBackpressureMonitor;
+        this.socketSessionMapper = socketSessionMapper;
+    }
+
+    @Operation(summary = "Get the slowest sessions", description = "Returns the WebSocket sessions with the most buffered outbound data, including the messages dropped by the slow-consumer policy.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Slowest sessions returned successfully",
+                    content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = SessionQueueStats.class))))
+    })
+    @GetMapping("/sessions/slowest")
+    public ResponseEntity<List<SessionQueueStats>> getSlowestSessions(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(this.sessionBackpressureMonitor.getSlowestSessions(limit));
+    }
+
+    @Operation(summary = "Get a page of the socket rooms", description = "Returns one page of the socket rooms with their categories and member counts. Pages are read while users join and leave, so consecutive pages may overlap or miss rooms.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Socket rooms returned successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = SocketRoomSnapshotPage.class)))
+    })
+    @GetMapping("/rooms")
+    public ResponseEntity<SocketRoomSnapshotPage> getSocketRooms(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size
+    ) {
+        return ResponseEntity.ok(this.socketSessionMapper.getSocketRoomSnapshotPage(Math.max(0, page), Math.min(Math.max(1, size), 1000)));
+    }
+}
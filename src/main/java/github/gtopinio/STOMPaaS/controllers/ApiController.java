@@ -1,20 +1,33 @@
 package github.gtopinio.STOMPaaS.controllers;
 
 import github.gtopinio.STOMPaaS.models.DTOs.EmailDTO;
+import github.gtopinio.STOMPaaS.models.classes.SocketMessage;
 import github.gtopinio.STOMPaaS.models.factories.ResponseFactory;
+import github.gtopinio.STOMPaaS.models.helpers.MessageJournal;
+import github.gtopinio.STOMPaaS.models.helpers.SocketSessionMapper;
 import github.gtopinio.STOMPaaS.services.EmailService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 @RestController
@@ -22,9 +35,17 @@ import java.util.concurrent.CompletableFuture;
 @Tag(name = "STOMPaaS API Controller", description = "API Controller for STOMPaaS")
 public class ApiController {
     private final EmailService emailService;
+    private final SocketSessionMapper socketSessionMapper;
+    private final MessageJournal messageJournal;
 
-    public ApiController(EmailService emailService) {
+    public ApiController(
+            EmailService emailService,
+            SocketSessionMapper socketSessionMapper,
+            MessageJournal messageJournal
+    ) {
         this.emailService = emailService;
+        this.socketSessionMapper = socketSessionMapper;
+        this.messageJournal = messageJournal;
     }
 
     @Operation(summary = "Send an email", description = "Sends an email using the provided EmailDTO. This is sent to the email configured in the application.")
@@ -46,4 +67,47 @@ public class ApiController {
             }
         });
     }
-}
\ No newline at end of file
+
+    @Operation(summary = "Get the journaled messages of an organization room", description = "Streams the chat messages of an organization room that were written to the message journal within a time range, as a JSON array. Messages sent in the last few milliseconds may not be journaled yet.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Journaled messages returned successfully",
+                    content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = SocketMessage.class)))),
+            @ApiResponse(responseCode = "404", description = "Socket room belongs to another organization", content = @Content)
+    })
+    @GetMapping("/organizations/{organizationId}/rooms/{socketRoomId}/messages")
+    public ResponseEntity<StreamingResponseBody> getJournaledMessages(
+            @PathVariable UUID organizationId,
+            @PathVariable UUID socketRoomId,
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to
+    ) {
+        // Messages are journaled under the organization of their room, and a live room is only read under its own organization
+        UUID roomOrganizationId = this.socketSessionMapper.getSocketRoomOrganizationId(socketRoomId);
+        if (roomOrganizationId != null && !roomOrganizationId.equals(organizationId)) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody responseBody = outputStream -> {
+            outputStream.write('[');
+            boolean[] isFirst = {true};
+            try {
+                this.messageJournal.read(organizationId, socketRoomId, from, to, payload -> writePayload(outputStream, payload, isFirst));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            outputStream.write(']');
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(responseBody);
+    }
+
+    private static void writePayload(OutputStream outputStream, byte[] payload, boolean[] isFirst) {
+        try {
+            if (!isFirst[0]) {
+                outputStream.write(',');
+            }
+            outputStream.write(payload);
+            isFirst[0] = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
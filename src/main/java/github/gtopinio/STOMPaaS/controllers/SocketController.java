@@ -2,6 +2,7 @@ package github.gtopinio.STOMPaaS.controllers;
 
 import github.gtopinio.STOMPaaS.models.DTOs.SocketDTO;
 import github.gtopinio.STOMPaaS.models.factories.SocketSessionResponseFactory;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMetrics;
 import github.gtopinio.STOMPaaS.models.response.SocketSessionResponse;
 import github.gtopinio.STOMPaaS.services.SocketService;
 import lombok.extern.slf4j.Slf4j;
@@ -14,7 +15,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
-import java.util.concurrent.CompletableFuture;
+import java.util.List;
 
 /**
  * SocketController
@@ -29,12 +30,15 @@ import java.util.concurrent.CompletableFuture;
 @Slf4j
 public class SocketController {
     private final SocketService socketService;
+    private final SocketMetrics socketMetrics;
 
     @Autowired
     public SocketController(
-        SocketService socketService
+        SocketService socketService,
+        SocketMetrics socketMetrics
     ) {
         this.socketService = socketService;
+        this.socketMetrics = socketMetrics;
     }
 
     /**
@@ -44,18 +48,19 @@ public class SocketController {
      * @param headerAccessor The SimpMessageHeaderAccessor object containing the message header.
      */
     @MessageMapping("/stomp.linkSocketSession")
-    public CompletableFuture<SocketSessionResponse> linkSocketSession(
+    public SocketSessionResponse linkSocketSession(
             @Payload SocketDTO input,
             SimpMessageHeaderAccessor headerAccessor
     ) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return this.socketService.linkSocketSession(input, headerAccessor);
-            } catch (Exception e) {
-                log.error("Error linking socket session: {}", e.getMessage());
-                return SocketSessionResponseFactory.createErrorResponse(null, e.getMessage());
-            }
-        });
+        long startTime = System.nanoTime();
+        try {
+            return this.socketService.linkSocketSession(input, headerAccessor);
+        } catch (Exception e) {
+            log.error("Error linking socket session: {}", e.getMessage());
+            return SocketSessionResponseFactory.createErrorResponse(null, e.getMessage());
+        } finally {
+            this.socketMetrics.recordLinkLatency(System.nanoTime() - startTime);
+        }
     }
 
     /**
@@ -64,15 +69,15 @@ public class SocketController {
      * @param event The SessionDisconnectEvent object containing the session disconnect event details.
      */
     @EventListener
-    public CompletableFuture<SocketSessionResponse> unlinkSocketSession(SessionDisconnectEvent event) {
-       return CompletableFuture.supplyAsync(() -> {
-            try {
-                return this.socketService.unlinkSocketSession(event);
-            } catch (Exception e) {
-                log.error("Error unlinking socket session: {}", e.getMessage());
-                return SocketSessionResponseFactory.createErrorResponse(null, e.getMessage());
-            }
-        });
+    public void unlinkSocketSession(SessionDisconnectEvent event) {
+        long startTime = System.nanoTime();
+        try {
+            this.socketService.unlinkSocketSession(event);
+        } catch (Exception e) {
+            log.error("Error unlinking socket session: {}", e.getMessage());
+        } finally {
+            this.socketMetrics.recordUnlinkLatency(System.nanoTime() - startTime);
+        }
     }
 
     /**
@@ -81,16 +86,38 @@ public class SocketController {
      * @param input The SocketDTO object containing the socket message details.
      */
     @MessageMapping("/stomp.sendChatMessage")
-    public CompletableFuture<SocketSessionResponse> sendSocketMessage(
+    public SocketSessionResponse sendSocketMessage(
             @Payload SocketDTO input
     ) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return this.socketService.sendSocketMessage(input);
-            } catch (Exception e) {
-                log.error("Error sending socket message: {}", e.getMessage());
-                return SocketSessionResponseFactory.createErrorResponse(null, e.getMessage());
-            }
-        });
+        long startTime = System.nanoTime();
+        try {
+            return this.socketService.sendSocketMessage(input);
+        } catch (Exception e) {
+            log.error("Error sending socket message: {}", e.getMessage());
+            return SocketSessionResponseFactory.createErrorResponse(null, e.getMessage());
+        } finally {
+            this.socketMetrics.recordSendLatency(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * This controller method is used to send several messages, for one or more socket rooms, in one frame.
+     * The messages of each socket room are broadcast as one BATCH frame.
+     *
+     * @param inputs The SocketDTO objects containing the socket message details.
+     */
+    @MessageMapping("/stomp.sendChatMessages")
+    public SocketSessionResponse sendSocketMessages(
+            @Payload List<SocketDTO> inputs
+    ) {
+        long startTime = System.nanoTime();
+        try {
+            return this.socketService.sendSocketMessages(inputs);
+        } catch (Exception e) {
+            log.error("Error sending socket messages: {}", e.getMessage());
+            return SocketSessionResponseFactory.createErrorResponse(null, e.getMessage());
+        } finally {
+            this.socketMetrics.recordSendBatchLatency(System.nanoTime() - startTime, (inputs != null) ? inputs.size() : 0);
+        }
     }
 }
@@ -23,4 +23,6 @@ public class SocketDTO {
     private List<String> categories; // Can be used for categorizing rooms (i.e., like a tag); Can be null for persistent sessions
     private MessageType messageType;
     private Boolean isForMultipleUsers;
+    private Integer historyCount; // Can be set on a JOIN to be sent the last N messages of the room
+    private Long historySinceSequenceNumber; // Can be set on a JOIN to be sent the messages of the room after this sequence number
 }
@@ -0,0 +1,14 @@
+package github.gtopinio.STOMPaaS.models.classes;
+
+import lombok.*;
+
+@ToString
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RateLimitPolicy {
+    private double messagesPerSecond; // 0 turns the limit off
+    private int burst; // Messages that can be sent at once after being idle
+}
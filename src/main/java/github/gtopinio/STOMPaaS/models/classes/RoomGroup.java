@@ -0,0 +1,31 @@
+package github.gtopinio.STOMPaaS.models.classes;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RoomGroup
+ * This links member rooms to a parent room, e.g., the game rooms of a lobby, and counts the sockets of its member rooms as they change.
+ * The count only covers this instance; a distributed session registry shares it with the other instances as one count per group.
+ */
+@ToString
+@Getter
+public class RoomGroup {
+    private final UUID parentRoomId;
+    private final Set<UUID> memberRoomIds;
+    private final AtomicInteger memberSocketCount; // Sockets in all member rooms together, on this instance
+
+    public RoomGroup(UUID parentRoomId, Set<UUID> memberRoomIds) {
+        this.parentRoomId = parentRoomId;
+        this.memberRoomIds = Set.copyOf(memberRoomIds);
+        this.memberSocketCount = new AtomicInteger();
+    }
+
+    public boolean isParentRoom(UUID socketRoomId) {
+        return this.parentRoomId.equals(socketRoomId);
+    }
+}
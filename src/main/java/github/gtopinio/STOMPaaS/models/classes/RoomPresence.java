@@ -0,0 +1,23 @@
+package github.gtopinio.STOMPaaS.models.classes;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import lombok.*;
+
+import java.util.UUID;
+
+@ToString
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RoomPresence {
+    private MessageType type; // Always PRESENCE, so clients can tell the frame apart from a SocketMessage
+    private UUID socketRoomId;
+    private Integer socketRoomCount;
+    private Integer socketRoomCountDelta; // Change of socketRoomCount since the previous PRESENCE frame of the room
+    private Integer roomGroupCount; // Sockets in the member rooms of the room's group; left out if the room is in no group
+    private Integer exIncHubGamingRoomCount; // Same as on SocketMessage; kept for the existing ExIncHub clients
+}
@@ -0,0 +1,20 @@
+package github.gtopinio.STOMPaaS.models.classes;
+
+import lombok.*;
+
+import java.util.UUID;
+
+@ToString
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RoomUpdate {
+    private UUID socketRoomId;
+    private String instanceId; // Instance whose members are published
+    private String socketRoomCategoryKey; // Canonical category key of the room; null if the room has no categories
+    private Boolean isForMultipleUsers;
+    private UUID organizationId; // Organization of the room; null if the room has no organization
+    private int instanceMemberCount; // Members of the room on this instance when the update is flushed; an absolute count, so publishing it twice is harmless
+}
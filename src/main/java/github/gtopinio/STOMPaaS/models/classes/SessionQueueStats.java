@@ -0,0 +1,19 @@
+package github.gtopinio.STOMPaaS.models.classes;
+
+import github.gtopinio.STOMPaaS.models.enums.SocketTransport;
+import lombok.*;
+
+@ToString
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SessionQueueStats {
+    private String sessionId;
+    private SocketTransport transport;
+    private int queueDepth; // Outbound messages waiting to be sent
+    private int bufferSize; // Bytes of the outbound messages waiting to be sent
+    private long droppedMessageCount; // Outbound messages dropped by the slow-consumer policy
+    private long timeSinceSendStarted; // Milliseconds spent on the send in progress; 0 if no send is in progress
+}
@@ -0,0 +1,18 @@
+package github.gtopinio.STOMPaaS.models.classes;
+
+import lombok.*;
+
+import java.util.UUID;
+
+@ToString
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SharedRoomState {
+    private String socketRoomCategoryKey; // Canonical category key of the room; null if the room has no categories
+    private Boolean isForMultipleUsers;
+    private UUID organizationId; // Organization of the room; null if the room has no organization
+    private long memberCount; // Members of the room across every instance
+}
@@ -15,8 +15,11 @@ public class SocketMessage {
     private String content;
     private String senderUsername;
     private UUID senderSocketId;
+    private UUID receiverSocketId; // Only set on direct messages, which are sent to the receiver alone
     private UUID socketRoomId;
     private MessageType type;
     private Integer socketRoomCount;
-    private Integer exIncHubGamingRoomCount;
+    private Integer roomGroupCount; // Sockets in the member rooms of the room's group; null if the room is in no group
+    private Integer exIncHubGamingRoomCount; // roomGroupCount, or the member count of the default room group for rooms in no group; kept for the existing ExIncHub clients
+    private Long sequenceNumber; // Set on the chat messages kept in the room history; increases by one per message of the room
 }
@@ -2,7 +2,11 @@ package github.gtopinio.STOMPaaS.models.classes;
 
 import lombok.*;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 @ToString
 @Getter
@@ -11,7 +15,17 @@ import java.util.List;
 @NoArgsConstructor
 @Builder
 public class SocketSessionEntry {
-    private List<SocketUser> socketUserList;
+    private Map<UUID, SocketUser> socketUserMap; // Keyed by the sender socket ID; must be a concurrent map
     private List<String> socketRoomCategoryList; // Can be used for categorizing rooms (i.e., like a tag); Can be null for persistent sessions
+    private String socketRoomCategoryKey; // Canonical (order-insensitive, interned) form of the category list; null if the room has no categories
     private Boolean isForMultipleUsers;
-}
\ No newline at end of file
+    private UUID organizationId; // Organization of the JOIN that created the room; only members of the same organization can join, and null means no organization
+
+    /**
+     * This method is used to get a read-only, weakly consistent view of the users in the room.
+     * It does not copy the membership, so it is cheap to iterate even for large rooms.
+     */
+    public Collection<SocketUser> getSocketUserSnapshot() {
+        return Collections.unmodifiableCollection(this.socketUserMap.values());
+    }
+}
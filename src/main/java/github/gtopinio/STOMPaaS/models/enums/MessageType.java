@@ -5,4 +5,7 @@ public enum MessageType {
     LEAVE,
     MESSAGE,
     PING,
+    PRESENCE,
+    HISTORY,
+    BATCH,
 }
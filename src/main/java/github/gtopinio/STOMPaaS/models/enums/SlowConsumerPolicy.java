@@ -0,0 +1,7 @@
+package github.gtopinio.STOMPaaS.models.enums;
+
+public enum SlowConsumerPolicy {
+    DROP_OLDEST,
+    DROP_PING_FIRST,
+    DISCONNECT,
+}
@@ -0,0 +1,11 @@
+package github.gtopinio.STOMPaaS.models.enums;
+
+public enum SocketEventType {
+    ROOM_CREATED,
+    ROOM_JOINED,
+    ROOM_LEFT,
+    ROOM_REMOVED,
+    SESSION_LINKED,
+    SESSION_UNLINKED,
+    MESSAGE_SENT,
+}
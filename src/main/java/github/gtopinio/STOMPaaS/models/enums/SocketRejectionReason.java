@@ -0,0 +1,17 @@
+package github.gtopinio.STOMPaaS.models.enums;
+
+public enum SocketRejectionReason {
+    INVALID_INPUT,
+    INVALID_MESSAGE_TYPE,
+    MESSAGE_TOO_LONG,
+    TOO_MANY_CATEGORIES,
+    CATEGORY_TOO_LONG,
+    SOCKET_ROOM_NOT_FOUND,
+    LINK_FAILED,
+    SESSION_NOT_FOUND,
+    RECEIVER_NOT_FOUND,
+    BATCH_TOO_LARGE,
+    RATE_LIMITED,
+    ORGANIZATION_MISMATCH,
+    ROOM_FULL,
+}
@@ -0,0 +1,8 @@
+package github.gtopinio.STOMPaaS.models.enums;
+
+public enum SocketTransport {
+    NATIVE, // Plain WebSocket, on /ws-native or the raw /ws/websocket URL
+    SOCKJS_WEBSOCKET,
+    SOCKJS_STREAMING, // XHR streaming, EventSource and HTML file
+    SOCKJS_POLLING, // XHR and JSONP polling
+}
@@ -35,4 +35,8 @@ public class SocketSessionResponseFactory extends ResponseFactory {
     public static SocketSessionResponse createConflictResponse(UUID socketRoomId, String message) {
         return SocketSessionResponse.of(socketRoomId, message, HttpStatus.CONFLICT);
     }
+
+    public static SocketSessionResponse createTooManyRequestsResponse(UUID socketRoomId, String message) {
+        return SocketSessionResponse.of(socketRoomId, message, HttpStatus.TOO_MANY_REQUESTS);
+    }
 }
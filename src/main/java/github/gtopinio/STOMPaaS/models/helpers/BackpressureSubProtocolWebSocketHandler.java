@@ -0,0 +1,121 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.enums.SlowConsumerPolicy;
+import github.gtopinio.STOMPaaS.models.enums.SocketTransport;
+import jakarta.websocket.Session;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import org.springframework.web.socket.sockjs.transport.session.PollingSockJsSession;
+import org.springframework.web.socket.sockjs.transport.session.StreamingSockJsSession;
+import org.springframework.web.socket.sockjs.transport.session.WebSocketServerSockJsSession;
+
+/**
+ * BackpressureSubProtocolWebSocketHandler
+ * This is the SubProtocolWebSocketHandler that decorates every session with a BackpressureWebSocketSessionDecorator
+ * instead of the default decorator, which can only close a slow session.
+ * Plain WebSocket sessions get their own message size, buffer size and idle timeout, apart from the SockJS sessions,
+ * and the sessions and messages of every transport are counted separately.
+ */
+public class BackpressureSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+    /**
+     * This session attribute holds the SocketTransport of the session, so the STOMP frames of the session can be told apart by transport.
+     */
+    public static final String TRANSPORT_ATTRIBUTE = "stompaas.transport";
+
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final SessionBackpressureMonitor sessionBackpressureMonitor;
+    private final SocketMetrics socketMetrics;
+    private final int nativeMessageSizeLimit;
+    private final int nativeSendBufferSizeLimit;
+    private final long nativeIdleTimeout;
+
+    public BackpressureSubProtocolWebSocketHandler(
+            MessageChannel clientInboundChannel,
+            SubscribableChannel clientOutboundChannel,
+            SlowConsumerPolicy slowConsumerPolicy,
+            SessionBackpressureMonitor sessionBackpressureMonitor,
+            SocketMetrics socketMetrics,
+            int nativeMessageSizeLimit,
+            int nativeSendBufferSizeLimit,
+            long nativeIdleTimeout
+    ) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.sessionBackpressureMonitor = sessionBackpressureMonitor;
+        this.socketMetrics = socketMetrics;
+        this.nativeMessageSizeLimit = nativeMessageSizeLimit;
+        this.nativeSendBufferSizeLimit = nativeSendBufferSizeLimit;
+        this.nativeIdleTimeout = nativeIdleTimeout;
+    }
+
+    /**
+     * This method is used to get the transport of a session, as passed to the handler by the WebSocket or SockJS service.
+     *
+     * @param session The undecorated WebSocketSession.
+     */
+    public static SocketTransport getTransport(WebSocketSession session) {
+        if (session instanceof WebSocketServerSockJsSession) {
+            return SocketTransport.SOCKJS_WEBSOCKET;
+        } else if (session instanceof StreamingSockJsSession) {
+            return SocketTransport.SOCKJS_STREAMING;
+        } else if (session instanceof PollingSockJsSession) {
+            return SocketTransport.SOCKJS_POLLING;
+        }
+        return SocketTransport.NATIVE;
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        SocketTransport transport = getTransport(session);
+        session.getAttributes().put(TRANSPORT_ATTRIBUTE, transport);
+        int sendBufferSizeLimit = this.getSendBufferSizeLimit();
+        if (transport == SocketTransport.NATIVE) {
+            this.applyNativeSettings(session);
+            sendBufferSizeLimit = this.nativeSendBufferSizeLimit;
+        }
+
+        BackpressureWebSocketSessionDecorator sessionDecorator = new BackpressureWebSocketSessionDecorator(
+                session, this.getSendTimeLimit(), sendBufferSizeLimit, this.slowConsumerPolicy, transport, this.socketMetrics);
+        this.sessionBackpressureMonitor.register(sessionDecorator);
+        this.socketMetrics.recordTransportSessionOpened(transport);
+        return sessionDecorator;
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        this.socketMetrics.recordTransportInboundMessage(getTransport(session), message.getPayloadLength());
+        super.handleMessage(session, message);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        if (this.sessionBackpressureMonitor.unregister(session.getId())) {
+            this.socketMetrics.recordTransportSessionClosed(getTransport(session));
+        }
+        super.afterConnectionClosed(session, closeStatus);
+    }
+
+    /**
+     * This method is used to apply the plain WebSocket limits to a session.
+     * A limit of 0 or less keeps the container default.
+     *
+     * @param session The undecorated plain WebSocketSession.
+     */
+    private void applyNativeSettings(WebSocketSession session) {
+        if (this.nativeMessageSizeLimit > 0) {
+            session.setTextMessageSizeLimit(this.nativeMessageSizeLimit);
+            session.setBinaryMessageSizeLimit(this.nativeMessageSizeLimit);
+        }
+        if (this.nativeIdleTimeout > 0 && session instanceof NativeWebSocketSession nativeWebSocketSession) {
+            Session nativeSession = nativeWebSocketSession.getNativeSession(Session.class);
+            if (nativeSession != null) {
+                nativeSession.setMaxIdleTimeout(this.nativeIdleTimeout);
+            }
+        }
+    }
+}
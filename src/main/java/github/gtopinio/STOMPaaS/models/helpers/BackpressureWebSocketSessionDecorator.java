@@ -0,0 +1,281 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.SessionQueueStats;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.SlowConsumerPolicy;
+import github.gtopinio.STOMPaaS.models.enums.SocketTransport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * BackpressureWebSocketSessionDecorator
+ * This buffers the outbound messages of one session, so a slow client never blocks the threads sending to other clients.
+ * Only one thread writes to the session at a time; the other threads add their messages to the buffer and move on.
+ * When a send takes longer than the send time limit the session is closed, and when the buffer grows past its limit
+ * the SlowConsumerPolicy decides between dropping buffered messages and closing the session.
+ * CBOR frames are sent as binary WebSocket messages, since the STOMP handler only does so for application/octet-stream.
+ */
+@Slf4j
+public class BackpressureWebSocketSessionDecorator extends WebSocketSessionDecorator {
+    private static final String PING_HEADER = "\n" + SocketMessageBroadcaster.MESSAGE_TYPE_HEADER + ":" + MessageType.PING + "\n";
+    private static final String CBOR_CONTENT_TYPE_HEADER = "\ncontent-type:" + SocketMessageBroadcaster.APPLICATION_CBOR + "\n";
+
+    private final int sendTimeLimit;
+    private final int bufferSizeLimit;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final SocketTransport transport;
+    private final SocketMetrics socketMetrics; // Null if the outbound messages are not counted
+    private final boolean isBinaryCapable;
+    private final Deque<WebSocketMessage<?>> buffer;
+    private final AtomicInteger bufferSize;
+    private final AtomicInteger queueDepth;
+    private final AtomicLong droppedMessageCount;
+    private final Lock flushLock;
+    private final Lock closeLock;
+    private volatile long sendStartTime;
+    private volatile boolean limitExceeded;
+    private volatile boolean closeInProgress;
+
+    public BackpressureWebSocketSessionDecorator(
+            WebSocketSession delegate,
+            int sendTimeLimit,
+            int bufferSizeLimit,
+            SlowConsumerPolicy slowConsumerPolicy
+    ) {
+        this(delegate, sendTimeLimit, bufferSizeLimit, slowConsumerPolicy, BackpressureSubProtocolWebSocketHandler.getTransport(delegate), null);
+    }
+
+    public BackpressureWebSocketSessionDecorator(
+            WebSocketSession delegate,
+            int sendTimeLimit,
+            int bufferSizeLimit,
+            SlowConsumerPolicy slowConsumerPolicy,
+            SocketTransport transport,
+            SocketMetrics socketMetrics
+    ) {
+        super(delegate);
+        this.sendTimeLimit = sendTimeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.transport = transport;
+        this.socketMetrics = socketMetrics;
+        // SockJS only carries text frames
+        this.isBinaryCapable = (transport == SocketTransport.NATIVE);
+        this.buffer = new ConcurrentLinkedDeque<>();
+        this.bufferSize = new AtomicInteger();
+        this.queueDepth = new AtomicInteger();
+        this.droppedMessageCount = new AtomicLong();
+        this.flushLock = new ReentrantLock();
+        this.closeLock = new ReentrantLock();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (this.shouldNotSend()) {
+            return;
+        }
+        if (this.isBinaryCapable && isCborMessage(message)) {
+            message = new BinaryMessage(((TextMessage) message).asBytes());
+        }
+
+        if (this.socketMetrics != null) {
+            this.socketMetrics.recordTransportOutboundMessage(this.transport, message.getPayloadLength());
+        }
+
+        this.buffer.add(message);
+        this.bufferSize.addAndGet(message.getPayloadLength());
+        this.queueDepth.incrementAndGet();
+
+        do {
+            if (!this.tryFlushMessageBuffer()) {
+                this.checkSessionLimits();
+                break;
+            }
+        } while (!this.buffer.isEmpty() && !this.shouldNotSend());
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        this.closeLock.lock();
+        try {
+            if (this.closeInProgress) {
+                return;
+            }
+            this.closeInProgress = true;
+            super.close(this.limitExceeded ? CloseStatus.SESSION_NOT_RELIABLE : status);
+        } finally {
+            this.closeLock.unlock();
+        }
+    }
+
+    public SocketTransport getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * This method is used to get the current outbound queue of the session.
+     */
+    public SessionQueueStats getSessionQueueStats() {
+        return SessionQueueStats.builder()
+                .sessionId(this.getId())
+                .transport(this.transport)
+                .queueDepth(this.queueDepth.get())
+                .bufferSize(this.bufferSize.get())
+                .droppedMessageCount(this.droppedMessageCount.get())
+                .timeSinceSendStarted(this.getTimeSinceSendStarted())
+                .build();
+    }
+
+    /**
+     * This method is used to send the buffered messages if no other thread is sending.
+     * If the return value is false, another thread holds the session and will send the buffered messages.
+     */
+    private boolean tryFlushMessageBuffer() throws IOException {
+        if (!this.flushLock.tryLock()) {
+            return false;
+        }
+        try {
+            while (true) {
+                WebSocketMessage<?> message = this.buffer.poll();
+                if (message == null || this.shouldNotSend()) {
+                    break;
+                }
+                this.bufferSize.addAndGet(-message.getPayloadLength());
+                this.queueDepth.decrementAndGet();
+                this.sendStartTime = System.currentTimeMillis();
+                this.getDelegate().sendMessage(message);
+                this.sendStartTime = 0;
+            }
+        } finally {
+            this.sendStartTime = 0;
+            this.flushLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * This method is used to apply the send time limit and the buffer size limit while another thread is sending.
+     */
+    private void checkSessionLimits() {
+        if (this.shouldNotSend() || !this.closeLock.tryLock()) {
+            return;
+        }
+        try {
+            if (this.getTimeSinceSendStarted() > this.sendTimeLimit) {
+                this.limitExceeded("Send time " + this.getTimeSinceSendStarted() + " (ms) for session '" + this.getId() + "' exceeded the allowed limit " + this.sendTimeLimit);
+            } else if (this.bufferSize.get() > this.bufferSizeLimit) {
+                switch (this.slowConsumerPolicy) {
+                    case DISCONNECT -> this.limitExceeded("Buffer size " + this.bufferSize.get() + " bytes for session '" + this.getId() + "' exceeded the allowed limit " + this.bufferSizeLimit);
+                    case DROP_PING_FIRST -> {
+                        this.dropPingMessages();
+                        this.dropOldestMessages();
+                    }
+                    case DROP_OLDEST -> this.dropOldestMessages();
+                }
+            }
+        } finally {
+            this.closeLock.unlock();
+        }
+    }
+
+    /**
+     * This method is used to drop the buffered PING messages, oldest first, until the buffer is within its limit.
+     */
+    private void dropPingMessages() {
+        List<WebSocketMessage<?>> pingMessages = new ArrayList<>();
+        for (WebSocketMessage<?> message : this.buffer) {
+            if (isPingMessage(message)) {
+                pingMessages.add(message);
+            }
+        }
+        for (WebSocketMessage<?> pingMessage : pingMessages) {
+            if (this.bufferSize.get() <= this.bufferSizeLimit) {
+                break;
+            }
+            // The message may have been sent in the meantime
+            if (this.buffer.removeFirstOccurrence(pingMessage)) {
+                this.onMessageDropped(pingMessage);
+            }
+        }
+    }
+
+    /**
+     * This method is used to drop the oldest buffered messages until the buffer is within its limit.
+     */
+    private void dropOldestMessages() {
+        while (this.bufferSize.get() > this.bufferSizeLimit) {
+            WebSocketMessage<?> message = this.buffer.poll();
+            if (message == null) {
+                break;
+            }
+            this.onMessageDropped(message);
+        }
+    }
+
+    private void onMessageDropped(WebSocketMessage<?> message) {
+        this.bufferSize.addAndGet(-message.getPayloadLength());
+        this.queueDepth.decrementAndGet();
+        if (this.droppedMessageCount.incrementAndGet() % 1000 == 1) {
+            log.warn("Dropping messages for slow session {}: {} dropped so far", this.getId(), this.droppedMessageCount.get());
+        }
+    }
+
+    private void limitExceeded(String reason) {
+        this.limitExceeded = true;
+        throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private long getTimeSinceSendStarted() {
+        long start = this.sendStartTime;
+        return (start > 0) ? (System.currentTimeMillis() - start) : 0;
+    }
+
+    private boolean shouldNotSend() {
+        return this.limitExceeded || this.closeInProgress;
+    }
+
+    /**
+     * This method is used to check if an outbound STOMP frame carries a PING message.
+     * The message type is read from the native header set by the SocketMessageBroadcaster, within the frame headers only.
+     *
+     * @param message The outbound WebSocketMessage.
+     */
+    static boolean isPingMessage(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage textMessage)) {
+            return false;
+        }
+        String payload = textMessage.getPayload();
+        int headersEnd = payload.indexOf("\n\n");
+        return headersEnd >= 0 && payload.lastIndexOf(PING_HEADER, headersEnd) >= 0;
+    }
+
+    /**
+     * This method is used to check if an outbound STOMP text frame carries a CBOR payload.
+     *
+     * @param message The outbound WebSocketMessage.
+     */
+    static boolean isCborMessage(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage textMessage)) {
+            return false;
+        }
+        String payload = textMessage.getPayload();
+        int headersEnd = payload.indexOf("\n\n");
+        return headersEnd >= 0 && payload.lastIndexOf(CBOR_CONTENT_TYPE_HEADER, headersEnd) >= 0;
+    }
+}
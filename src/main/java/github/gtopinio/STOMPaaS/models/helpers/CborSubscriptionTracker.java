@@ -0,0 +1,168 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.configs.WebSocketConfig;
+import github.gtopinio.STOMPaaS.models.enums.SocketTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CborSubscriptionTracker
+ * This counts the subscriptions to the CBOR sibling destinations of the socket rooms, e.g., /topic/{socketRoomId}.cbor,
+ * so a room message is only encoded as CBOR when some client asked for it.
+ * It sees the SUBSCRIBE, UNSUBSCRIBE and DISCONNECT frames of the clients connected to this instance; with the broker relay
+ * the subscriptions of the other instances are not visible, so every CBOR destination is treated as subscribed.
+ * SockJS only carries text frames, which would mangle the CBOR bytes, so SockJS sessions cannot subscribe to CBOR destinations.
+ */
+@Service
+public class CborSubscriptionTracker implements ChannelInterceptor {
+    public static final String CBOR_DESTINATION_SUFFIX = ".cbor";
+
+    private final boolean isCborEnabled;
+    private final boolean isRelayMode;
+    /**
+     * This map is used to store the CBOR destinations of each STOMP session, keyed by the subscription ID.
+     */
+    private final Map<String, Map<String, String>> sessionSubscriptions;
+    /**
+     * This map is used to store the number of subscriptions to each CBOR destination.
+     */
+    private final Map<String, Integer> destinationSubscriptionCounts;
+
+    public CborSubscriptionTracker(
+            @Value("${stompaas.codec.cbor.enabled:true}") boolean isCborEnabled,
+            @Value("${stompaas.broker.mode:" + WebSocketConfig.SIMPLE_BROKER_MODE + "}") String brokerMode
+    ) {
+        this.isCborEnabled = isCborEnabled;
+        this.isRelayMode = WebSocketConfig.RELAY_BROKER_MODE.equalsIgnoreCase(brokerMode);
+        this.sessionSubscriptions = new ConcurrentHashMap<>();
+        this.destinationSubscriptionCounts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * This method is used to check if the CBOR codec is enabled.
+     */
+    public boolean isCborEnabled() {
+        return this.isCborEnabled;
+    }
+
+    /**
+     * This method is used to check if a CBOR destination has any subscriber.
+     *
+     * @param cborDestination The CBOR sibling destination of a socket room.
+     */
+    public boolean hasSubscribers(String cborDestination) {
+        if (!this.isCborEnabled) {
+            return false;
+        }
+        return this.isRelayMode || this.destinationSubscriptionCounts.containsKey(cborDestination);
+    }
+
+    /**
+     * This method is used to check if any CBOR destination has a subscriber, before the destination of a room is built.
+     */
+    public boolean hasAnySubscribers() {
+        return this.isCborEnabled && (this.isRelayMode || !this.destinationSubscriptionCounts.isEmpty());
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!this.isCborEnabled) {
+            return message;
+        }
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (messageType == SimpMessageType.SUBSCRIBE && isCborDestination(SimpMessageHeaderAccessor.getDestination(headers))) {
+            Map<String, Object> sessionAttributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+            Object transport = (sessionAttributes != null) ? sessionAttributes.get(BackpressureSubProtocolWebSocketHandler.TRANSPORT_ATTRIBUTE) : null;
+            if (transport != null && transport != SocketTransport.NATIVE) {
+                throw new MessageDeliveryException(message, "CBOR destinations need a plain WebSocket session, e.g., on /ws-native");
+            }
+        }
+        if (this.isRelayMode) {
+            return message;
+        }
+        if (messageType == SimpMessageType.SUBSCRIBE) {
+            this.subscribe(SimpMessageHeaderAccessor.getSessionId(headers), SimpMessageHeaderAccessor.getSubscriptionId(headers), SimpMessageHeaderAccessor.getDestination(headers));
+        } else if (messageType == SimpMessageType.UNSUBSCRIBE) {
+            this.unsubscribe(SimpMessageHeaderAccessor.getSessionId(headers), SimpMessageHeaderAccessor.getSubscriptionId(headers));
+        } else if (messageType == SimpMessageType.DISCONNECT) {
+            this.removeSession(SimpMessageHeaderAccessor.getSessionId(headers));
+        }
+        return message;
+    }
+
+    /**
+     * This method is used to count a subscription if it is to a CBOR destination.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     * @param subscriptionId The ID of the subscription within the session.
+     * @param destination The destination of the subscription.
+     */
+    public void subscribe(String stompSessionId, String subscriptionId, String destination) {
+        if (stompSessionId == null || subscriptionId == null || !isCborDestination(destination)) {
+            return;
+        }
+        String previousDestination = this.sessionSubscriptions
+                .computeIfAbsent(stompSessionId, sessionId -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        if (previousDestination != null) {
+            this.decrement(previousDestination);
+        }
+        this.destinationSubscriptionCounts.merge(destination, 1, Integer::sum);
+    }
+
+    /**
+     * This method is used to remove a subscription of a STOMP session.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     * @param subscriptionId The ID of the subscription within the session.
+     */
+    public void unsubscribe(String stompSessionId, String subscriptionId) {
+        if (stompSessionId == null || subscriptionId == null) {
+            return;
+        }
+        Map<String, String> subscriptions = this.sessionSubscriptions.get(stompSessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            this.decrement(destination);
+        }
+    }
+
+    /**
+     * This method is used to remove every subscription of a disconnected STOMP session.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     */
+    public void removeSession(String stompSessionId) {
+        if (stompSessionId == null) {
+            return;
+        }
+        Map<String, String> subscriptions = this.sessionSubscriptions.remove(stompSessionId);
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::decrement);
+        }
+    }
+
+    private static boolean isCborDestination(String destination) {
+        return destination != null
+                && destination.startsWith(SocketMessageBroadcaster.TOPIC_DESTINATION_PREFIX)
+                && destination.endsWith(CBOR_DESTINATION_SUFFIX);
+    }
+
+    private void decrement(String destination) {
+        this.destinationSubscriptionCounts.computeIfPresent(destination, (key, count) -> (count > 1) ? count - 1 : null);
+    }
+}
@@ -0,0 +1,39 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+/**
+ * ChannelMetricsInterceptor
+ * This records the SocketMetrics of the broker channel and the client outbound channel.
+ * The simple broker sends the client messages of a broker message on the thread that sent the broker message,
+ * so the messages counted on the client outbound channel in between are the fan-out of that broker message.
+ */
+public class ChannelMetricsInterceptor implements ChannelInterceptor {
+    private final SocketMetrics socketMetrics;
+    private final boolean isBrokerChannel;
+
+    public ChannelMetricsInterceptor(SocketMetrics socketMetrics, boolean isBrokerChannel) {
+        this.socketMetrics = socketMetrics;
+        this.isBrokerChannel = isBrokerChannel;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (this.isBrokerChannel) {
+            this.socketMetrics.startFanOut();
+        } else {
+            this.socketMetrics.recordOutboundMessage((message.getPayload() instanceof byte[] payload) ? payload.length : 0);
+        }
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, @Nullable Exception ex) {
+        if (this.isBrokerChannel) {
+            this.socketMetrics.endFanOut();
+        }
+    }
+}
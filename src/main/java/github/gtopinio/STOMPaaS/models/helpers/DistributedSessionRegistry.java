@@ -0,0 +1,527 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.RoomGroup;
+import github.gtopinio.STOMPaaS.models.classes.RoomUpdate;
+import github.gtopinio.STOMPaaS.models.classes.SharedRoomState;
+import github.gtopinio.STOMPaaS.models.classes.SocketSessionEntry;
+import github.gtopinio.STOMPaaS.models.classes.SocketUser;
+import github.gtopinio.STOMPaaS.models.interfaces.SessionRegistryStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * DistributedSessionRegistry
+ * This is a SessionRegistry shared by several instances through a SessionRegistryStore.
+ * The sockets connected to this instance are kept in the in-memory registry it extends, which also acts as the near-cache.
+ * Membership changes are coalesced per room and written behind in batches, so joins and messages never wait on the store;
+ * each write carries the absolute member count of the room on this instance, so a retried or repeated write cannot skew the shared count.
+ * Rooms and categories owned by other instances are cached for nearCacheTtl milliseconds; only JOINs on uncached rooms reach the store.
+ * Room group counts are written behind the same way, as one absolute count per group and instance, so a group count is never summed from its member rooms.
+ * Shared counts are eventually consistent: they lag behind by up to one flush interval.
+ * Members are recorded under the ID of this instance, whose lease is renewed every third of instanceLeaseTtl;
+ * the members of an instance that stops renewing its lease, e.g., after a crash, are removed by the next sweep of any instance.
+ * An instance that finds its lease had run out, e.g., after a long GC pause, publishes the counts of all its rooms again.
+ */
+@Slf4j
+public class DistributedSessionRegistry extends InMemorySessionRegistry implements AutoCloseable {
+    public static final long DEFAULT_INSTANCE_LEASE_TTL = 10_000;
+    private final SessionRegistryStore sessionRegistryStore;
+    private final String instanceId;
+    private final long instanceLeaseTtl;
+    private final long nearCacheTtl;
+    private final int batchSize;
+    /**
+     * This map is used to coalesce the rooms whose membership changed until the next flush.
+     */
+    private final Map<UUID, RoomUpdate> pendingRoomUpdates;
+    /**
+     * This map is used to coalesce the room groups whose member count changed until the next flush.
+     * The key is the UUID of the parent room.
+     */
+    private final Map<UUID, RoomGroup> pendingRoomGroups;
+    /**
+     * This map is used to store every room group counted on this instance, so their counts can be refreshed and published again.
+     */
+    private final Map<UUID, RoomGroup> localRoomGroups;
+    private final Map<UUID, CachedRoom> sharedRoomCache;
+    private final Map<String, CachedRoomIds> sharedCategoryCache;
+    private final Map<UUID, CachedRoomGroupCount> sharedRoomGroupCache;
+    private final ScheduledExecutorService flushScheduler;
+    private volatile long lastRefreshSweep;
+
+    public DistributedSessionRegistry(
+            SessionRegistryStore sessionRegistryStore,
+            long flushInterval,
+            int batchSize,
+            long nearCacheTtl
+    ) {
+        this(sessionRegistryStore, flushInterval, batchSize, nearCacheTtl, DEFAULT_INSTANCE_LEASE_TTL);
+    }
+
+    public DistributedSessionRegistry(
+            SessionRegistryStore sessionRegistryStore,
+            long flushInterval,
+            int batchSize,
+            long nearCacheTtl,
+            long instanceLeaseTtl
+    ) {
+        this.sessionRegistryStore = sessionRegistryStore;
+        this.instanceId = UUID.randomUUID().toString();
+        this.instanceLeaseTtl = Math.max(3, instanceLeaseTtl);
+        this.nearCacheTtl = nearCacheTtl;
+        this.batchSize = Math.max(1, batchSize);
+        this.pendingRoomUpdates = new ConcurrentHashMap<>();
+        this.sharedRoomCache = new ConcurrentHashMap<>();
+        this.sharedCategoryCache = new ConcurrentHashMap<>();
+        this.pendingRoomGroups = new ConcurrentHashMap<>();
+        this.localRoomGroups = new ConcurrentHashMap<>();
+        this.sharedRoomGroupCache = new ConcurrentHashMap<>();
+        this.lastRefreshSweep = System.currentTimeMillis();
+
+        if (flushInterval > 0) {
+            this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stompaas-registry-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // The lease is renewed before the first flush, so a sweep never finds members of this instance without a lease
+            this.flushScheduler.scheduleWithFixedDelay(this::renewInstanceLeaseSafely, 0, this.instanceLeaseTtl / 3, TimeUnit.MILLISECONDS);
+            this.flushScheduler.scheduleWithFixedDelay(this::flushSafely, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+            this.flushScheduler.scheduleWithFixedDelay(this::sweepDeadInstancesSafely, this.instanceLeaseTtl, this.instanceLeaseTtl, TimeUnit.MILLISECONDS);
+        } else {
+            this.flushScheduler = null;
+        }
+    }
+
+    @Override
+    public boolean containsRoom(UUID socketRoomId) {
+        return super.containsRoom(socketRoomId) || this.getCachedRoom(socketRoomId) != null;
+    }
+
+    @Override
+    public SocketSessionEntry computeRoom(UUID socketRoomId, BiFunction<UUID, SocketSessionEntry, SocketSessionEntry> remappingFunction) {
+        return this.computeSharedRoom(socketRoomId, remappingFunction, true);
+    }
+
+    @Override
+    public SocketSessionEntry computeRoomIfPresent(UUID socketRoomId, BiFunction<UUID, SocketSessionEntry, SocketSessionEntry> remappingFunction) {
+        return this.computeSharedRoom(socketRoomId, remappingFunction, false);
+    }
+
+    @Override
+    public boolean addSocketToRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry, SocketUser socketUser) {
+        if (!super.addSocketToRoom(socketRoomId, socketSessionEntry, socketUser)) {
+            return false;
+        }
+        this.enqueueRoomUpdate(socketRoomId, socketSessionEntry);
+        return true;
+    }
+
+    @Override
+    public boolean removeSocketFromRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry, UUID senderSocketId) {
+        if (!super.removeSocketFromRoom(socketRoomId, socketSessionEntry, senderSocketId)) {
+            return false;
+        }
+        this.enqueueRoomUpdate(socketRoomId, socketSessionEntry);
+        return true;
+    }
+
+    @Override
+    public int getRoomSize(UUID socketRoomId, SocketSessionEntry socketSessionEntry) {
+        CachedRoom cachedRoom = this.sharedRoomCache.get(socketRoomId);
+        long remoteMemberCount = (cachedRoom != null) ? cachedRoom.remoteMemberCount : 0;
+        return (int) (super.getRoomSize(socketRoomId, socketSessionEntry) + remoteMemberCount);
+    }
+
+    @Override
+    public int getRoomSize(UUID socketRoomId) {
+        SocketSessionEntry socketSessionEntry = this.getRoom(socketRoomId);
+        if (socketSessionEntry != null) {
+            return this.getRoomSize(socketRoomId, socketSessionEntry);
+        }
+        // A room with no members on this instance is counted from the shared state, through the near cache
+        SharedRoomState sharedRoomState = this.loadSharedRoomState(socketRoomId);
+        return (sharedRoomState != null) ? (int) sharedRoomState.getMemberCount() : 0;
+    }
+
+    @Override
+    public void updateRoomGroupMemberCount(RoomGroup roomGroup, int memberDelta) {
+        super.updateRoomGroupMemberCount(roomGroup, memberDelta);
+        this.localRoomGroups.putIfAbsent(roomGroup.getParentRoomId(), roomGroup);
+        this.pendingRoomGroups.putIfAbsent(roomGroup.getParentRoomId(), roomGroup);
+    }
+
+    @Override
+    public int getRoomGroupMemberCount(RoomGroup roomGroup) {
+        UUID parentRoomId = roomGroup.getParentRoomId();
+        CachedRoomGroupCount cachedCount = this.sharedRoomGroupCache.get(parentRoomId);
+        if (cachedCount == null || this.isExpired(cachedCount.refreshedAt)) {
+            try {
+                cachedCount = new CachedRoomGroupCount(this.sessionRegistryStore.getRemoteRoomGroupMemberCount(parentRoomId, this.instanceId), System.currentTimeMillis());
+                this.sharedRoomGroupCache.put(parentRoomId, cachedCount);
+            } catch (Exception e) {
+                log.error("Loading the shared room group count failed: {}", e.getMessage());
+            }
+        }
+        long remoteMemberCount = (cachedCount != null) ? cachedCount.remoteMemberCount : 0;
+        return (int) (super.getRoomGroupMemberCount(roomGroup) + remoteMemberCount);
+    }
+
+    @Override
+    public Set<UUID> findRoomsByCategoryKey(String categoryKey) {
+        Set<UUID> localRoomIds = super.findRoomsByCategoryKey(categoryKey);
+        if (categoryKey == null) {
+            return localRoomIds;
+        }
+
+        CachedRoomIds cachedRoomIds = this.sharedCategoryCache.get(categoryKey);
+        if (cachedRoomIds == null || this.isExpired(cachedRoomIds.refreshedAt)) {
+            try {
+                cachedRoomIds = new CachedRoomIds(this.sessionRegistryStore.findRoomsByCategoryKey(categoryKey), System.currentTimeMillis());
+                this.sharedCategoryCache.put(categoryKey, cachedRoomIds);
+            } catch (Exception e) {
+                log.error("Loading shared category rooms failed: {}", e.getMessage());
+                return localRoomIds;
+            }
+        }
+        if (cachedRoomIds.roomIds.isEmpty()) {
+            return localRoomIds;
+        }
+
+        // Local rooms come first so a JOIN prefers rooms that are already served by this instance
+        Set<UUID> candidateRoomIds = new LinkedHashSet<>(localRoomIds);
+        candidateRoomIds.addAll(cachedRoomIds.roomIds);
+        return candidateRoomIds;
+    }
+
+    /**
+     * This method is used to write the pending membership changes to the store and refresh the near-cache.
+     */
+    public synchronized void flush() {
+        List<RoomUpdate> roomUpdates = new ArrayList<>(this.batchSize);
+        for (UUID socketRoomId : this.pendingRoomUpdates.keySet()) {
+            RoomUpdate roomUpdate = this.pendingRoomUpdates.remove(socketRoomId);
+            if (roomUpdate != null) {
+                roomUpdates.add(roomUpdate);
+            }
+            if (roomUpdates.size() >= this.batchSize) {
+                this.applyRoomUpdates(roomUpdates);
+                roomUpdates = new ArrayList<>(this.batchSize);
+            }
+        }
+
+        Map<UUID, RoomGroup> roomGroups = new HashMap<>();
+        for (UUID parentRoomId : this.pendingRoomGroups.keySet()) {
+            RoomGroup roomGroup = this.pendingRoomGroups.remove(parentRoomId);
+            if (roomGroup != null) {
+                roomGroups.put(parentRoomId, roomGroup);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - this.lastRefreshSweep >= this.nearCacheTtl) {
+            // Publishing the unchanged count of a local room refreshes its shared count
+            this.lastRefreshSweep = now;
+            for (Map.Entry<UUID, SocketSessionEntry> room : this.getRooms().entrySet()) {
+                CachedRoom cachedRoom = this.sharedRoomCache.get(room.getKey());
+                if (cachedRoom == null || this.isExpired(cachedRoom.refreshedAt)) {
+                    roomUpdates.add(this.createRoomUpdate(room.getKey(), room.getValue()));
+                }
+                if (roomUpdates.size() >= this.batchSize) {
+                    this.applyRoomUpdates(roomUpdates);
+                    roomUpdates = new ArrayList<>(this.batchSize);
+                }
+            }
+            for (RoomGroup roomGroup : this.localRoomGroups.values()) {
+                CachedRoomGroupCount cachedCount = this.sharedRoomGroupCache.get(roomGroup.getParentRoomId());
+                if (cachedCount == null || this.isExpired(cachedCount.refreshedAt)) {
+                    roomGroups.putIfAbsent(roomGroup.getParentRoomId(), roomGroup);
+                }
+            }
+        }
+
+        if (!roomUpdates.isEmpty()) {
+            this.applyRoomUpdates(roomUpdates);
+        }
+        if (!roomGroups.isEmpty()) {
+            this.applyRoomGroupUpdates(roomGroups.values());
+        }
+    }
+
+    public String getInstanceId() {
+        return this.instanceId;
+    }
+
+    /**
+     * This method is used to renew the lease of this instance, which keeps its members in the shared counts.
+     * If the lease had run out, a sweep may have removed the members of this instance, so every local room is published again on the next flush.
+     */
+    public void renewInstanceLease() {
+        if (this.sessionRegistryStore.renewInstanceLease(this.instanceId, this.instanceLeaseTtl)) {
+            return;
+        }
+        this.pendingRoomGroups.putAll(this.localRoomGroups);
+        Map<UUID, SocketSessionEntry> rooms = this.getRooms();
+        if (rooms.isEmpty()) {
+            return;
+        }
+        log.warn("The instance lease had run out, publishing {} local rooms again", rooms.size());
+        for (Map.Entry<UUID, SocketSessionEntry> room : rooms.entrySet()) {
+            this.pendingRoomUpdates.putIfAbsent(room.getKey(), this.createRoomUpdate(room.getKey(), room.getValue()));
+        }
+    }
+
+    /**
+     * This method is used to remove the members of the instances whose lease has run out from the shared counts and category index.
+     * The rooms that lost members are dropped from the near-cache so their counts are reloaded, and so are the room group counts.
+     */
+    public void sweepDeadInstances() {
+        Set<UUID> socketRoomIds = this.sessionRegistryStore.removeDeadInstances();
+        if (socketRoomIds.isEmpty()) {
+            return;
+        }
+        log.warn("Removed the members of dead instances from {} shared rooms", socketRoomIds.size());
+        for (UUID socketRoomId : socketRoomIds) {
+            this.sharedRoomCache.remove(socketRoomId);
+        }
+        this.sharedCategoryCache.clear();
+        this.sharedRoomGroupCache.clear();
+    }
+
+    /**
+     * This method is used to flush the pending changes and release the lease of this instance, so the other instances remove its members on their next sweep.
+     */
+    @Override
+    public void close() {
+        if (this.flushScheduler != null) {
+            this.flushScheduler.shutdown();
+        }
+        this.flushSafely();
+        try {
+            this.sessionRegistryStore.releaseInstanceLease(this.instanceId);
+        } catch (Exception e) {
+            log.error("Releasing the instance lease failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * This method is used to run a room update, materializing rooms that only exist on other instances.
+     * The store is read before the atomic operation so no round trip happens while the room key is locked.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param remappingFunction The room update.
+     * @param createIfAbsent The boolean value indicating if the update runs when the room does not exist anywhere.
+     */
+    private SocketSessionEntry computeSharedRoom(
+            UUID socketRoomId,
+            BiFunction<UUID, SocketSessionEntry, SocketSessionEntry> remappingFunction,
+            boolean createIfAbsent
+    ) {
+        SharedRoomState sharedRoomState = super.containsRoom(socketRoomId) ? null : this.loadSharedRoomState(socketRoomId);
+        if (!createIfAbsent && sharedRoomState == null) {
+            return super.computeRoomIfPresent(socketRoomId, remappingFunction);
+        }
+
+        return super.computeRoom(socketRoomId, (roomId, socketSessionEntry) -> {
+            SocketSessionEntry currentEntry = (socketSessionEntry != null) ? socketSessionEntry : this.materializeRoom(roomId, sharedRoomState);
+            SocketSessionEntry updatedEntry = remappingFunction.apply(roomId, currentEntry);
+            if (updatedEntry != null && updatedEntry.getSocketUserMap().isEmpty()) {
+                // A materialized room that no local socket joined is not kept
+                super.unindexRoomCategories(roomId, updatedEntry);
+                return null;
+            }
+            return updatedEntry;
+        });
+    }
+
+    /**
+     * This method is used to create the local entry of a room that only exists on other instances.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param sharedRoomState The shared state of the room, or null if the room does not exist anywhere.
+     */
+    private SocketSessionEntry materializeRoom(UUID socketRoomId, SharedRoomState sharedRoomState) {
+        if (sharedRoomState == null) {
+            return null;
+        }
+        SocketSessionEntry socketSessionEntry = SocketSessionEntry.builder()
+                .socketUserMap(new ConcurrentHashMap<>())
+                .socketRoomCategoryList(SocketSessionMapper.fromCategoryKey(sharedRoomState.getSocketRoomCategoryKey()))
+                .socketRoomCategoryKey(sharedRoomState.getSocketRoomCategoryKey())
+                .isForMultipleUsers(sharedRoomState.getIsForMultipleUsers())
+                .organizationId(sharedRoomState.getOrganizationId())
+                .build();
+        super.indexRoomCategories(socketRoomId, socketSessionEntry);
+        return socketSessionEntry;
+    }
+
+    private SharedRoomState loadSharedRoomState(UUID socketRoomId) {
+        CachedRoom cachedRoom = this.getCachedRoom(socketRoomId);
+        if (cachedRoom != null) {
+            return cachedRoom.sharedRoomState;
+        }
+        try {
+            SharedRoomState sharedRoomState = this.sessionRegistryStore.getRoomState(socketRoomId);
+            if (sharedRoomState == null || sharedRoomState.getMemberCount() <= 0) {
+                return null;
+            }
+            this.sharedRoomCache.put(socketRoomId, new CachedRoom(sharedRoomState, sharedRoomState.getMemberCount(), System.currentTimeMillis()));
+            return sharedRoomState;
+        } catch (Exception e) {
+            log.error("Loading shared room state failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private CachedRoom getCachedRoom(UUID socketRoomId) {
+        CachedRoom cachedRoom = this.sharedRoomCache.get(socketRoomId);
+        if (cachedRoom == null) {
+            return null;
+        }
+        if (this.isExpired(cachedRoom.refreshedAt) && !super.containsRoom(socketRoomId)) {
+            this.sharedRoomCache.remove(socketRoomId, cachedRoom);
+            return null;
+        }
+        return cachedRoom;
+    }
+
+    private void enqueueRoomUpdate(UUID socketRoomId, SocketSessionEntry socketSessionEntry) {
+        this.pendingRoomUpdates.putIfAbsent(socketRoomId, this.createRoomUpdate(socketRoomId, socketSessionEntry));
+        if (this.flushScheduler != null && this.pendingRoomUpdates.size() >= this.batchSize) {
+            this.flushScheduler.execute(this::flushSafely);
+        }
+    }
+
+    private RoomUpdate createRoomUpdate(UUID socketRoomId, SocketSessionEntry socketSessionEntry) {
+        return RoomUpdate.builder()
+                .socketRoomId(socketRoomId)
+                .instanceId(this.instanceId)
+                .socketRoomCategoryKey(socketSessionEntry.getSocketRoomCategoryKey())
+                .isForMultipleUsers(socketSessionEntry.getIsForMultipleUsers())
+                .organizationId(socketSessionEntry.getOrganizationId())
+                .build();
+    }
+
+    private void applyRoomUpdates(List<RoomUpdate> roomUpdates) {
+        // The count is read when the batch is written, so it covers every change made since the room was queued
+        for (RoomUpdate roomUpdate : roomUpdates) {
+            SocketSessionEntry localEntry = super.getRoom(roomUpdate.getSocketRoomId());
+            roomUpdate.setInstanceMemberCount((localEntry != null) ? localEntry.getSocketUserMap().size() : 0);
+        }
+
+        Map<UUID, Long> memberCounts;
+        try {
+            memberCounts = this.sessionRegistryStore.applyRoomUpdates(roomUpdates);
+        } catch (Exception e) {
+            log.error("Flushing {} room updates failed, retrying on the next flush: {}", roomUpdates.size(), e.getMessage());
+            for (RoomUpdate roomUpdate : roomUpdates) {
+                this.pendingRoomUpdates.putIfAbsent(roomUpdate.getSocketRoomId(), roomUpdate);
+            }
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (RoomUpdate roomUpdate : roomUpdates) {
+            UUID socketRoomId = roomUpdate.getSocketRoomId();
+            long memberCount = memberCounts.getOrDefault(socketRoomId, 0L);
+            if (memberCount <= 0) {
+                this.sharedRoomCache.remove(socketRoomId);
+                continue;
+            }
+            SharedRoomState sharedRoomState = SharedRoomState.builder()
+                    .socketRoomCategoryKey(roomUpdate.getSocketRoomCategoryKey())
+                    .isForMultipleUsers(roomUpdate.getIsForMultipleUsers())
+                    .organizationId(roomUpdate.getOrganizationId())
+                    .memberCount(memberCount)
+                    .build();
+            this.sharedRoomCache.put(socketRoomId, new CachedRoom(sharedRoomState, Math.max(0, memberCount - roomUpdate.getInstanceMemberCount()), now));
+        }
+    }
+
+    private void applyRoomGroupUpdates(Collection<RoomGroup> roomGroups) {
+        Map<UUID, Integer> instanceMemberCounts = new HashMap<>(roomGroups.size() * 2);
+        for (RoomGroup roomGroup : roomGroups) {
+            instanceMemberCounts.put(roomGroup.getParentRoomId(), super.getRoomGroupMemberCount(roomGroup));
+        }
+
+        Map<UUID, Long> memberCounts;
+        try {
+            memberCounts = this.sessionRegistryStore.applyRoomGroupUpdates(this.instanceId, instanceMemberCounts);
+        } catch (Exception e) {
+            log.error("Flushing {} room group updates failed, retrying on the next flush: {}", roomGroups.size(), e.getMessage());
+            for (RoomGroup roomGroup : roomGroups) {
+                this.pendingRoomGroups.putIfAbsent(roomGroup.getParentRoomId(), roomGroup);
+            }
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, Integer> instanceMemberCount : instanceMemberCounts.entrySet()) {
+            long memberCount = memberCounts.getOrDefault(instanceMemberCount.getKey(), 0L);
+            this.sharedRoomGroupCache.put(instanceMemberCount.getKey(), new CachedRoomGroupCount(Math.max(0, memberCount - instanceMemberCount.getValue()), now));
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            this.flush();
+        } catch (Exception e) {
+            log.error("Flushing the session registry failed: {}", e.getMessage());
+        }
+    }
+
+    private void renewInstanceLeaseSafely() {
+        try {
+            this.renewInstanceLease();
+        } catch (Exception e) {
+            log.error("Renewing the instance lease failed: {}", e.getMessage());
+        }
+    }
+
+    private void sweepDeadInstancesSafely() {
+        try {
+            this.sweepDeadInstances();
+        } catch (Exception e) {
+            log.error("Sweeping dead instances failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean isExpired(long refreshedAt) {
+        return System.currentTimeMillis() - refreshedAt >= this.nearCacheTtl;
+    }
+
+    private static final class CachedRoom {
+        private final SharedRoomState sharedRoomState;
+        private final long remoteMemberCount;
+        private final long refreshedAt;
+
+        private CachedRoom(SharedRoomState sharedRoomState, long remoteMemberCount, long refreshedAt) {
+            this.sharedRoomState = sharedRoomState;
+            this.remoteMemberCount = remoteMemberCount;
+            this.refreshedAt = refreshedAt;
+        }
+    }
+
+    private static final class CachedRoomGroupCount {
+        private final long remoteMemberCount;
+        private final long refreshedAt;
+
+        private CachedRoomGroupCount(long remoteMemberCount, long refreshedAt) {
+            this.remoteMemberCount = remoteMemberCount;
+            this.refreshedAt = refreshedAt;
+        }
+    }
+
+    private static final class CachedRoomIds {
+        private final Set<UUID> roomIds;
+        private final long refreshedAt;
+
+        private CachedRoomIds(Set<UUID> roomIds, long refreshedAt) {
+            this.roomIds = roomIds;
+            this.refreshedAt = refreshedAt;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.RoomGroup;
+import github.gtopinio.STOMPaaS.models.classes.SocketSessionEntry;
+import github.gtopinio.STOMPaaS.models.classes.SocketUser;
+import github.gtopinio.STOMPaaS.models.interfaces.SessionRegistry;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * InMemorySessionRegistry
+ * This is the node-local SessionRegistry. Every map is a ConcurrentHashMap, so room updates are atomic per room key without a global lock.
+ */
+public class InMemorySessionRegistry implements SessionRegistry {
+    /**
+     * This map is used to store the socket session mapping.
+     * The key is the UUID of the socket room, which says that the chat is active if it exists.
+     */
+    private final Map<UUID, SocketSessionEntry> socketSessionMapping;
+    /**
+     * This map is used as a secondary index for category matchmaking.
+     * The key is the canonical category key of a room, and the value is the set of room IDs sharing that key.
+     */
+    private final Map<String, Set<UUID>> socketRoomCategoryIndex;
+    /**
+     * This map is used as a reverse index from a sender socket to every room it has joined.
+     */
+    private final Map<UUID, Set<UUID>> socketRoomIndex;
+    /**
+     * This map is used as a reverse index from a STOMP session ID to the sender sockets it has linked.
+     */
+    private final Map<String, Set<UUID>> stompSessionIndex;
+    /**
+     * This map is used to store the STOMP session ID that currently owns a sender socket.
+     * A reconnecting client may reuse its sender socket ID, so only the owning session may evict it.
+     */
+    private final Map<UUID, String> socketStompSessionIndex;
+
+    public InMemorySessionRegistry() {
+        this.socketSessionMapping = new ConcurrentHashMap<>();
+        this.socketRoomCategoryIndex = new ConcurrentHashMap<>();
+        this.socketRoomIndex = new ConcurrentHashMap<>();
+        this.stompSessionIndex = new ConcurrentHashMap<>();
+        this.socketStompSessionIndex = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public SocketSessionEntry getRoom(UUID socketRoomId) {
+        return this.socketSessionMapping.get(socketRoomId);
+    }
+
+    @Override
+    public boolean containsRoom(UUID socketRoomId) {
+        return this.socketSessionMapping.containsKey(socketRoomId);
+    }
+
+    @Override
+    public Map<UUID, SocketSessionEntry> getRooms() {
+        return Collections.unmodifiableMap(this.socketSessionMapping);
+    }
+
+    @Override
+    public SocketSessionEntry computeRoom(UUID socketRoomId, BiFunction<UUID, SocketSessionEntry, SocketSessionEntry> remappingFunction) {
+        return this.socketSessionMapping.compute(socketRoomId, remappingFunction);
+    }
+
+    @Override
+    public SocketSessionEntry computeRoomIfPresent(UUID socketRoomId, BiFunction<UUID, SocketSessionEntry, SocketSessionEntry> remappingFunction) {
+        return this.socketSessionMapping.computeIfPresent(socketRoomId, remappingFunction);
+    }
+
+    @Override
+    public boolean addSocketToRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry, SocketUser socketUser) {
+        if (socketSessionEntry.getSocketUserMap().putIfAbsent(socketUser.getSenderSocketId(), socketUser) != null) {
+            return false;
+        }
+        this.socketRoomIndex.compute(socketUser.getSenderSocketId(), (key, roomIds) -> {
+            Set<UUID> indexedRoomIds = (roomIds != null) ? roomIds : ConcurrentHashMap.newKeySet();
+            indexedRoomIds.add(socketRoomId);
+            return indexedRoomIds;
+        });
+        return true;
+    }
+
+    @Override
+    public boolean removeSocketFromRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry, UUID senderSocketId) {
+        if (socketSessionEntry.getSocketUserMap().remove(senderSocketId) == null) {
+            return false;
+        }
+        this.socketRoomIndex.computeIfPresent(senderSocketId, (key, roomIds) -> {
+            roomIds.remove(socketRoomId);
+            return roomIds.isEmpty() ? null : roomIds;
+        });
+        return true;
+    }
+
+    @Override
+    public int getRoomSize(UUID socketRoomId, SocketSessionEntry socketSessionEntry) {
+        return socketSessionEntry.getSocketUserMap().size();
+    }
+
+    @Override
+    public int getRoomSize(UUID socketRoomId) {
+        SocketSessionEntry socketSessionEntry = this.getRoom(socketRoomId);
+        return (socketSessionEntry != null) ? this.getRoomSize(socketRoomId, socketSessionEntry) : 0;
+    }
+
+    @Override
+    public void updateRoomGroupMemberCount(RoomGroup roomGroup, int memberDelta) {
+        roomGroup.getMemberSocketCount().addAndGet(memberDelta);
+    }
+
+    @Override
+    public int getRoomGroupMemberCount(RoomGroup roomGroup) {
+        return roomGroup.getMemberSocketCount().get();
+    }
+
+    @Override
+    public void indexRoomCategories(UUID socketRoomId, SocketSessionEntry socketSessionEntry) {
+        String categoryKey = socketSessionEntry.getSocketRoomCategoryKey();
+        if (categoryKey == null) {
+            return;
+        }
+        this.socketRoomCategoryIndex.compute(categoryKey, (key, roomIds) -> {
+            Set<UUID> indexedRoomIds = (roomIds != null) ? roomIds : ConcurrentHashMap.newKeySet();
+            indexedRoomIds.add(socketRoomId);
+            return indexedRoomIds;
+        });
+    }
+
+    @Override
+    public void unindexRoomCategories(UUID socketRoomId, SocketSessionEntry socketSessionEntry) {
+        String categoryKey = socketSessionEntry.getSocketRoomCategoryKey();
+        if (categoryKey == null) {
+            return;
+        }
+        this.socketRoomCategoryIndex.computeIfPresent(categoryKey, (key, roomIds) -> {
+            roomIds.remove(socketRoomId);
+            return roomIds.isEmpty() ? null : roomIds;
+        });
+    }
+
+    @Override
+    public Set<UUID> findRoomsByCategoryKey(String categoryKey) {
+        if (categoryKey == null) {
+            return Collections.emptySet();
+        }
+        Set<UUID> roomIds = this.socketRoomCategoryIndex.get(categoryKey);
+        return (roomIds != null) ? Collections.unmodifiableSet(roomIds) : Collections.emptySet();
+    }
+
+    @Override
+    public Set<UUID> getSocketRooms(UUID senderSocketId) {
+        Set<UUID> roomIds = this.socketRoomIndex.get(senderSocketId);
+        return (roomIds != null) ? Collections.unmodifiableSet(roomIds) : Collections.emptySet();
+    }
+
+    @Override
+    public void bindStompSession(String stompSessionId, UUID senderSocketId) {
+        this.stompSessionIndex.compute(stompSessionId, (key, socketIds) -> {
+            Set<UUID> boundSocketIds = (socketIds != null) ? socketIds : ConcurrentHashMap.newKeySet();
+            boundSocketIds.add(senderSocketId);
+            return boundSocketIds;
+        });
+        this.socketStompSessionIndex.put(senderSocketId, stompSessionId);
+    }
+
+    @Override
+    public Set<UUID> unbindStompSession(String stompSessionId) {
+        Set<UUID> boundSocketIds = this.stompSessionIndex.remove(stompSessionId);
+        if (boundSocketIds == null) {
+            return Collections.emptySet();
+        }
+        Set<UUID> ownedSocketIds = new HashSet<>();
+        for (UUID senderSocketId : boundSocketIds) {
+            // Skip sockets that have been re-linked by a newer STOMP session
+            if (this.socketStompSessionIndex.remove(senderSocketId, stompSessionId)) {
+                ownedSocketIds.add(senderSocketId);
+            }
+        }
+        return ownedSocketIds;
+    }
+
+    @Override
+    public String getStompSessionId(UUID senderSocketId) {
+        return this.socketStompSessionIndex.get(senderSocketId);
+    }
+}
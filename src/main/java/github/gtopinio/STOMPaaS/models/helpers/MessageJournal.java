@@ -0,0 +1,356 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * MessageJournal
+ * This persists the chat messages of organization rooms to an append-only journal on disk.
+ * Senders only hand the serialized payload to a bounded queue; a single writer thread appends the queued messages
+ * to a memory-mapped segment file and forces them to disk at most once per flush interval, so every message
+ * written within an interval shares one fsync. A full segment is closed and a new one started, and segments
+ * whose messages are all older than the retention are deleted.
+ * Each record is laid out as: length, timestamp, organization ID, socket room ID, payload, and a CRC32 of everything after the length.
+ * A record with a zero length or a wrong CRC32 marks the end of a segment, e.g., after a crash.
+ */
+@Service
+@Slf4j
+public class MessageJournal implements AutoCloseable {
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int RECORD_HEADER_LENGTH = 4 + 8 + 16 + 16;
+    private static final int RECORD_TRAILER_LENGTH = 4;
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final long RETENTION_CHECK_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * This is how long a message can wait in the queue, at most, for the segments to be skipped by their start time when reading.
+     */
+    private static final long MAX_WRITE_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private final boolean isEnabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final long flushIntervalNanos;
+    private final long retention;
+    private final SocketMetrics socketMetrics;
+    private final BlockingQueue<JournalRecord> pendingRecords;
+    private final Thread writerThread;
+    private volatile boolean isClosed;
+
+    // Only used by the writer thread
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segmentBuffer;
+    private int segmentCounter;
+
+    @Autowired
+    public MessageJournal(
+            @Value("${stompaas.journal.enabled:false}") boolean isEnabled,
+            @Value("${stompaas.journal.directory:data/journal}") String directory,
+            @Value("${stompaas.journal.segment-size:67108864}") int segmentSize,
+            @Value("${stompaas.journal.flush-interval:10}") long flushInterval,
+            @Value("${stompaas.journal.retention:604800000}") long retention,
+            @Value("${stompaas.journal.queue-capacity:65536}") int queueCapacity,
+            SocketMetrics socketMetrics
+    ) {
+        this.isEnabled = isEnabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.retention = retention;
+        this.socketMetrics = socketMetrics;
+        this.pendingRecords = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        if (isEnabled) {
+            this.writerThread = new Thread(this::runWriter, "stompaas-journal-writer");
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+        } else {
+            this.writerThread = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.isEnabled;
+    }
+
+    /**
+     * This method is used to queue a message of an organization room for the journal.
+     * It never blocks: if the queue is full, the message is not journaled.
+     *
+     * @param organizationId The UUID of the organization.
+     * @param socketRoomId The UUID of the socket room.
+     * @param payload The serialized SocketMessage payload.
+     * @return True if the message was queued, false otherwise.
+     */
+    public boolean append(UUID organizationId, UUID socketRoomId, byte[] payload) {
+        if (!this.isEnabled || this.isClosed || organizationId == null || socketRoomId == null || payload == null) {
+            return false;
+        }
+        if (RECORD_HEADER_LENGTH + payload.length + RECORD_TRAILER_LENGTH + 4 > this.segmentSize
+                || !this.pendingRecords.offer(new JournalRecord(System.currentTimeMillis(), organizationId, socketRoomId, payload))) {
+            this.socketMetrics.recordJournalDropped();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method is used to read the journaled messages of a room within a time range, oldest segment first.
+     * Messages still in the queue are not read.
+     *
+     * @param organizationId The UUID of the organization.
+     * @param socketRoomId The UUID of the socket room.
+     * @param fromTime The start of the time range, in epoch milliseconds, inclusive.
+     * @param toTime The end of the time range, in epoch milliseconds, inclusive.
+     * @param payloadConsumer The consumer of the serialized SocketMessage payloads.
+     */
+    public void read(UUID organizationId, UUID socketRoomId, long fromTime, long toTime, Consumer<byte[]> payloadConsumer) throws IOException {
+        if (!this.isEnabled || !Files.isDirectory(this.directory)) {
+            return;
+        }
+
+        List<Path> segments = this.listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            // A segment only holds messages queued before the next segment was started
+            if (i + 1 < segments.size() && getSegmentStartTime(segments.get(i + 1)) < fromTime) {
+                continue;
+            }
+            if (getSegmentStartTime(segments.get(i)) - MAX_WRITE_DELAY > toTime) {
+                break;
+            }
+            this.readSegment(segments.get(i), organizationId, socketRoomId, fromTime, toTime, payloadConsumer);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.isClosed = true;
+        if (this.writerThread == null) {
+            return;
+        }
+        try {
+            this.writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method is used to write the queued messages and force them to disk, until the journal is closed and the queue is empty.
+     */
+    private void runWriter() {
+        List<JournalRecord> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        boolean isDirty = false;
+        long lastForceTime = System.nanoTime();
+        long lastRetentionCheckTime = 0;
+
+        while (true) {
+            try {
+                long waitNanos = isDirty ? Math.max(0, lastForceTime + this.flushIntervalNanos - System.nanoTime()) : TimeUnit.SECONDS.toNanos(1);
+                JournalRecord journalRecord = this.pendingRecords.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (journalRecord != null) {
+                    batch.add(journalRecord);
+                    this.pendingRecords.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    for (JournalRecord record : batch) {
+                        this.write(record);
+                    }
+                    this.socketMetrics.recordJournalWrite(batch.size());
+                    batch.clear();
+                    isDirty = true;
+                }
+
+                long now = System.nanoTime();
+                if (isDirty && (now - lastForceTime >= this.flushIntervalNanos || this.isClosed)) {
+                    this.force();
+                    isDirty = false;
+                    lastForceTime = now;
+                }
+                if (now - lastRetentionCheckTime >= RETENTION_CHECK_INTERVAL) {
+                    this.deleteExpiredSegments();
+                    lastRetentionCheckTime = now;
+                }
+                if (this.isClosed && this.pendingRecords.isEmpty() && !isDirty) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error writing message journal: {}", e.getMessage());
+                batch.clear();
+            }
+        }
+        this.closeSegment();
+    }
+
+    private void write(JournalRecord journalRecord) throws IOException {
+        int recordLength = RECORD_HEADER_LENGTH + journalRecord.payload.length + RECORD_TRAILER_LENGTH;
+        // Room is kept for a zero length after the record, which marks the end of the segment
+        if (this.segmentBuffer == null || this.segmentBuffer.remaining() < recordLength + 4) {
+            this.rollSegment();
+        }
+
+        MappedByteBuffer buffer = this.segmentBuffer;
+        int start = buffer.position();
+        buffer.position(start + 4);
+        buffer.putLong(journalRecord.timestamp);
+        buffer.putLong(journalRecord.organizationId.getMostSignificantBits());
+        buffer.putLong(journalRecord.organizationId.getLeastSignificantBits());
+        buffer.putLong(journalRecord.socketRoomId.getMostSignificantBits());
+        buffer.putLong(journalRecord.socketRoomId.getLeastSignificantBits());
+        buffer.put(journalRecord.payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start + 4).limit(buffer.position()));
+        buffer.putInt((int) crc.getValue());
+        // The length goes in last, so a reader never sees a record before its body
+        buffer.putInt(start, recordLength);
+    }
+
+    private void force() {
+        if (this.segmentBuffer == null) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        this.segmentBuffer.force();
+        this.socketMetrics.recordJournalFsync(System.nanoTime() - startTime);
+    }
+
+    /**
+     * This method is used to close the current segment and start a new one, named after the time it was started.
+     */
+    private void rollSegment() throws IOException {
+        this.closeSegment();
+        Files.createDirectories(this.directory);
+
+        Path segment;
+        do {
+            segment = this.directory.resolve(String.format("%019d-%010d%s", System.currentTimeMillis(), this.segmentCounter++, SEGMENT_SUFFIX));
+        } while (Files.exists(segment));
+
+        this.segmentChannel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segmentBuffer = this.segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        log.info("Started message journal segment {}", segment.getFileName());
+    }
+
+    private void closeSegment() {
+        if (this.segmentChannel == null) {
+            return;
+        }
+        try {
+            this.force();
+            this.segmentChannel.close();
+        } catch (IOException e) {
+            log.error("Error closing message journal segment: {}", e.getMessage());
+        }
+        this.segmentChannel = null;
+        this.segmentBuffer = null;
+    }
+
+    /**
+     * This method is used to delete the segments whose messages are all older than the retention.
+     * The current segment is never deleted.
+     */
+    private void deleteExpiredSegments() throws IOException {
+        if (this.retention <= 0 || !Files.isDirectory(this.directory)) {
+            return;
+        }
+        long minTime = System.currentTimeMillis() - this.retention;
+        List<Path> segments = this.listSegments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (getSegmentStartTime(segments.get(i + 1)) >= minTime) {
+                break;
+            }
+            Files.deleteIfExists(segments.get(i));
+            log.info("Deleted message journal segment {}", segments.get(i).getFileName());
+        }
+    }
+
+    private void readSegment(Path segment, UUID organizationId, UUID socketRoomId, long fromTime, long toTime, Consumer<byte[]> payloadConsumer) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (java.nio.file.NoSuchFileException e) {
+            // Deleted by the retention since it was listed
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_LENGTH + RECORD_TRAILER_LENGTH) {
+            int start = buffer.position();
+            int recordLength = buffer.getInt(start);
+            if (recordLength < RECORD_HEADER_LENGTH + RECORD_TRAILER_LENGTH || recordLength > buffer.remaining()) {
+                break;
+            }
+            int crcPosition = start + recordLength - RECORD_TRAILER_LENGTH;
+            crc.reset();
+            crc.update(buffer.duplicate().position(start + 4).limit(crcPosition));
+            if ((int) crc.getValue() != buffer.getInt(crcPosition)) {
+                break;
+            }
+
+            long timestamp = buffer.getLong(start + 4);
+            if (timestamp >= fromTime && timestamp <= toTime
+                    && buffer.getLong(start + 12) == organizationId.getMostSignificantBits()
+                    && buffer.getLong(start + 20) == organizationId.getLeastSignificantBits()
+                    && buffer.getLong(start + 28) == socketRoomId.getMostSignificantBits()
+                    && buffer.getLong(start + 36) == socketRoomId.getLeastSignificantBits()) {
+                byte[] payload = new byte[crcPosition - (start + RECORD_HEADER_LENGTH)];
+                buffer.get(start + RECORD_HEADER_LENGTH, payload);
+                payloadConsumer.accept(payload);
+            }
+            buffer.position(start + recordLength);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files
+                    .filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long getSegmentStartTime(Path segment) {
+        String fileName = segment.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.indexOf('-')));
+    }
+
+    /**
+     * JournalRecord
+     * This is a message waiting in the queue to be written.
+     */
+    private static class JournalRecord {
+        private final long timestamp;
+        private final UUID organizationId;
+        private final UUID socketRoomId;
+        private final byte[] payload;
+
+        private JournalRecord(long timestamp, UUID organizationId, UUID socketRoomId, byte[] payload) {
+            this.timestamp = timestamp;
+            this.organizationId = organizationId;
+            this.socketRoomId = socketRoomId;
+            this.payload = payload;
+        }
+    }
+}
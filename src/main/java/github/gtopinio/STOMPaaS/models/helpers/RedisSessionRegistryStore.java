@@ -0,0 +1,290 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.RoomUpdate;
+import github.gtopinio.STOMPaaS.models.classes.SharedRoomState;
+import github.gtopinio.STOMPaaS.models.interfaces.SessionRegistryStore;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.*;
+
+/**
+ * RedisSessionRegistryStore
+ * This is the SessionRegistryStore for Redis-compatible servers.
+ * Each room is a hash holding its shared member count and metadata, and each category key is a set of room IDs.
+ * A batch of room updates is sent as one pipeline of scripts, so each room is updated and cleaned up atomically in one round trip per batch.
+ * The room hash also holds a member count per instance, and each instance keeps a set of its rooms and a lease key that expires unless renewed.
+ * Room groups are kept the same way: one hash per parent room with the member count of the group in total and per instance, and a set of groups per instance.
+ * Each script touches the keys of a room, its category and its instance together, which Redis Cluster refuses across hash slots (CROSSSLOT),
+ * so only a standalone server, or a primary behind Sentinel, is supported.
+ */
+public class RedisSessionRegistryStore implements SessionRegistryStore {
+    private static final String ROOM_KEY_PREFIX = "stompaas:room:";
+    private static final String CATEGORY_KEY_PREFIX = "stompaas:category:";
+    private static final String INSTANCES_KEY = "stompaas:instances";
+    private static final String INSTANCE_LEASE_KEY_PREFIX = "stompaas:instance:";
+    private static final String INSTANCE_ROOMS_KEY_PREFIX = "stompaas:instance-rooms:";
+    private static final String ROOM_GROUP_KEY_PREFIX = "stompaas:group:";
+    private static final String INSTANCE_ROOM_GROUPS_KEY_PREFIX = "stompaas:instance-groups:";
+    private static final String INSTANCE_COUNT_FIELD_PREFIX = "instance:";
+    /**
+     * KEYS[1]: room hash, KEYS[2]: category set, KEYS[3]: instance room set, KEYS[4]: instance set
+     * ARGV[1]: member count of the instance, ARGV[2]: category key, ARGV[3]: is for multiple users, ARGV[4]: room ID, ARGV[5]: instance count field, ARGV[6]: instance ID,
+     * ARGV[7]: organization ID
+     */
+    private static final String APPLY_ROOM_UPDATE_SCRIPT = """
+            local instanceCount = tonumber(ARGV[1])
+            local previousInstanceCount = tonumber(redis.call('HGET', KEYS[1], ARGV[5]) or '0')
+            local count = redis.call('HINCRBY', KEYS[1], 'count', instanceCount - previousInstanceCount)
+            if instanceCount > 0 then
+                redis.call('HSET', KEYS[1], ARGV[5], instanceCount)
+                redis.call('HSETNX', KEYS[1], 'categoryKey', ARGV[2])
+                redis.call('HSETNX', KEYS[1], 'isForMultipleUsers', ARGV[3])
+                redis.call('HSETNX', KEYS[1], 'organizationId', ARGV[7])
+                if ARGV[2] ~= '' then redis.call('SADD', KEYS[2], ARGV[4]) end
+                redis.call('SADD', KEYS[3], ARGV[4])
+                redis.call('SADD', KEYS[4], ARGV[6])
+            else
+                redis.call('HDEL', KEYS[1], ARGV[5])
+                redis.call('SREM', KEYS[3], ARGV[4])
+            end
+            if count <= 0 then
+                redis.call('DEL', KEYS[1])
+                if ARGV[2] ~= '' then redis.call('SREM', KEYS[2], ARGV[4]) end
+            end
+            return count
+            """;
+    /**
+     * KEYS[1]: room group hash, KEYS[2]: instance room group set, KEYS[3]: instance set
+     * ARGV[1]: member count of the instance, ARGV[2]: instance count field, ARGV[3]: parent room ID, ARGV[4]: instance ID
+     */
+    private static final String APPLY_ROOM_GROUP_UPDATE_SCRIPT = """
+            local instanceCount = tonumber(ARGV[1])
+            local previousInstanceCount = tonumber(redis.call('HGET', KEYS[1], ARGV[2]) or '0')
+            local count = redis.call('HINCRBY', KEYS[1], 'count', instanceCount - previousInstanceCount)
+            if instanceCount > 0 then
+                redis.call('HSET', KEYS[1], ARGV[2], instanceCount)
+                redis.call('SADD', KEYS[2], ARGV[3])
+                redis.call('SADD', KEYS[3], ARGV[4])
+            else
+                redis.call('HDEL', KEYS[1], ARGV[2])
+                redis.call('SREM', KEYS[2], ARGV[3])
+            end
+            if count <= 0 then redis.call('DEL', KEYS[1]) end
+            return count
+            """;
+    /**
+     * KEYS[1]: lease key, KEYS[2]: instance set
+     * ARGV[1]: lease TTL in milliseconds, ARGV[2]: instance ID
+     */
+    private static final String RENEW_INSTANCE_LEASE_SCRIPT = """
+            local isHeld = redis.call('EXISTS', KEYS[1])
+            redis.call('SET', KEYS[1], '', 'PX', ARGV[1])
+            redis.call('SADD', KEYS[2], ARGV[2])
+            return isHeld
+            """;
+    /**
+     * KEYS[1]: room hash, KEYS[2]: category set
+     * ARGV[1]: instance count field, ARGV[2]: room ID
+     */
+    private static final String REMOVE_INSTANCE_MEMBERS_SCRIPT = """
+            local instanceCount = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')
+            if instanceCount == 0 then return -1 end
+            redis.call('HDEL', KEYS[1], ARGV[1])
+            local count = redis.call('HINCRBY', KEYS[1], 'count', -instanceCount)
+            if count <= 0 then
+                redis.call('DEL', KEYS[1])
+                redis.call('SREM', KEYS[2], ARGV[2])
+            end
+            return count
+            """;
+    /**
+     * KEYS[1]: room group hash
+     * ARGV[1]: instance count field
+     */
+    private static final String REMOVE_INSTANCE_GROUP_MEMBERS_SCRIPT = """
+            local instanceCount = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')
+            if instanceCount == 0 then return -1 end
+            redis.call('HDEL', KEYS[1], ARGV[1])
+            local count = redis.call('HINCRBY', KEYS[1], 'count', -instanceCount)
+            if count <= 0 then redis.call('DEL', KEYS[1]) end
+            return count
+            """;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public RedisSessionRegistryStore(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public Map<UUID, Long> applyRoomUpdates(List<RoomUpdate> roomUpdates) {
+        List<Object> results = this.stringRedisTemplate.executePipelined((RedisCallback<Object>) (RedisConnection connection) -> {
+            StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+            for (RoomUpdate roomUpdate : roomUpdates) {
+                String categoryKey = (roomUpdate.getSocketRoomCategoryKey() != null) ? roomUpdate.getSocketRoomCategoryKey() : "";
+                String socketRoomId = roomUpdate.getSocketRoomId().toString();
+                stringRedisConnection.eval(
+                        APPLY_ROOM_UPDATE_SCRIPT,
+                        ReturnType.INTEGER,
+                        4,
+                        ROOM_KEY_PREFIX + socketRoomId,
+                        CATEGORY_KEY_PREFIX + categoryKey,
+                        INSTANCE_ROOMS_KEY_PREFIX + roomUpdate.getInstanceId(),
+                        INSTANCES_KEY,
+                        String.valueOf(roomUpdate.getInstanceMemberCount()),
+                        categoryKey,
+                        String.valueOf(Boolean.TRUE.equals(roomUpdate.getIsForMultipleUsers())),
+                        socketRoomId,
+                        INSTANCE_COUNT_FIELD_PREFIX + roomUpdate.getInstanceId(),
+                        roomUpdate.getInstanceId(),
+                        (roomUpdate.getOrganizationId() != null) ? roomUpdate.getOrganizationId().toString() : ""
+                );
+            }
+            return null;
+        });
+
+        Map<UUID, Long> memberCounts = new HashMap<>(roomUpdates.size() * 2);
+        for (int i = 0; i < roomUpdates.size() && i < results.size(); i++) {
+            Object result = results.get(i);
+            memberCounts.put(roomUpdates.get(i).getSocketRoomId(), (result instanceof Number number) ? number.longValue() : 0L);
+        }
+        return memberCounts;
+    }
+
+    @Override
+    public Map<UUID, Long> applyRoomGroupUpdates(String instanceId, Map<UUID, Integer> instanceMemberCounts) {
+        List<UUID> parentRoomIds = new ArrayList<>(instanceMemberCounts.keySet());
+        List<Object> results = this.stringRedisTemplate.executePipelined((RedisCallback<Object>) (RedisConnection connection) -> {
+            StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+            for (UUID parentRoomId : parentRoomIds) {
+                stringRedisConnection.eval(
+                        APPLY_ROOM_GROUP_UPDATE_SCRIPT,
+                        ReturnType.INTEGER,
+                        3,
+                        ROOM_GROUP_KEY_PREFIX + parentRoomId,
+                        INSTANCE_ROOM_GROUPS_KEY_PREFIX + instanceId,
+                        INSTANCES_KEY,
+                        String.valueOf(instanceMemberCounts.get(parentRoomId)),
+                        INSTANCE_COUNT_FIELD_PREFIX + instanceId,
+                        parentRoomId.toString(),
+                        instanceId
+                );
+            }
+            return null;
+        });
+
+        Map<UUID, Long> memberCounts = new HashMap<>(parentRoomIds.size() * 2);
+        for (int i = 0; i < parentRoomIds.size() && i < results.size(); i++) {
+            Object result = results.get(i);
+            memberCounts.put(parentRoomIds.get(i), (result instanceof Number number) ? number.longValue() : 0L);
+        }
+        return memberCounts;
+    }
+
+    @Override
+    public long getRemoteRoomGroupMemberCount(UUID parentRoomId, String instanceId) {
+        List<Object> counts = this.stringRedisTemplate.opsForHash().multiGet(
+                ROOM_GROUP_KEY_PREFIX + parentRoomId,
+                List.<Object>of("count", INSTANCE_COUNT_FIELD_PREFIX + instanceId)
+        );
+        long memberCount = (counts.get(0) != null) ? Long.parseLong(counts.get(0).toString()) : 0L;
+        long instanceMemberCount = (counts.get(1) != null) ? Long.parseLong(counts.get(1).toString()) : 0L;
+        return Math.max(0, memberCount - instanceMemberCount);
+    }
+
+    @Override
+    public SharedRoomState getRoomState(UUID socketRoomId) {
+        Map<Object, Object> roomHash = this.stringRedisTemplate.opsForHash().entries(ROOM_KEY_PREFIX + socketRoomId);
+        if (roomHash.isEmpty()) {
+            return null;
+        }
+        Object categoryKey = roomHash.get("categoryKey");
+        Object memberCount = roomHash.get("count");
+        Object organizationId = roomHash.get("organizationId");
+        return SharedRoomState.builder()
+                .socketRoomCategoryKey((categoryKey == null || categoryKey.toString().isEmpty()) ? null : categoryKey.toString())
+                .isForMultipleUsers(Boolean.parseBoolean(String.valueOf(roomHash.get("isForMultipleUsers"))))
+                .organizationId((organizationId == null || organizationId.toString().isEmpty()) ? null : UUID.fromString(organizationId.toString()))
+                .memberCount((memberCount != null) ? Long.parseLong(memberCount.toString()) : 0L)
+                .build();
+    }
+
+    @Override
+    public Set<UUID> findRoomsByCategoryKey(String categoryKey) {
+        Set<String> roomIds = this.stringRedisTemplate.opsForSet().members(CATEGORY_KEY_PREFIX + categoryKey);
+        if (roomIds == null || roomIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<UUID> socketRoomIds = new HashSet<>(roomIds.size() * 2);
+        for (String roomId : roomIds) {
+            socketRoomIds.add(UUID.fromString(roomId));
+        }
+        return socketRoomIds;
+    }
+
+    @Override
+    public boolean renewInstanceLease(String instanceId, long leaseTtl) {
+        Long isHeld = this.stringRedisTemplate.execute(
+                RedisScript.of(RENEW_INSTANCE_LEASE_SCRIPT, Long.class),
+                List.of(INSTANCE_LEASE_KEY_PREFIX + instanceId, INSTANCES_KEY),
+                String.valueOf(leaseTtl),
+                instanceId
+        );
+        return isHeld != null && isHeld == 1;
+    }
+
+    @Override
+    public void releaseInstanceLease(String instanceId) {
+        this.stringRedisTemplate.delete(INSTANCE_LEASE_KEY_PREFIX + instanceId);
+    }
+
+    /**
+     * This method is used to remove the members of the instances whose lease has run out.
+     * Each room is updated by one script, so instances sweeping the same dead instance at once do not remove its members twice.
+     * The room group counts of those instances are removed the same way.
+     * The return value is the set of rooms that lost members.
+     */
+    @Override
+    public Set<UUID> removeDeadInstances() {
+        Set<String> instanceIds = this.stringRedisTemplate.opsForSet().members(INSTANCES_KEY);
+        if (instanceIds == null || instanceIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<UUID> socketRoomIds = new HashSet<>();
+        for (String instanceId : instanceIds) {
+            if (Boolean.TRUE.equals(this.stringRedisTemplate.hasKey(INSTANCE_LEASE_KEY_PREFIX + instanceId))) {
+                continue;
+            }
+            Set<String> roomIds = this.stringRedisTemplate.opsForSet().members(INSTANCE_ROOMS_KEY_PREFIX + instanceId);
+            for (String roomId : (roomIds != null) ? roomIds : Collections.<String>emptySet()) {
+                // The category key of a room never changes while the room exists, so it can be read before the script
+                Object categoryKey = this.stringRedisTemplate.opsForHash().get(ROOM_KEY_PREFIX + roomId, "categoryKey");
+                Long memberCount = this.stringRedisTemplate.execute(
+                        RedisScript.of(REMOVE_INSTANCE_MEMBERS_SCRIPT, Long.class),
+                        List.of(ROOM_KEY_PREFIX + roomId, CATEGORY_KEY_PREFIX + ((categoryKey != null) ? categoryKey : "")),
+                        INSTANCE_COUNT_FIELD_PREFIX + instanceId,
+                        roomId
+                );
+                if (memberCount != null && memberCount >= 0) {
+                    socketRoomIds.add(UUID.fromString(roomId));
+                }
+            }
+            Set<String> parentRoomIds = this.stringRedisTemplate.opsForSet().members(INSTANCE_ROOM_GROUPS_KEY_PREFIX + instanceId);
+            for (String parentRoomId : (parentRoomIds != null) ? parentRoomIds : Collections.<String>emptySet()) {
+                this.stringRedisTemplate.execute(
+                        RedisScript.of(REMOVE_INSTANCE_GROUP_MEMBERS_SCRIPT, Long.class),
+                        List.of(ROOM_GROUP_KEY_PREFIX + parentRoomId),
+                        INSTANCE_COUNT_FIELD_PREFIX + instanceId
+                );
+            }
+            this.stringRedisTemplate.delete(List.of(INSTANCE_ROOMS_KEY_PREFIX + instanceId, INSTANCE_ROOM_GROUPS_KEY_PREFIX + instanceId));
+            this.stringRedisTemplate.opsForSet().remove(INSTANCES_KEY, instanceId);
+        }
+        return socketRoomIds;
+    }
+}
@@ -0,0 +1,224 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.SocketMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * RoomMessageHistory
+ * This keeps the recent chat messages of every socket room, so a socket joining a room can be sent what it missed.
+ * Each room has a ring of the serialized payloads that were broadcast, with their sequence numbers and send times,
+ * held in plain arrays allocated on the first message of the room; no SocketMessage objects are kept.
+ * A room keeps at most capacity messages and max-room-bytes bytes, messages older than max-age are not replayed,
+ * and the payloads of all rooms together never take more than max-total-bytes.
+ */
+@Service
+public class RoomMessageHistory {
+    private final int capacity;
+    private final long maxAge;
+    private final int maxRoomBytes;
+    private final long maxTotalBytes;
+    /**
+     * This map is used to store the ring of each socket room that has had a message.
+     */
+    private final Map<UUID, RoomRing> roomRings;
+    private final AtomicLong totalBytes;
+
+    public RoomMessageHistory(
+            @Value("${stompaas.history.capacity:50}") int capacity,
+            @Value("${stompaas.history.max-age:600000}") long maxAge,
+            @Value("${stompaas.history.max-room-bytes:32768}") int maxRoomBytes,
+            @Value("${stompaas.history.max-total-bytes:268435456}") long maxTotalBytes
+    ) {
+        this.capacity = capacity;
+        this.maxAge = maxAge;
+        this.maxRoomBytes = maxRoomBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.roomRings = new ConcurrentHashMap<>();
+        this.totalBytes = new AtomicLong();
+    }
+
+    public boolean isEnabled() {
+        return this.capacity > 0;
+    }
+
+    public int getRoomCount() {
+        return this.roomRings.size();
+    }
+
+    public long getTotalBytes() {
+        return this.totalBytes.get();
+    }
+
+    /**
+     * This method is used to give a message the next sequence number of its room, serialize it, and keep the payload.
+     * The payload is not kept when it is larger than the room limit or when the total limit is reached.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param message The SocketMessage object to record; its sequence number is set.
+     * @param serializer The function used to serialize the message.
+     * @return The serialized payload, or null if the message cannot be serialized.
+     */
+    public byte[] record(UUID socketRoomId, SocketMessage message, Function<SocketMessage, byte[]> serializer) {
+        if (!this.isEnabled()) {
+            return serializer.apply(message);
+        }
+
+        RoomRing roomRing = this.roomRings.computeIfAbsent(socketRoomId, roomId -> new RoomRing(this.capacity));
+        synchronized (roomRing) {
+            if (roomRing.isRemoved) {
+                return serializer.apply(message);
+            }
+            message.setSequenceNumber(roomRing.nextSequenceNumber++);
+            byte[] payload = serializer.apply(message);
+            if (payload == null || payload.length > this.maxRoomBytes) {
+                return payload;
+            }
+
+            long now = System.currentTimeMillis();
+            this.evictExpired(roomRing, now);
+            while (roomRing.size > 0 && (roomRing.size == this.capacity || roomRing.bytes + payload.length > this.maxRoomBytes)) {
+                this.evictOldest(roomRing);
+            }
+            if (this.totalBytes.addAndGet(payload.length) > this.maxTotalBytes) {
+                this.totalBytes.addAndGet(-payload.length);
+                return payload;
+            }
+
+            int tail = (roomRing.head + roomRing.size) % this.capacity;
+            roomRing.payloads[tail] = payload;
+            roomRing.sequenceNumbers[tail] = message.getSequenceNumber();
+            roomRing.times[tail] = now;
+            roomRing.size++;
+            roomRing.bytes += payload.length;
+            return payload;
+        }
+    }
+
+    /**
+     * This method is used to get the payloads of the last messages of a room, oldest first.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param count The maximum number of messages.
+     */
+    public List<byte[]> getLastMessages(UUID socketRoomId, int count) {
+        return this.getMessages(socketRoomId, count, 0);
+    }
+
+    /**
+     * This method is used to get the payloads of the messages of a room sent after a sequence number, oldest first.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param sequenceNumber The sequence number of the last message the client has seen.
+     */
+    public List<byte[]> getMessagesSince(UUID socketRoomId, long sequenceNumber) {
+        return this.getMessages(socketRoomId, Integer.MAX_VALUE, sequenceNumber + 1);
+    }
+
+    /**
+     * This method is used to drop the history of a removed socket room.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    public void remove(UUID socketRoomId) {
+        RoomRing roomRing = this.roomRings.remove(socketRoomId);
+        if (roomRing == null) {
+            return;
+        }
+        synchronized (roomRing) {
+            roomRing.isRemoved = true;
+            while (roomRing.size > 0) {
+                this.evictOldest(roomRing);
+            }
+        }
+    }
+
+    /**
+     * This method is used to join serialized SocketMessage payloads into the payload of a JSON array, without parsing them.
+     *
+     * @param payloads The serialized SocketMessage payloads.
+     */
+    public static byte[] toBatchPayload(List<byte[]> payloads) {
+        int length = 2 + Math.max(0, payloads.size() - 1);
+        for (byte[] payload : payloads) {
+            length += payload.length;
+        }
+        byte[] batchPayload = new byte[length];
+        int position = 0;
+        batchPayload[position++] = '[';
+        for (int i = 0; i < payloads.size(); i++) {
+            if (i > 0) {
+                batchPayload[position++] = ',';
+            }
+            byte[] payload = payloads.get(i);
+            System.arraycopy(payload, 0, batchPayload, position, payload.length);
+            position += payload.length;
+        }
+        batchPayload[position] = ']';
+        return batchPayload;
+    }
+
+    private List<byte[]> getMessages(UUID socketRoomId, int count, long minSequenceNumber) {
+        RoomRing roomRing = this.roomRings.get(socketRoomId);
+        if (roomRing == null || count <= 0) {
+            return Collections.emptyList();
+        }
+        synchronized (roomRing) {
+            this.evictExpired(roomRing, System.currentTimeMillis());
+            int first = Math.max(0, roomRing.size - count);
+            List<byte[]> payloads = new ArrayList<>(roomRing.size - first);
+            for (int i = first; i < roomRing.size; i++) {
+                int index = (roomRing.head + i) % this.capacity;
+                if (roomRing.sequenceNumbers[index] >= minSequenceNumber) {
+                    payloads.add(roomRing.payloads[index]);
+                }
+            }
+            return payloads;
+        }
+    }
+
+    private void evictExpired(RoomRing roomRing, long now) {
+        while (roomRing.size > 0 && now - roomRing.times[roomRing.head] > this.maxAge) {
+            this.evictOldest(roomRing);
+        }
+    }
+
+    private void evictOldest(RoomRing roomRing) {
+        int length = roomRing.payloads[roomRing.head].length;
+        roomRing.payloads[roomRing.head] = null;
+        roomRing.head = (roomRing.head + 1) % this.capacity;
+        roomRing.size--;
+        roomRing.bytes -= length;
+        this.totalBytes.addAndGet(-length);
+    }
+
+    /**
+     * RoomRing
+     * This is the ring of one socket room. It is only read and written while holding its lock.
+     */
+    private static class RoomRing {
+        private final byte[][] payloads;
+        private final long[] sequenceNumbers;
+        private final long[] times;
+        private int head;
+        private int size;
+        private int bytes;
+        private long nextSequenceNumber = 1;
+        private boolean isRemoved;
+
+        private RoomRing(int capacity) {
+            this.payloads = new byte[capacity][];
+            this.sequenceNumbers = new long[capacity];
+            this.times = new long[capacity];
+        }
+    }
+}
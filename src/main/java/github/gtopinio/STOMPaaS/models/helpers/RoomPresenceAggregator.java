@@ -0,0 +1,150 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.RoomPresence;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.response.SocketMappingResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RoomPresenceAggregator
+ * This coalesces the room count changes of joins and leaves.
+ * A room that changed during a window gets one compact PRESENCE frame with its latest counts, and the change of its count since the previous frame,
+ * when the window ends, no matter how many members joined or left during it.
+ * PRESENCE frames are opt-in: with the default window of 0, joins and leaves keep sending the per-user JOIN and LEAVE messages and parent room pings,
+ * and the per-user messages are only dropped when member announcements are also turned off.
+ */
+@Service
+@Slf4j
+public class RoomPresenceAggregator implements AutoCloseable {
+    private final SocketSessionMapper socketSessionMapper;
+    private final SocketMessageBroadcaster socketMessageBroadcaster;
+    private final long presenceWindow;
+    private final boolean memberAnnouncements;
+    /**
+     * This set is used to store the rooms whose count changed since the last window.
+     */
+    private final Set<UUID> pendingSocketRoomIds;
+    /**
+     * This map is used to store the room count sent with the last PRESENCE frame of each room.
+     */
+    private final Map<UUID, Integer> lastSocketRoomCounts;
+    private final ScheduledExecutorService presenceScheduler;
+
+    public RoomPresenceAggregator(
+            SocketSessionMapper socketSessionMapper,
+            SocketMessageBroadcaster socketMessageBroadcaster,
+            @Value("${stompaas.presence.window:0}") long presenceWindow,
+            @Value("${stompaas.presence.member-announcements:true}") boolean memberAnnouncements
+    ) {
+        this.socketSessionMapper = socketSessionMapper;
+        this.socketMessageBroadcaster = socketMessageBroadcaster;
+        this.presenceWindow = presenceWindow;
+        this.memberAnnouncements = memberAnnouncements;
+        this.pendingSocketRoomIds = ConcurrentHashMap.newKeySet();
+        this.lastSocketRoomCounts = new ConcurrentHashMap<>();
+
+        if (presenceWindow > 0) {
+            this.presenceScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stompaas-presence-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.presenceScheduler.scheduleWithFixedDelay(this::flushSafely, presenceWindow, presenceWindow, TimeUnit.MILLISECONDS);
+        } else {
+            this.presenceScheduler = null;
+        }
+    }
+
+    /**
+     * This method is used to check if room counts are coalesced into PRESENCE frames.
+     * If the return value is false, every join and leave carries the room count itself.
+     */
+    public boolean isEnabled() {
+        return this.presenceWindow > 0;
+    }
+
+    /**
+     * This method is used to check if the per-user join and leave messages, and the pings to the parent room, are broadcast.
+     * They are always broadcast when presence frames are disabled, since they carry the room count.
+     */
+    public boolean isMemberAnnouncementEnabled() {
+        return !this.isEnabled() || this.memberAnnouncements;
+    }
+
+    /**
+     * This method is used to mark the count of a socket room as changed in the current window.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    public void markRoomChanged(UUID socketRoomId) {
+        this.pendingSocketRoomIds.add(socketRoomId);
+    }
+
+    /**
+     * This method is used to broadcast one PRESENCE frame to every room that changed since the last flush.
+     */
+    public void flush() {
+        Iterator<UUID> iterator = this.pendingSocketRoomIds.iterator();
+        while (iterator.hasNext()) {
+            UUID socketRoomId = iterator.next();
+            // Removed before reading the count, so a change made while broadcasting is picked up by the next window
+            iterator.remove();
+            this.broadcastPresence(socketRoomId);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.presenceScheduler != null) {
+            this.presenceScheduler.shutdown();
+        }
+        this.flushSafely();
+    }
+
+    /**
+     * This method is used to broadcast the latest counts of a socket room.
+     * A room that was removed has no members left to notify.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    private void broadcastPresence(UUID socketRoomId) {
+        if (!this.socketSessionMapper.doesSocketRoomExist(socketRoomId)) {
+            this.lastSocketRoomCounts.remove(socketRoomId);
+            return;
+        }
+        SocketMappingResponse socketRoomPresence = this.socketSessionMapper.getSocketRoomPresence(socketRoomId);
+        int socketRoomCount = socketRoomPresence.getSocketRoomCount();
+        Integer lastSocketRoomCount = this.lastSocketRoomCounts.put(socketRoomId, socketRoomCount);
+        var roomPresence = RoomPresence.builder()
+                .type(MessageType.PRESENCE)
+                .socketRoomId(socketRoomId)
+                .socketRoomCount(socketRoomCount)
+                .socketRoomCountDelta(socketRoomCount - ((lastSocketRoomCount != null) ? lastSocketRoomCount : 0))
+                .roomGroupCount(socketRoomPresence.getRoomGroupCount())
+                .exIncHubGamingRoomCount(socketRoomPresence.getExIncHubGamingRoomCount())
+                .build();
+        this.socketMessageBroadcaster.broadcastPresence(socketRoomId, roomPresence);
+    }
+
+    /**
+     * This method is used to flush without letting an exception cancel the scheduled flushes.
+     */
+    private void flushSafely() {
+        try {
+            this.flush();
+        } catch (Exception e) {
+            log.error("Error flushing room presence: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * SessionActivityTracker
+ * This keeps the time of the last inbound frame, heartbeats included, of every STOMP session that sends heartbeats,
+ * and finds the sessions that have gone quiet for longer than their idle timeout.
+ * The sessions are kept in a hashed timing wheel with one slot per tick: recording a frame only updates a timestamp,
+ * and each tick only looks at the sessions whose deadline falls in that slot, so the cost of a tick does not grow with the number of sessions.
+ * A session that was active since it was slotted is moved to the slot of its new deadline when its old slot comes up.
+ */
+@Service
+public class SessionActivityTracker implements ChannelInterceptor {
+    /**
+     * This is the close status of the sessions closed for being idle.
+     */
+    public static final CloseStatus IDLE_CLOSE_STATUS = CloseStatus.SESSION_NOT_RELIABLE.withReason("Idle session reaped");
+
+    private final long idleTimeout;
+    private final long heartbeatReceiveInterval;
+    private final long tickInterval;
+    private final Queue<String>[] wheel;
+    /**
+     * This map is used to store the activity of each tracked STOMP session.
+     */
+    private final Map<String, SessionActivity> sessionActivities;
+    private long lastProcessedTick;
+
+    @SuppressWarnings("unchecked")
+    public SessionActivityTracker(
+            @Value("${stompaas.reaper.idle-timeout:30000}") long idleTimeout,
+            @Value("${stompaas.reaper.tick-interval:1000}") long tickInterval,
+            @Value("${stompaas.heartbeat.receive-interval:10000}") long heartbeatReceiveInterval
+    ) {
+        this.idleTimeout = idleTimeout;
+        this.tickInterval = Math.max(1, tickInterval);
+        this.heartbeatReceiveInterval = heartbeatReceiveInterval;
+        int wheelSize = (int) Math.max(2, (idleTimeout / this.tickInterval) + 1);
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.sessionActivities = new ConcurrentHashMap<>();
+        this.lastProcessedTick = System.currentTimeMillis() / this.tickInterval;
+    }
+
+    /**
+     * This method is used to check if idle sessions are reaped.
+     */
+    public boolean isEnabled() {
+        return this.idleTimeout > 0 && this.heartbeatReceiveInterval > 0;
+    }
+
+    public long getTickInterval() {
+        return this.tickInterval;
+    }
+
+    public int getTrackedSessionCount() {
+        return this.sessionActivities.size();
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!this.isEnabled()) {
+            return message;
+        }
+        MessageHeaders headers = message.getHeaders();
+        String stompSessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (stompSessionId == null) {
+            return message;
+        }
+
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (messageType == SimpMessageType.CONNECT) {
+            long[] heartbeat = SimpMessageHeaderAccessor.getHeartbeat(headers);
+            this.track(stompSessionId, (heartbeat != null) ? heartbeat[0] : 0, System.currentTimeMillis());
+        } else if (messageType == SimpMessageType.DISCONNECT) {
+            this.untrack(stompSessionId);
+        } else {
+            this.recordActivity(stompSessionId, System.currentTimeMillis());
+        }
+        return message;
+    }
+
+    /**
+     * This method is used to start tracking a connected STOMP session.
+     * A client that does not send heartbeats can be quiet for any length of time, so it is not tracked.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     * @param clientHeartbeatInterval The interval at which the client offers to send heartbeats; 0 if it sends none.
+     * @param now The current time, in milliseconds.
+     */
+    public void track(String stompSessionId, long clientHeartbeatInterval, long now) {
+        if (!this.isEnabled() || clientHeartbeatInterval <= 0) {
+            return;
+        }
+        // The client sends at the slower of the two intervals, and a few heartbeats may be late
+        long negotiatedInterval = Math.max(clientHeartbeatInterval, this.heartbeatReceiveInterval);
+        SessionActivity sessionActivity = new SessionActivity(Math.max(this.idleTimeout, negotiatedInterval * 3), now);
+        if (this.sessionActivities.putIfAbsent(stompSessionId, sessionActivity) == null) {
+            this.schedule(stompSessionId, now + sessionActivity.idleTimeout, now);
+        }
+    }
+
+    /**
+     * This method is used to stop tracking a disconnected STOMP session.
+     * Its wheel entry is skipped when its slot comes up.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     */
+    public void untrack(String stompSessionId) {
+        this.sessionActivities.remove(stompSessionId);
+    }
+
+    /**
+     * This method is used to record an inbound frame of a STOMP session.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     * @param now The current time, in milliseconds.
+     */
+    public void recordActivity(String stompSessionId, long now) {
+        SessionActivity sessionActivity = this.sessionActivities.get(stompSessionId);
+        if (sessionActivity != null) {
+            sessionActivity.lastActivityTime = now;
+        }
+    }
+
+    /**
+     * This method is used to advance the wheel to the current time and remove the sessions that have been idle for too long.
+     * It must only be called from one thread at a time.
+     *
+     * @param now The current time, in milliseconds.
+     * @return The IDs of the idle STOMP sessions, which are no longer tracked.
+     */
+    public List<String> pollIdleSessions(long now) {
+        long currentTick = now / this.tickInterval;
+        if (currentTick <= this.lastProcessedTick) {
+            return Collections.emptyList();
+        }
+
+        // A reaper that fell behind by more than one rotation visits every slot once
+        long firstTick = Math.max(this.lastProcessedTick + 1, currentTick - this.wheel.length + 1);
+        this.lastProcessedTick = currentTick;
+
+        List<String> idleStompSessionIds = new ArrayList<>();
+        for (long tick = firstTick; tick <= currentTick; tick++) {
+            Queue<String> slot = this.wheel[(int) (tick % this.wheel.length)];
+            // Only the entries present now are visited; the ones rescheduled into this slot wait for its next turn
+            for (int remaining = slot.size(); remaining > 0; remaining--) {
+                String stompSessionId = slot.poll();
+                if (stompSessionId == null) {
+                    break;
+                }
+                SessionActivity sessionActivity = this.sessionActivities.get(stompSessionId);
+                if (sessionActivity == null) {
+                    continue;
+                }
+                long deadline = sessionActivity.lastActivityTime + sessionActivity.idleTimeout;
+                if (deadline <= now) {
+                    if (this.sessionActivities.remove(stompSessionId, sessionActivity)) {
+                        idleStompSessionIds.add(stompSessionId);
+                    }
+                } else {
+                    this.schedule(stompSessionId, deadline, now);
+                }
+            }
+        }
+        return idleStompSessionIds;
+    }
+
+    /**
+     * This method is used to put a session into the slot of its deadline.
+     * A deadline beyond one rotation is put into the last slot of the rotation, and moved again from there.
+     */
+    private void schedule(String stompSessionId, long deadline, long now) {
+        long maxDeadline = now + (this.wheel.length - 1) * this.tickInterval;
+        long deadlineTick = Math.max(Math.min(deadline, maxDeadline) / this.tickInterval, (now / this.tickInterval) + 1);
+        this.wheel[(int) (deadlineTick % this.wheel.length)].add(stompSessionId);
+    }
+
+    /**
+     * SessionActivity
+     * This holds the idle timeout of a session and the time of its last inbound frame.
+     */
+    private static class SessionActivity {
+        private final long idleTimeout;
+        private volatile long lastActivityTime;
+
+        private SessionActivity(long idleTimeout, long lastActivityTime) {
+            this.idleTimeout = idleTimeout;
+            this.lastActivityTime = lastActivityTime;
+        }
+    }
+}
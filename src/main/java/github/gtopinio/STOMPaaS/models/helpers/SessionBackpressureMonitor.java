@@ -0,0 +1,87 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.SessionQueueStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SessionBackpressureMonitor
+ * This keeps track of the outbound queue of every open WebSocket session, so the sessions falling behind can be found.
+ */
+@Service
+@Slf4j
+public class SessionBackpressureMonitor {
+    private final Map<String, BackpressureWebSocketSessionDecorator> sessionDecorators;
+
+    public SessionBackpressureMonitor() {
+        this.sessionDecorators = new ConcurrentHashMap<>();
+    }
+
+    public void register(BackpressureWebSocketSessionDecorator sessionDecorator) {
+        this.sessionDecorators.put(sessionDecorator.getId(), sessionDecorator);
+    }
+
+    /**
+     * This method is used to stop tracking a closed session.
+     * If the return value is false, the session was not tracked or was already unregistered.
+     *
+     * @param sessionId The ID of the WebSocket session.
+     */
+    public boolean unregister(String sessionId) {
+        return this.sessionDecorators.remove(sessionId) != null;
+    }
+
+    /**
+     * This method is used to close an open WebSocket session.
+     * If the return value is false, the session is not open on this instance or could not be closed.
+     *
+     * @param sessionId The ID of the WebSocket session.
+     * @param closeStatus The CloseStatus to close the session with.
+     */
+    public boolean closeSession(String sessionId, CloseStatus closeStatus) {
+        BackpressureWebSocketSessionDecorator sessionDecorator = this.sessionDecorators.get(sessionId);
+        if (sessionDecorator == null) {
+            return false;
+        }
+        try {
+            sessionDecorator.close(closeStatus);
+            return true;
+        } catch (IOException e) {
+            log.warn("Error closing session {}: {}", sessionId, e.getMessage());
+            return false;
+        }
+    }
+
+    public int getSessionCount() {
+        return this.sessionDecorators.size();
+    }
+
+    public long getTotalBufferSize() {
+        long totalBufferSize = 0;
+        for (BackpressureWebSocketSessionDecorator sessionDecorator : this.sessionDecorators.values()) {
+            totalBufferSize += sessionDecorator.getSessionQueueStats().getBufferSize();
+        }
+        return totalBufferSize;
+    }
+
+    /**
+     * This method is used to get the sessions with the most buffered outbound data.
+     *
+     * @param limit The maximum number of sessions to return.
+     */
+    public List<SessionQueueStats> getSlowestSessions(int limit) {
+        return this.sessionDecorators.values().stream()
+                .map(BackpressureWebSocketSessionDecorator::getSessionQueueStats)
+                .filter(sessionQueueStats -> sessionQueueStats.getQueueDepth() > 0 || sessionQueueStats.getDroppedMessageCount() > 0)
+                .sorted(Comparator.comparingInt(SessionQueueStats::getBufferSize).reversed())
+                .limit(Math.max(0, limit))
+                .toList();
+    }
+}
@@ -0,0 +1,47 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.enums.SocketEventType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SocketEventLogger
+ * This logs the join, leave, and message events of the socket rooms as one key=value line per event.
+ * At DEBUG every event is logged; at INFO one in every sample rate events is logged, so busy rooms do not flood the logs.
+ * Nothing is formatted unless the event is logged.
+ */
+@Service
+@Slf4j
+public class SocketEventLogger {
+    public static final int DEFAULT_SAMPLE_RATE = 100;
+
+    private final int sampleRate;
+
+    public SocketEventLogger(@Value("${stompaas.logging.event-sample-rate:" + DEFAULT_SAMPLE_RATE + "}") int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * This method is used to log a socket event.
+     *
+     * @param eventType The SocketEventType of the event.
+     * @param stompSessionId The ID of the STOMP session, or null if unknown.
+     * @param socketRoomId The UUID of the socket room, or null if the event is not about one room.
+     * @param socketRoomCount The number of users in the room after the event, or -1 if unknown.
+     */
+    public void log(SocketEventType eventType, String stompSessionId, UUID socketRoomId, int socketRoomCount) {
+        if (log.isDebugEnabled()) {
+            log.debug("event={} stompSessionId={} socketRoomId={} socketRoomCount={}", eventType, stompSessionId, socketRoomId, socketRoomCount);
+        } else if (log.isInfoEnabled() && this.isSampled()) {
+            log.info("event={} stompSessionId={} socketRoomId={} socketRoomCount={} sampleRate={}", eventType, stompSessionId, socketRoomId, socketRoomCount, this.sampleRate);
+        }
+    }
+
+    private boolean isSampled() {
+        return this.sampleRate == 1 || ThreadLocalRandom.current().nextInt(this.sampleRate) == 0;
+    }
+}
@@ -1,62 +1,165 @@
 package github.gtopinio.STOMPaaS.models.helpers;
 
 import github.gtopinio.STOMPaaS.models.DTOs.SocketDTO;
-import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
 import github.gtopinio.STOMPaaS.models.interfaces.SocketValidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.UUID;
+import java.util.List;
 
+/**
+ * SocketInputValidator
+ * This checks the inbound SocketDTO before it reaches the mapper.
+ * The typed fields are already parsed by the message converter, so only their presence is checked,
+ * and a failure is reported as a SocketRejectionReason instead of an exception.
+ */
 @Service
 public class SocketInputValidator implements SocketValidator {
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = 8192;
+    public static final int DEFAULT_MAX_CATEGORY_COUNT = 16;
+    public static final int DEFAULT_MAX_CATEGORY_LENGTH = 64;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    private static final int UUID_LENGTH = 36;
+
+    private final int maxMessageLength;
+    private final int maxCategoryCount;
+    private final int maxCategoryLength;
+    private final int maxBatchSize;
+
+    public SocketInputValidator() {
+        this(DEFAULT_MAX_MESSAGE_LENGTH, DEFAULT_MAX_CATEGORY_COUNT, DEFAULT_MAX_CATEGORY_LENGTH);
+    }
+
+    public SocketInputValidator(int maxMessageLength, int maxCategoryCount, int maxCategoryLength) {
+        this(maxMessageLength, maxCategoryCount, maxCategoryLength, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    @Autowired
+    public SocketInputValidator(
+            @Value("${stompaas.validation.max-message-length:" + DEFAULT_MAX_MESSAGE_LENGTH + "}") int maxMessageLength,
+            @Value("${stompaas.validation.max-category-count:" + DEFAULT_MAX_CATEGORY_COUNT + "}") int maxCategoryCount,
+            @Value("${stompaas.validation.max-category-length:" + DEFAULT_MAX_CATEGORY_LENGTH + "}") int maxCategoryLength,
+            @Value("${stompaas.validation.max-batch-size:" + DEFAULT_MAX_BATCH_SIZE + "}") int maxBatchSize
+    ) {
+        this.maxMessageLength = maxMessageLength;
+        this.maxCategoryCount = maxCategoryCount;
+        this.maxCategoryLength = maxCategoryLength;
+        this.maxBatchSize = maxBatchSize;
+    }
 
     @Override
     public boolean validate(SocketDTO input) {
+        return this.getRejectionReason(input) == null;
+    }
 
-        if (input.getSocketMessage() == null || input.getSocketMessage().isEmpty()) {
-            return false;
+    /**
+     * This method is used to get the reason why a batch of inputs is rejected as a whole.
+     * The inputs themselves are checked one by one with getRejectionReason.
+     * If the return value is null, the batch is accepted.
+     *
+     * @param inputs The SocketDTO objects of the batch.
+     */
+    public SocketRejectionReason getBatchRejectionReason(List<SocketDTO> inputs) {
+        if (inputs == null || inputs.isEmpty()) {
+            return SocketRejectionReason.INVALID_INPUT;
+        }
+        if (inputs.size() > this.maxBatchSize) {
+            return SocketRejectionReason.BATCH_TOO_LARGE;
         }
+        return null;
+    }
 
-        if (input.getMessageType() == null || !isEnumValue(input.getMessageType().name(), MessageType.class)) {
-            return false;
+    /**
+     * This method is used to get the reason why an input is rejected.
+     * If the return value is null, the input is valid.
+     *
+     * @param input The SocketDTO object to be checked.
+     */
+    @Override
+    public SocketRejectionReason getRejectionReason(SocketDTO input) {
+        if (input == null) {
+            return SocketRejectionReason.INVALID_INPUT;
         }
 
-        if (input.getSenderUsername() == null || input.getSenderUsername().isEmpty()) {
-            return false;
+        String socketMessage = input.getSocketMessage();
+        if (socketMessage == null || socketMessage.isEmpty()) {
+            return SocketRejectionReason.INVALID_INPUT;
         }
 
-        if (input.getSenderSocketId() == null || !isUUID(input.getSenderSocketId().toString())) {
-            return false;
+        if (socketMessage.length() > this.maxMessageLength) {
+            return SocketRejectionReason.MESSAGE_TOO_LONG;
         }
 
-        if (input.getReceiverSocketId() != null && !isUUID(input.getReceiverSocketId().toString())) {
-            return false;
+        if (input.getMessageType() == null) {
+            return SocketRejectionReason.INVALID_MESSAGE_TYPE;
         }
 
-        if (input.getOrganizationId() != null && !isUUID(input.getOrganizationId().toString())) {
-            return false;
+        if (input.getSenderUsername() == null || input.getSenderUsername().isEmpty()) {
+            return SocketRejectionReason.INVALID_INPUT;
         }
 
-        return true;
+        if (input.getSenderSocketId() == null) {
+            return SocketRejectionReason.INVALID_INPUT;
+        }
+
+        List<String> categories = input.getCategories();
+        if (categories != null) {
+            if (categories.size() > this.maxCategoryCount) {
+                return SocketRejectionReason.TOO_MANY_CATEGORIES;
+            }
+            for (int i = 0; i < categories.size(); i++) {
+                String category = categories.get(i);
+                if (category == null) {
+                    return SocketRejectionReason.INVALID_INPUT;
+                }
+                if (category.length() > this.maxCategoryLength) {
+                    return SocketRejectionReason.CATEGORY_TOO_LONG;
+                }
+            }
+        }
+
+        return null;
     }
 
     @Override
     public <T extends Enum<T>> boolean isEnumValue(String value, Class<T> enumClass) {
-        try {
-            Enum.valueOf(enumClass, value);
-            return true;
-        } catch (IllegalArgumentException e) {
+        if (value == null) {
             return false;
         }
+        for (T enumConstant : enumClass.getEnumConstants()) {
+            if (enumConstant.name().equals(value)) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * This method is used to check if a string is a UUID in its canonical 8-4-4-4-12 hexadecimal form.
+     *
+     * @param value The string to be checked.
+     */
     @Override
     public boolean isUUID(String value) {
-        try {
-            UUID.fromString(value);
-            return true;
-        } catch (IllegalArgumentException e) {
+        if (value == null || value.length() != UUID_LENGTH) {
             return false;
         }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = value.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!isHexDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
     }
 }
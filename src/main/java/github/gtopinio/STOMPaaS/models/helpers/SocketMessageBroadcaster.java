@@ -0,0 +1,307 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import github.gtopinio.STOMPaaS.configs.WebSocketConfig;
+import github.gtopinio.STOMPaaS.models.classes.RoomPresence;
+import github.gtopinio.STOMPaaS.models.classes.SocketMessage;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SocketMessageBroadcaster
+ * This is the fast broadcast path for room messages.
+ * A SocketMessage is serialized once into a byte payload, and the prepared message is handed straight to the broker channel,
+ * skipping the message converter chain of the SimpMessagingTemplate.
+ * Clients that subscribe to the CBOR sibling of a room topic, i.e., /topic/{socketRoomId}.cbor, get the same message
+ * encoded as CBOR, with the UUIDs as 16-byte binary values instead of 36-character strings.
+ */
+@Service
+@Slf4j
+public class SocketMessageBroadcaster {
+    public static final String TOPIC_DESTINATION_PREFIX = "/topic/";
+    /**
+     * This native header carries the MessageType, so subscribers and the transport can tell messages apart without parsing the payload.
+     */
+    public static final String MESSAGE_TYPE_HEADER = "message-type";
+    /**
+     * This is the suffix the user destination resolver adds to a destination to make it unique to a session without a user.
+     */
+    public static final String USER_DESTINATION_SUFFIX = "-user";
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final MessageChannel brokerChannel;
+    private final ObjectWriter socketMessageWriter;
+    private final ObjectWriter socketMessageCborWriter;
+    private final ObjectWriter socketMessageBatchCborWriter;
+    private final ObjectWriter roomPresenceWriter;
+    private final ObjectWriter roomPresenceCborWriter;
+    private final CborSubscriptionTracker cborSubscriptionTracker;
+    /**
+     * This map is used to cache the topic destination of each socket room.
+     */
+    private final Map<UUID, String> destinationCache;
+    /**
+     * This map is used to cache the CBOR sibling destination of each socket room.
+     */
+    private final Map<UUID, String> cborDestinationCache;
+
+    public SocketMessageBroadcaster(MessageChannel brokerChannel, ObjectMapper objectMapper) {
+        this(brokerChannel, objectMapper, new CborSubscriptionTracker(false, WebSocketConfig.SIMPLE_BROKER_MODE));
+    }
+
+    @Autowired
+    public SocketMessageBroadcaster(
+            @Qualifier("brokerChannel") MessageChannel brokerChannel,
+            ObjectMapper objectMapper,
+            CborSubscriptionTracker cborSubscriptionTracker
+    ) {
+        this.brokerChannel = brokerChannel;
+        this.socketMessageWriter = objectMapper.writerFor(SocketMessage.class);
+        CBORMapper cborMapper = new CBORMapper();
+        this.socketMessageCborWriter = cborMapper.writerFor(SocketMessage.class);
+        this.socketMessageBatchCborWriter = cborMapper.writerFor(SocketMessage[].class);
+        this.roomPresenceWriter = objectMapper.writerFor(RoomPresence.class);
+        this.roomPresenceCborWriter = cborMapper.writerFor(RoomPresence.class);
+        this.cborSubscriptionTracker = cborSubscriptionTracker;
+        this.destinationCache = new ConcurrentHashMap<>();
+        this.cborDestinationCache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * This method is used to serialize a SocketMessage into a reusable JSON payload.
+     *
+     * @param message The SocketMessage object to serialize.
+     * @return The serialized payload, or null if the message cannot be serialized.
+     */
+    public byte[] serialize(SocketMessage message) {
+        try {
+            return this.socketMessageWriter.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing socket message: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * This method is used to serialize a SocketMessage into a CBOR payload.
+     *
+     * @param message The SocketMessage object to serialize.
+     * @return The serialized payload, or null if the message cannot be serialized.
+     */
+    public byte[] serializeCbor(SocketMessage message) {
+        try {
+            return this.socketMessageCborWriter.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing socket message as CBOR: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * This method is used to broadcast a SocketMessage to the socket room.
+     * The CBOR payload is only built when the CBOR destination of the room has subscribers.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param message The SocketMessage object containing the message details.
+     * @return True if the message was handed to the broker channel, false otherwise.
+     */
+    public boolean broadcast(UUID socketRoomId, SocketMessage message) {
+        return this.broadcast(socketRoomId, message, this.serialize(message));
+    }
+
+    /**
+     * This method is used to broadcast a SocketMessage that has already been serialized as JSON to the socket room.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param message The SocketMessage object containing the message details.
+     * @param payload The JSON payload of the message, or null if it could not be serialized.
+     * @return True if the message was handed to the broker channel, false otherwise.
+     */
+    public boolean broadcast(UUID socketRoomId, SocketMessage message, byte[] payload) {
+        if (payload == null) {
+            return false;
+        }
+        boolean isSent = this.broadcastPayload(socketRoomId, payload, message.getType());
+        if (!this.cborSubscriptionTracker.hasAnySubscribers()) {
+            return isSent;
+        }
+
+        String cborDestination = this.getCborDestination(socketRoomId);
+        if (this.cborSubscriptionTracker.hasSubscribers(cborDestination)) {
+            byte[] cborPayload = this.serializeCbor(message);
+            if (cborPayload != null) {
+                isSent &= this.brokerChannel.send(this.prepareMessage(cborDestination, cborPayload, message.getType(), APPLICATION_CBOR));
+            }
+        }
+        return isSent;
+    }
+
+    /**
+     * This method is used to broadcast several SocketMessages of the socket room as one BATCH frame.
+     * The JSON payload is an array of the messages, in order; the CBOR sibling destination gets the same array as CBOR.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param messages The SocketMessage objects of the batch.
+     * @param payload The JSON array payload of the messages, or null if it could not be serialized.
+     * @return True if the batch was handed to the broker channel, false otherwise.
+     */
+    public boolean broadcastBatch(UUID socketRoomId, List<SocketMessage> messages, byte[] payload) {
+        if (payload == null) {
+            return false;
+        }
+        boolean isSent = this.broadcastPayload(socketRoomId, payload, MessageType.BATCH);
+        if (!this.cborSubscriptionTracker.hasAnySubscribers()) {
+            return isSent;
+        }
+
+        String cborDestination = this.getCborDestination(socketRoomId);
+        if (this.cborSubscriptionTracker.hasSubscribers(cborDestination)) {
+            try {
+                byte[] cborPayload = this.socketMessageBatchCborWriter.writeValueAsBytes(messages.toArray(new SocketMessage[0]));
+                isSent &= this.brokerChannel.send(this.prepareMessage(cborDestination, cborPayload, MessageType.BATCH, APPLICATION_CBOR));
+            } catch (JsonProcessingException e) {
+                log.error("Error serializing socket message batch as CBOR: {}", e.getMessage());
+            }
+        }
+        return isSent;
+    }
+
+    /**
+     * This method is used to broadcast the compact PRESENCE frame of the socket room.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param roomPresence The RoomPresence object holding the latest counts of the room.
+     * @return True if the frame was handed to the broker channel, false otherwise.
+     */
+    public boolean broadcastPresence(UUID socketRoomId, RoomPresence roomPresence) {
+        byte[] payload;
+        try {
+            payload = this.roomPresenceWriter.writeValueAsBytes(roomPresence);
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing room presence: {}", e.getMessage());
+            return false;
+        }
+        boolean isSent = this.broadcastPayload(socketRoomId, payload, MessageType.PRESENCE);
+        if (!this.cborSubscriptionTracker.hasAnySubscribers()) {
+            return isSent;
+        }
+
+        String cborDestination = this.getCborDestination(socketRoomId);
+        if (this.cborSubscriptionTracker.hasSubscribers(cborDestination)) {
+            try {
+                byte[] cborPayload = this.roomPresenceCborWriter.writeValueAsBytes(roomPresence);
+                isSent &= this.brokerChannel.send(this.prepareMessage(cborDestination, cborPayload, MessageType.PRESENCE, APPLICATION_CBOR));
+            } catch (JsonProcessingException e) {
+                log.error("Error serializing room presence as CBOR: {}", e.getMessage());
+            }
+        }
+        return isSent;
+    }
+
+    /**
+     * This method is used to broadcast an already serialized payload to the socket room.
+     * The same payload can be broadcast to several rooms without serializing it again.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param payload The serialized SocketMessage payload.
+     * @param messageType The MessageType of the payload, or null if unknown.
+     * @return True if the message was handed to the broker channel, false otherwise.
+     */
+    public boolean broadcastPayload(UUID socketRoomId, byte[] payload, MessageType messageType) {
+        return this.brokerChannel.send(this.prepareMessage(this.getDestination(socketRoomId), payload, messageType));
+    }
+
+    /**
+     * This method is used to send a serialized payload to one STOMP session, through its user destination.
+     * The session receives it by subscribing to /user{destination}, e.g., /user/queue/history.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     * @param destination The destination within the user destinations of the session, e.g., /queue/history.
+     * @param payload The serialized payload.
+     * @param messageType The MessageType of the payload, or null if unknown.
+     * @return True if the message was handed to the broker channel, false otherwise.
+     */
+    public boolean sendToSession(String stompSessionId, String destination, byte[] payload, MessageType messageType) {
+        return this.brokerChannel.send(this.prepareMessage(destination + USER_DESTINATION_SUFFIX + stompSessionId, payload, messageType));
+    }
+
+    /**
+     * This method is used to build the broker message of a serialized payload.
+     * The headers are immutable, so the broker copies them per subscriber and shares the payload.
+     *
+     * @param destination The broker destination of the message.
+     * @param payload The serialized SocketMessage payload.
+     * @param messageType The MessageType of the payload, or null if unknown.
+     * @return The prepared Message object.
+     */
+    public Message<byte[]> prepareMessage(String destination, byte[] payload, MessageType messageType) {
+        return this.prepareMessage(destination, payload, messageType, MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    /**
+     * This method is used to build the broker message of a serialized payload with the given content type.
+     *
+     * @param destination The broker destination of the message.
+     * @param payload The serialized SocketMessage payload.
+     * @param messageType The MessageType of the payload, or null if unknown.
+     * @param contentType The MimeType of the payload.
+     * @return The prepared Message object.
+     */
+    public Message<byte[]> prepareMessage(String destination, byte[] payload, MessageType messageType, MimeType contentType) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(destination);
+        headerAccessor.setContentType(contentType);
+        if (messageType != null) {
+            headerAccessor.setNativeHeader(MESSAGE_TYPE_HEADER, messageType.toString());
+        }
+        return MessageBuilder.createMessage(payload, headerAccessor.getMessageHeaders());
+    }
+
+    /**
+     * This method is used to get the cached topic destination of the socket room.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @return The topic destination of the socket room.
+     */
+    public String getDestination(UUID socketRoomId) {
+        return this.destinationCache.computeIfAbsent(socketRoomId, roomId -> TOPIC_DESTINATION_PREFIX + roomId);
+    }
+
+    /**
+     * This method is used to get the cached CBOR sibling destination of the socket room.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @return The CBOR topic destination of the socket room.
+     */
+    public String getCborDestination(UUID socketRoomId) {
+        return this.cborDestinationCache.computeIfAbsent(socketRoomId, roomId -> TOPIC_DESTINATION_PREFIX + roomId + CborSubscriptionTracker.CBOR_DESTINATION_SUFFIX);
+    }
+
+    /**
+     * This method is used to evict the cached topic destinations of a removed socket room.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    public void evictDestination(UUID socketRoomId) {
+        this.destinationCache.remove(socketRoomId);
+        this.cborDestinationCache.remove(socketRoomId);
+    }
+}
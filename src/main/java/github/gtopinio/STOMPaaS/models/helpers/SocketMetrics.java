@@ -0,0 +1,287 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
+import github.gtopinio.STOMPaaS.models.enums.SocketTransport;
+import github.gtopinio.STOMPaaS.models.interfaces.SessionRegistry;
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SocketMetrics
+ * This holds the meters of the STOMP pipeline. Every meter is registered up front, so recording on the hot path
+ * is a lock-free update of an existing meter without any registry lookup or tag allocation.
+ */
+@Service
+public class SocketMetrics {
+    private final MeterRegistry meterRegistry;
+    private final Timer linkTimer;
+    private final Timer unlinkTimer;
+    private final Timer sendTimer;
+    private final Timer sendBatchTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Map<SocketRejectionReason, Counter> rejectionCounters;
+    private final Counter categoryLookupHitCounter;
+    private final Counter categoryLookupMissCounter;
+    private final DistributionSummary roomSocketsSummary;
+    private final DistributionSummary fanOutSummary;
+    private final Counter outboundMessageCounter;
+    private final Counter outboundBytesCounter;
+    private final Map<SocketTransport, AtomicInteger> transportSessionCounts;
+    private final Map<SocketTransport, Counter> transportInboundMessageCounters;
+    private final Map<SocketTransport, Counter> transportInboundBytesCounters;
+    private final Map<SocketTransport, Counter> transportOutboundMessageCounters;
+    private final Map<SocketTransport, Counter> transportOutboundBytesCounters;
+    private final Counter journalWrittenCounter;
+    private final Counter journalDroppedCounter;
+    private final Timer journalFsyncTimer;
+    /**
+     * This array is used to store the rate limit rejection counters, indexed by scope (socket, room) and then by whether the message was a PING.
+     */
+    private final Counter[] rateLimitedCounters;
+    /**
+     * This is used to count the outbound messages caused by one broker message on the thread that sends it.
+     */
+    private final ThreadLocal<int[]> fanOutCount;
+
+    public SocketMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.linkTimer = latencyTimer(meterRegistry, "stompaas.socket.link", "Time taken to link a socket session to a room");
+        this.unlinkTimer = latencyTimer(meterRegistry, "stompaas.socket.unlink", "Time taken to unlink a disconnected socket session from its rooms");
+        this.sendTimer = latencyTimer(meterRegistry, "stompaas.socket.send", "Time taken to send a socket message to a room");
+        this.sendBatchTimer = latencyTimer(meterRegistry, "stompaas.socket.send.batch", "Time taken to send a batch of socket messages to their rooms");
+        this.batchSizeSummary = DistributionSummary.builder("stompaas.socket.batch.size")
+                .description("Socket messages in one batch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        this.rejectionCounters = new EnumMap<>(SocketRejectionReason.class);
+        for (SocketRejectionReason reason : SocketRejectionReason.values()) {
+            this.rejectionCounters.put(reason, Counter.builder("stompaas.socket.rejected")
+                    .description("Socket inputs rejected, by reason")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+
+        this.categoryLookupHitCounter = Counter.builder("stompaas.category.lookups")
+                .description("Category matchmaking lookups, by whether an existing room was joined")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.categoryLookupMissCounter = Counter.builder("stompaas.category.lookups")
+                .description("Category matchmaking lookups, by whether an existing room was joined")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.roomSocketsSummary = DistributionSummary.builder("stompaas.room.sockets")
+                .description("Sockets in a room right after a socket joined it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        this.fanOutSummary = DistributionSummary.builder("stompaas.broker.fanout")
+                .description("Client messages sent for one broker message")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.outboundMessageCounter = Counter.builder("stompaas.outbound.messages")
+                .description("Messages sent to clients")
+                .register(meterRegistry);
+        this.outboundBytesCounter = Counter.builder("stompaas.outbound.bytes")
+                .description("Payload bytes sent to clients")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.fanOutCount = ThreadLocal.withInitial(() -> new int[] {-1});
+
+        this.transportSessionCounts = new EnumMap<>(SocketTransport.class);
+        for (SocketTransport transport : SocketTransport.values()) {
+            AtomicInteger sessionCount = new AtomicInteger();
+            this.transportSessionCounts.put(transport, sessionCount);
+            Gauge.builder("stompaas.transport.sessions", sessionCount, AtomicInteger::get)
+                    .description("Open WebSocket sessions, by transport")
+                    .tag("transport", transport.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+        this.transportInboundMessageCounters = transportCounters(meterRegistry, "stompaas.transport.messages", "Messages received from and sent to clients, by transport", "inbound", null);
+        this.transportInboundBytesCounters = transportCounters(meterRegistry, "stompaas.transport.bytes", "Payload bytes received from and sent to clients, by transport", "inbound", "bytes");
+        this.transportOutboundMessageCounters = transportCounters(meterRegistry, "stompaas.transport.messages", "Messages received from and sent to clients, by transport", "outbound", null);
+        this.transportOutboundBytesCounters = transportCounters(meterRegistry, "stompaas.transport.bytes", "Payload bytes received from and sent to clients, by transport", "outbound", "bytes");
+        this.journalWrittenCounter = Counter.builder("stompaas.journal.records")
+                .description("Messages written to the message journal")
+                .register(meterRegistry);
+        this.journalDroppedCounter = Counter.builder("stompaas.journal.dropped")
+                .description("Messages not journaled because the journal queue was full or the message did not fit a segment")
+                .register(meterRegistry);
+        this.rateLimitedCounters = new Counter[4];
+        String[] scopes = {"socket", "room"};
+        for (int i = 0; i < this.rateLimitedCounters.length; i++) {
+            this.rateLimitedCounters[i] = Counter.builder("stompaas.ratelimit.rejected")
+                    .description("Messages rejected by the rate limiter, by the bucket that ran out and by message type")
+                    .tag("scope", scopes[i / 2])
+                    .tag("type", (i % 2 == 1) ? MessageType.PING.name() : MessageType.MESSAGE.name())
+                    .register(meterRegistry);
+        }
+        this.journalFsyncTimer = latencyTimer(meterRegistry, "stompaas.journal.fsync", "Time taken to force a batch of journaled messages to disk");
+    }
+
+    /**
+     * This method is used to create metrics that are only kept in memory, for when no MeterRegistry is available.
+     */
+    public static SocketMetrics inMemory() {
+        return new SocketMetrics(new SimpleMeterRegistry());
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return this.meterRegistry;
+    }
+
+    public void recordLinkLatency(long nanos) {
+        this.linkTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordUnlinkLatency(long nanos) {
+        this.unlinkTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSendLatency(long nanos) {
+        this.sendTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSendBatchLatency(long nanos, int batchSize) {
+        this.sendBatchTimer.record(nanos, TimeUnit.NANOSECONDS);
+        this.batchSizeSummary.record(batchSize);
+    }
+
+    public void recordRejection(SocketRejectionReason reason) {
+        this.rejectionCounters.get(reason).increment();
+    }
+
+    public void recordCategoryLookup(boolean isHit) {
+        (isHit ? this.categoryLookupHitCounter : this.categoryLookupMissCounter).increment();
+    }
+
+    public void recordRoomSockets(int socketRoomCount) {
+        this.roomSocketsSummary.record(socketRoomCount);
+    }
+
+    /**
+     * This method is used to register the gauge of the number of socket rooms held by the registry.
+     *
+     * @param sessionRegistry The SessionRegistry holding the socket rooms.
+     */
+    public void bindSessionRegistry(SessionRegistry sessionRegistry) {
+        Gauge.builder("stompaas.rooms", sessionRegistry, registry -> registry.getRooms().size())
+                .description("Socket rooms held by this instance")
+                .register(this.meterRegistry);
+    }
+
+    /**
+     * This method is used to start counting the outbound messages of a broker message on the current thread.
+     */
+    public void startFanOut() {
+        this.fanOutCount.get()[0] = 0;
+    }
+
+    /**
+     * This method is used to record the outbound messages counted since startFanOut.
+     * Nothing is recorded when no client message was sent on this thread, e.g., when an external broker does the fan-out.
+     */
+    public void endFanOut() {
+        int[] count = this.fanOutCount.get();
+        if (count[0] > 0) {
+            this.fanOutSummary.record(count[0]);
+        }
+        count[0] = -1;
+    }
+
+    /**
+     * This method is used to record a message sent to a client.
+     *
+     * @param payloadLength The length of the message payload, in bytes.
+     */
+    public void recordOutboundMessage(int payloadLength) {
+        this.outboundMessageCounter.increment();
+        this.outboundBytesCounter.increment(payloadLength);
+        int[] count = this.fanOutCount.get();
+        if (count[0] >= 0) {
+            count[0]++;
+        }
+    }
+
+    public void recordTransportSessionOpened(SocketTransport transport) {
+        this.transportSessionCounts.get(transport).incrementAndGet();
+    }
+
+    public void recordTransportSessionClosed(SocketTransport transport) {
+        this.transportSessionCounts.get(transport).decrementAndGet();
+    }
+
+    /**
+     * This method is used to record a WebSocket message received from a client.
+     *
+     * @param transport The SocketTransport of the client session.
+     * @param payloadLength The length of the message payload, in bytes.
+     */
+    public void recordTransportInboundMessage(SocketTransport transport, int payloadLength) {
+        this.transportInboundMessageCounters.get(transport).increment();
+        this.transportInboundBytesCounters.get(transport).increment(payloadLength);
+    }
+
+    /**
+     * This method is used to record a WebSocket message queued for a client.
+     *
+     * @param transport The SocketTransport of the client session.
+     * @param payloadLength The length of the message payload, in bytes.
+     */
+    public void recordTransportOutboundMessage(SocketTransport transport, int payloadLength) {
+        this.transportOutboundMessageCounters.get(transport).increment();
+        this.transportOutboundBytesCounters.get(transport).increment(payloadLength);
+    }
+
+    /**
+     * This method is used to record messages rejected by the rate limiter.
+     *
+     * @param isRoomScope True if the bucket of the socket room ran out, false if the bucket of the sender socket did.
+     * @param isPing True if the messages were PING messages.
+     * @param messageCount The number of messages rejected.
+     */
+    public void recordRateLimited(boolean isRoomScope, boolean isPing, int messageCount) {
+        this.rateLimitedCounters[(isRoomScope ? 2 : 0) + (isPing ? 1 : 0)].increment(messageCount);
+        this.rejectionCounters.get(SocketRejectionReason.RATE_LIMITED).increment(messageCount);
+    }
+
+    public void recordJournalWrite(int recordCount) {
+        this.journalWrittenCounter.increment(recordCount);
+    }
+
+    public void recordJournalDropped() {
+        this.journalDroppedCounter.increment();
+    }
+
+    public void recordJournalFsync(long nanos) {
+        this.journalFsyncTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Map<SocketTransport, Counter> transportCounters(MeterRegistry meterRegistry, String name, String description, String direction, String baseUnit) {
+        Map<SocketTransport, Counter> counters = new EnumMap<>(SocketTransport.class);
+        for (SocketTransport transport : SocketTransport.values()) {
+            counters.put(transport, Counter.builder(name)
+                    .description(description)
+                    .tag("transport", transport.name().toLowerCase(Locale.ROOT))
+                    .tag("direction", direction)
+                    .baseUnit(baseUnit)
+                    .register(meterRegistry));
+        }
+        return counters;
+    }
+
+    private static Timer latencyTimer(MeterRegistry meterRegistry, String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,334 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.RateLimitPolicy;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SocketRateLimiter
+ * This limits how fast a sender socket can publish, and how fast a socket room can be published to.
+ * Every socket and every room has a token bucket, kept as a single theoretical arrival time that is updated with a compare-and-set,
+ * so sending takes no lock. The buckets live in concurrent maps, which spread the contention across their bins.
+ * The policy of a message is the policy of the organization of its room if there is one,
+ * then the policy of the first category of the room that has one, then the default policy.
+ * A room bucket picks its policy when it is created. The socket policy is picked on every message from the room it is sent to,
+ * and a socket has one bucket per policy it sends under, so the first room a socket uses does not set its limit in the other rooms.
+ * The organization is taken from the room, which records it at the JOIN that created it, never from the message,
+ * so a sender cannot pick a looser policy by naming another organization.
+ * PING messages are shed first: they are only let through while at least half of the burst is left.
+ */
+@Service
+@Slf4j
+public class SocketRateLimiter implements AutoCloseable {
+    private static final double PING_BURST_RATIO = 0.5;
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final SocketSessionMapper socketSessionMapper;
+    private final SocketMetrics socketMetrics;
+    private final boolean isEnabled;
+    private final RateLimitPolicy defaultSocketPolicy;
+    private final RateLimitPolicy defaultRoomPolicy;
+    private final Map<String, RateLimitPolicy> categorySocketPolicies;
+    private final Map<String, RateLimitPolicy> categoryRoomPolicies;
+    private final Map<UUID, RateLimitPolicy> organizationSocketPolicies;
+    private final Map<UUID, RateLimitPolicy> organizationRoomPolicies;
+    private final Map<SocketBucketKey, TokenBucket> socketBuckets;
+    private final Map<UUID, TokenBucket> roomBuckets;
+    private final ScheduledExecutorService sweepScheduler;
+
+    public SocketRateLimiter(SocketSessionMapper socketSessionMapper, SocketMetrics socketMetrics, RateLimitPolicy defaultSocketPolicy, RateLimitPolicy defaultRoomPolicy) {
+        this(socketSessionMapper, socketMetrics, true, defaultSocketPolicy.getMessagesPerSecond(), defaultSocketPolicy.getBurst(),
+                defaultRoomPolicy.getMessagesPerSecond(), defaultRoomPolicy.getBurst(), "", "", "", "");
+    }
+
+    @Autowired
+    public SocketRateLimiter(
+            SocketSessionMapper socketSessionMapper,
+            SocketMetrics socketMetrics,
+            @Value("${stompaas.rate-limit.enabled:false}") boolean isEnabled,
+            @Value("${stompaas.rate-limit.socket.messages-per-second:20}") double socketMessagesPerSecond,
+            @Value("${stompaas.rate-limit.socket.burst:40}") int socketBurst,
+            @Value("${stompaas.rate-limit.room.messages-per-second:200}") double roomMessagesPerSecond,
+            @Value("${stompaas.rate-limit.room.burst:400}") int roomBurst,
+            @Value("${stompaas.rate-limit.socket.category-policies:}") String categorySocketPolicies,
+            @Value("${stompaas.rate-limit.room.category-policies:}") String categoryRoomPolicies,
+            @Value("${stompaas.rate-limit.socket.organization-policies:}") String organizationSocketPolicies,
+            @Value("${stompaas.rate-limit.room.organization-policies:}") String organizationRoomPolicies
+    ) {
+        this.socketSessionMapper = socketSessionMapper;
+        this.socketMetrics = socketMetrics;
+        this.isEnabled = isEnabled;
+        this.defaultSocketPolicy = new RateLimitPolicy(socketMessagesPerSecond, socketBurst);
+        this.defaultRoomPolicy = new RateLimitPolicy(roomMessagesPerSecond, roomBurst);
+        this.categorySocketPolicies = parsePolicies(categorySocketPolicies);
+        this.categoryRoomPolicies = parsePolicies(categoryRoomPolicies);
+        this.organizationSocketPolicies = toOrganizationPolicies(parsePolicies(organizationSocketPolicies));
+        this.organizationRoomPolicies = toOrganizationPolicies(parsePolicies(organizationRoomPolicies));
+        this.socketBuckets = new ConcurrentHashMap<>();
+        this.roomBuckets = new ConcurrentHashMap<>();
+
+        if (isEnabled) {
+            this.sweepScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stompaas-rate-limit-sweep");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.sweepScheduler.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweepScheduler = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.isEnabled;
+    }
+
+    /**
+     * This method is used to take tokens for messages from the bucket of the sender socket, then from the bucket of the socket room.
+     * If the room has no tokens left, the tokens taken from the socket are given back.
+     * If the return value is false, the messages must not be sent.
+     *
+     * @param senderSocketId The UUID of the sender socket.
+     * @param socketRoomId The UUID of the socket room the messages are broadcast to.
+     * @param messageType The MessageType of the messages.
+     * @param permits The number of messages.
+     */
+    public boolean tryAcquire(UUID senderSocketId, UUID socketRoomId, MessageType messageType, int permits) {
+        if (!this.tryAcquireSocket(senderSocketId, socketRoomId, messageType, permits)) {
+            return false;
+        }
+        if (!this.tryAcquireRoom(socketRoomId, messageType, permits)) {
+            TokenBucket socketBucket = this.socketBuckets.get(new SocketBucketKey(senderSocketId, this.getSocketPolicy(socketRoomId)));
+            if (socketBucket != null) {
+                socketBucket.release(permits);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method is used to take tokens for messages from the bucket of the sender socket only, e.g., for direct messages.
+     * If the return value is false, the messages must not be sent.
+     *
+     * @param senderSocketId The UUID of the sender socket.
+     * @param socketRoomId The UUID of the socket room, used to pick the policy, and with it the bucket, of the socket.
+     * @param messageType The MessageType of the messages.
+     * @param permits The number of messages.
+     */
+    public boolean tryAcquireSocket(UUID senderSocketId, UUID socketRoomId, MessageType messageType, int permits) {
+        if (!this.isEnabled || senderSocketId == null || permits <= 0) {
+            return true;
+        }
+        TokenBucket socketBucket = this.socketBuckets.computeIfAbsent(new SocketBucketKey(senderSocketId, this.getSocketPolicy(socketRoomId)),
+                key -> new TokenBucket(key.policy));
+        boolean isSheddable = messageType == MessageType.PING;
+        if (!socketBucket.tryAcquire(System.nanoTime(), permits, isSheddable)) {
+            this.socketMetrics.recordRateLimited(false, isSheddable, permits);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method is used to take tokens for messages from the bucket of the socket room only, e.g., for a batch whose messages
+     * were already taken from their sockets one by one.
+     * If the return value is false, the messages must not be sent.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param messageType The MessageType of the messages.
+     * @param permits The number of messages.
+     */
+    public boolean tryAcquireRoom(UUID socketRoomId, MessageType messageType, int permits) {
+        if (!this.isEnabled || socketRoomId == null || permits <= 0) {
+            return true;
+        }
+        TokenBucket roomBucket = this.roomBuckets.computeIfAbsent(socketRoomId,
+                key -> new TokenBucket(this.getPolicy(socketRoomId, this.organizationRoomPolicies, this.categoryRoomPolicies, this.defaultRoomPolicy)));
+        boolean isSheddable = messageType == MessageType.PING;
+        if (!roomBucket.tryAcquire(System.nanoTime(), permits, isSheddable)) {
+            this.socketMetrics.recordRateLimited(true, isSheddable, permits);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method is used to forget the bucket of a socket room, e.g., after the room is removed.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    public void removeRoom(UUID socketRoomId) {
+        this.roomBuckets.remove(socketRoomId);
+    }
+
+    /**
+     * This method is used to forget the buckets that have refilled completely, since a new bucket would behave the same.
+     * A bucket is only removed if it is still the one in the map and is still full when it is removed, so a bucket that a sender
+     * has just taken tokens from is kept. A sender that looked a bucket up right before it was removed can still take its tokens
+     * from the removed bucket, which lets that one message through without being charged; the next message gets a new bucket.
+     */
+    public void sweep() {
+        sweep(this.socketBuckets, System.nanoTime());
+        sweep(this.roomBuckets, System.nanoTime());
+    }
+
+    public int getBucketCount() {
+        return this.socketBuckets.size() + this.roomBuckets.size();
+    }
+
+    @Override
+    public void close() {
+        if (this.sweepScheduler != null) {
+            this.sweepScheduler.shutdown();
+        }
+    }
+
+    private static <K> void sweep(Map<K, TokenBucket> buckets, long now) {
+        for (Map.Entry<K, TokenBucket> entry : buckets.entrySet()) {
+            TokenBucket bucket = entry.getValue();
+            if (bucket.isFull(now)) {
+                buckets.computeIfPresent(entry.getKey(), (key, currentBucket) -> (currentBucket == bucket && bucket.isFull(now)) ? null : currentBucket);
+            }
+        }
+    }
+
+    private RateLimitPolicy getSocketPolicy(UUID socketRoomId) {
+        return this.getPolicy(socketRoomId, this.organizationSocketPolicies, this.categorySocketPolicies, this.defaultSocketPolicy);
+    }
+
+    private RateLimitPolicy getPolicy(
+            UUID socketRoomId,
+            Map<UUID, RateLimitPolicy> organizationPolicies,
+            Map<String, RateLimitPolicy> categoryPolicies,
+            RateLimitPolicy defaultPolicy
+    ) {
+        UUID organizationId = (!organizationPolicies.isEmpty() && socketRoomId != null) ? this.socketSessionMapper.getSocketRoomOrganizationId(socketRoomId) : null;
+        RateLimitPolicy policy = (organizationId != null) ? organizationPolicies.get(organizationId) : null;
+        if (policy == null && !categoryPolicies.isEmpty() && socketRoomId != null) {
+            for (String category : this.socketSessionMapper.getSocketRoomCategories(socketRoomId)) {
+                policy = categoryPolicies.get(category);
+                if (policy != null) {
+                    break;
+                }
+            }
+        }
+        return (policy != null) ? policy : defaultPolicy;
+    }
+
+    /**
+     * This method is used to parse policies written as comma-separated key=messagesPerSecond:burst entries,
+     * e.g., "gaming=50:100,lobby=5:10".
+     *
+     * @param policies The policies to parse.
+     */
+    static Map<String, RateLimitPolicy> parsePolicies(String policies) {
+        if (policies == null || policies.isBlank()) {
+            return Collections.emptyMap();
+        }
+        Map<String, RateLimitPolicy> parsedPolicies = new HashMap<>();
+        for (String entry : policies.split(",")) {
+            String[] keyAndPolicy = entry.trim().split("=");
+            String[] rateAndBurst = (keyAndPolicy.length == 2) ? keyAndPolicy[1].split(":") : new String[0];
+            if (rateAndBurst.length != 2) {
+                throw new IllegalArgumentException("Invalid rate limit policy: " + entry);
+            }
+            parsedPolicies.put(keyAndPolicy[0].trim(), new RateLimitPolicy(Double.parseDouble(rateAndBurst[0].trim()), Integer.parseInt(rateAndBurst[1].trim())));
+        }
+        return parsedPolicies;
+    }
+
+    private static Map<UUID, RateLimitPolicy> toOrganizationPolicies(Map<String, RateLimitPolicy> policies) {
+        Map<UUID, RateLimitPolicy> organizationPolicies = new HashMap<>();
+        policies.forEach((organizationId, policy) -> organizationPolicies.put(UUID.fromString(organizationId), policy));
+        return organizationPolicies;
+    }
+
+    /**
+     * SocketBucketKey
+     * This is the key of a socket bucket: the sender socket and the policy its messages are sent under.
+     * Policies are only created when the limiter is, so they are compared by identity.
+     */
+    private static final class SocketBucketKey {
+        private final UUID senderSocketId;
+        private final RateLimitPolicy policy;
+
+        private SocketBucketKey(UUID senderSocketId, RateLimitPolicy policy) {
+            this.senderSocketId = senderSocketId;
+            this.policy = policy;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SocketBucketKey key && this.senderSocketId.equals(key.senderSocketId) && this.policy == key.policy;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.senderSocketId.hashCode() + System.identityHashCode(this.policy);
+        }
+    }
+
+    /**
+     * TokenBucket
+     * This is a token bucket kept as the time at which it would be full again (the theoretical arrival time of the generic cell rate algorithm).
+     * Taking a token moves that time forward by one emission interval, and a message is let through
+     * as long as the time does not end up more than a burst ahead of now.
+     */
+    private static final class TokenBucket {
+        private final long emissionInterval;
+        private final long capacity;
+        private final long sheddableCapacity;
+        private final AtomicLong theoreticalArrivalTime;
+
+        private TokenBucket(RateLimitPolicy policy) {
+            this.emissionInterval = (policy.getMessagesPerSecond() > 0) ? Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / policy.getMessagesPerSecond())) : 0;
+            this.capacity = this.emissionInterval * Math.max(1, policy.getBurst());
+            this.sheddableCapacity = (long) (this.capacity * PING_BURST_RATIO);
+            this.theoreticalArrivalTime = new AtomicLong(Long.MIN_VALUE);
+        }
+
+        private boolean tryAcquire(long now, int permits, boolean isSheddable) {
+            if (this.emissionInterval == 0) {
+                return true;
+            }
+            long limit = isSheddable ? this.sheddableCapacity : this.capacity;
+            long cost = this.emissionInterval * permits;
+            while (true) {
+                long current = this.theoreticalArrivalTime.get();
+                long next = ((current == Long.MIN_VALUE || current - now < 0) ? now : current) + cost;
+                if (next - now > limit) {
+                    return false;
+                }
+                if (this.theoreticalArrivalTime.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release(int permits) {
+            if (this.emissionInterval > 0) {
+                this.theoreticalArrivalTime.addAndGet(-this.emissionInterval * permits);
+            }
+        }
+
+        private boolean isFull(long now) {
+            long current = this.theoreticalArrivalTime.get();
+            return current == Long.MIN_VALUE || current - now <= 0;
+        }
+    }
+}
@@ -1,41 +1,91 @@
 package github.gtopinio.STOMPaaS.models.helpers;
 
+import github.gtopinio.STOMPaaS.models.classes.RoomGroup;
 import github.gtopinio.STOMPaaS.models.classes.SocketSessionEntry;
 import github.gtopinio.STOMPaaS.models.classes.SocketUser;
+import github.gtopinio.STOMPaaS.models.enums.SocketEventType;
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
+import github.gtopinio.STOMPaaS.models.interfaces.SessionRegistry;
 import github.gtopinio.STOMPaaS.models.response.SocketMappingResponse;
+import github.gtopinio.STOMPaaS.models.response.SocketRoomSnapshot;
+import github.gtopinio.STOMPaaS.models.response.SocketRoomSnapshotPage;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 public class SocketSessionMapper {
     /**
-     * This map is used to store the socket session mapping.
-     * The key is the UUID of the socket room, which says that the chat is active if it exists.
+     * This registry is used to store the socket rooms, their members, and the matchmaking and disconnect indexes.
      */
-    private final Map<UUID, SocketSessionEntry> socketSessionMapping;
+    private final SessionRegistry sessionRegistry;
+    private final SocketEventLogger socketEventLogger;
+    private final SocketMetrics socketMetrics;
+    /**
+     * This is the capacity of the category rooms that have no capacity of their own; 0 means unlimited.
+     */
+    private final int defaultRoomCapacity;
+    /**
+     * This map is used to store the room capacity of each category set, keyed by its canonical category key.
+     */
+    private final Map<String, Integer> categoryRoomCapacities;
+    /**
+     * This map is used to store the room group of every parent and member room, keyed by the room ID.
+     */
+    private final Map<UUID, RoomGroup> roomGroups;
+    /**
+     * This is the first configured room group, whose member count is sent as exIncHubGamingRoomCount to rooms in no group.
+     */
+    private final RoomGroup defaultRoomGroup;
+    private static final String CATEGORY_KEY_SEPARATOR = "\u001F";
     private static int bufferUserCountDisplayTemp;
     private static int bufferDecrementTemp;
-    private static int exIncHubGamingRoomCount;
-    private static int exIncHubMainRoomCount;
 
-    public SocketSessionMapper() {
-        this.socketSessionMapping = new ConcurrentHashMap<>();
+    public SocketSessionMapper(SessionRegistry sessionRegistry) {
+        this(sessionRegistry, new SocketEventLogger(SocketEventLogger.DEFAULT_SAMPLE_RATE), SocketMetrics.inMemory());
+    }
+
+    public SocketSessionMapper(SessionRegistry sessionRegistry, SocketEventLogger socketEventLogger, SocketMetrics socketMetrics) {
+        this(sessionRegistry, socketEventLogger, socketMetrics, 0, "", "");
+    }
+
+    public SocketSessionMapper(SessionRegistry sessionRegistry, SocketEventLogger socketEventLogger, SocketMetrics socketMetrics, int defaultRoomCapacity, String categoryRoomCapacities) {
+        this(sessionRegistry, socketEventLogger, socketMetrics, defaultRoomCapacity, categoryRoomCapacities, "");
+    }
+
+    @Autowired
+    public SocketSessionMapper(
+            SessionRegistry sessionRegistry,
+            SocketEventLogger socketEventLogger,
+            SocketMetrics socketMetrics,
+            @Value("${stompaas.rooms.default-capacity:0}") int defaultRoomCapacity,
+            @Value("${stompaas.rooms.category-capacities:}") String categoryRoomCapacities,
+            @Value("${stompaas.room-groups:}") String roomGroups
+    ) {
+        this.sessionRegistry = sessionRegistry;
+        this.socketEventLogger = socketEventLogger;
+        this.socketMetrics = socketMetrics;
+        this.defaultRoomCapacity = Math.max(0, defaultRoomCapacity);
+        this.categoryRoomCapacities = parseCategoryRoomCapacities(categoryRoomCapacities);
+        this.roomGroups = parseRoomGroups(roomGroups);
+        this.defaultRoomGroup = this.roomGroups.isEmpty() ? null : this.roomGroups.values().iterator().next();
+        this.socketMetrics.bindSessionRegistry(sessionRegistry);
         this.randomizeBufferUserCount();
     }
 
     /**
-     * This method is used to get the socket session mapping.
+     * This method is used to get a read-only view of the socket session mapping.
      */
 
     public Map<UUID, SocketSessionEntry> getSocketSessionMapping() {
-        return this.socketSessionMapping;
+        return this.sessionRegistry.getRooms();
     }
 
 
@@ -45,7 +95,31 @@ public class SocketSessionMapper {
      * @param socketRoomId The UUID of the socket room.
      */
     public boolean doesSocketRoomExist(UUID socketRoomId) {
-        return this.socketSessionMapping.containsKey(socketRoomId);
+        return this.sessionRegistry.containsRoom(socketRoomId);
+    }
+
+    /**
+     * This method is used to get the organization of a socket room, which is set by the JOIN that created the room.
+     * If the return value is null, the room has no organization or is not on this instance.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    public UUID getSocketRoomOrganizationId(UUID socketRoomId) {
+        SocketSessionEntry socketSessionEntry = this.sessionRegistry.getRoom(socketRoomId);
+        return (socketSessionEntry != null) ? socketSessionEntry.getOrganizationId() : null;
+    }
+
+    /**
+     * This method is used to get the categories of a socket room, or an empty list if the room does not exist or has none.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    public List<String> getSocketRoomCategories(UUID socketRoomId) {
+        SocketSessionEntry socketSessionEntry = this.sessionRegistry.getRoom(socketRoomId);
+        if (socketSessionEntry == null || socketSessionEntry.getSocketRoomCategoryList() == null) {
+            return Collections.emptyList();
+        }
+        return socketSessionEntry.getSocketRoomCategoryList();
     }
 
     /**
@@ -61,6 +135,128 @@ public class SocketSessionMapper {
                 .build();
     }
 
+    /**
+     * This method is used to build the canonical category key of a room.
+     * The key does not depend on the order of the categories, and it is interned so rooms sharing a key share the instance.
+     *
+     * @param categories The list of categories.
+     */
+    public static String toCategoryKey(List<String> categories) {
+        if (categories == null || categories.isEmpty()) {
+            return null;
+        }
+        if (categories.size() == 1) {
+            return String.valueOf(categories.get(0)).intern();
+        }
+        String[] sortedCategories = categories.toArray(new String[0]);
+        Arrays.sort(sortedCategories, Comparator.nullsFirst(Comparator.naturalOrder()));
+        return String.join(CATEGORY_KEY_SEPARATOR, sortedCategories).intern();
+    }
+
+    /**
+     * This method is used to get the categories back from a canonical category key.
+     *
+     * @param categoryKey The canonical category key.
+     */
+    public static List<String> fromCategoryKey(String categoryKey) {
+        if (categoryKey == null) {
+            return Collections.emptyList();
+        }
+        return List.of(categoryKey.split(CATEGORY_KEY_SEPARATOR, -1));
+    }
+
+    /**
+     * This method is used to get the capacity of the rooms of a category set.
+     * Rooms without categories are never full, since they are joined by their ID rather than matched.
+     * If the return value is 0, the rooms have no capacity limit.
+     *
+     * @param categoryKey The canonical category key of the rooms.
+     */
+    public int getRoomCapacity(String categoryKey) {
+        if (categoryKey == null) {
+            return 0;
+        }
+        Integer roomCapacity = this.categoryRoomCapacities.get(categoryKey);
+        return (roomCapacity != null) ? roomCapacity : this.defaultRoomCapacity;
+    }
+
+    /**
+     * This method is used to parse room capacities written as comma-separated categories=capacity entries,
+     * where a category set is written with + between its categories, e.g., "chess=2,poker+holdem=6".
+     *
+     * @param categoryRoomCapacities The room capacities to parse.
+     */
+    static Map<String, Integer> parseCategoryRoomCapacities(String categoryRoomCapacities) {
+        if (categoryRoomCapacities == null || categoryRoomCapacities.isBlank()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> parsedRoomCapacities = new HashMap<>();
+        for (String entry : categoryRoomCapacities.split(",")) {
+            String[] categoriesAndCapacity = entry.trim().split("=");
+            if (categoriesAndCapacity.length != 2) {
+                throw new IllegalArgumentException("Invalid room capacity: " + entry);
+            }
+            List<String> categories = Arrays.stream(categoriesAndCapacity[0].split("\\+")).map(String::trim).toList();
+            parsedRoomCapacities.put(toCategoryKey(categories), Math.max(0, Integer.parseInt(categoriesAndCapacity[1].trim())));
+        }
+        return parsedRoomCapacities;
+    }
+
+    /**
+     * This method is used to parse room groups written as comma-separated parentRoomId=memberRoomIds entries,
+     * where the member rooms are written with + between them, e.g., "{lobbyRoomId}={gameRoomId}+{gameRoomId}".
+     * A room can only be in one group, and the groups keep the order they are written in.
+     *
+     * @param roomGroups The room groups to parse.
+     */
+    static Map<UUID, RoomGroup> parseRoomGroups(String roomGroups) {
+        if (roomGroups == null || roomGroups.isBlank()) {
+            return Collections.emptyMap();
+        }
+        Map<UUID, RoomGroup> parsedRoomGroups = new LinkedHashMap<>();
+        for (String entry : roomGroups.split(",")) {
+            String[] parentAndMembers = entry.trim().split("=");
+            if (parentAndMembers.length != 2) {
+                throw new IllegalArgumentException("Invalid room group: " + entry);
+            }
+            Set<UUID> memberRoomIds = new HashSet<>();
+            for (String memberRoomId : parentAndMembers[1].split("\\+")) {
+                memberRoomIds.add(UUID.fromString(memberRoomId.trim()));
+            }
+            RoomGroup roomGroup = new RoomGroup(UUID.fromString(parentAndMembers[0].trim()), memberRoomIds);
+            memberRoomIds.add(roomGroup.getParentRoomId());
+            for (UUID socketRoomId : memberRoomIds) {
+                if (parsedRoomGroups.putIfAbsent(socketRoomId, roomGroup) != null) {
+                    throw new IllegalArgumentException("Room " + socketRoomId + " is in more than one room group");
+                }
+            }
+        }
+        return parsedRoomGroups;
+    }
+
+    /**
+     * This method is used to get the parent room that the counts of a member room are pushed to.
+     * If the return value is null, the room is not a member room of any room group.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    public UUID getParentRoomId(UUID socketRoomId) {
+        RoomGroup roomGroup = this.roomGroups.get(socketRoomId);
+        return (roomGroup != null && !roomGroup.isParentRoom(socketRoomId)) ? roomGroup.getParentRoomId() : null;
+    }
+
+    /**
+     * This method is used to check if a room has reached the capacity of its category set.
+     * It must only be called from within an atomic operation on the room key.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param socketSessionEntry The SocketSessionEntry object containing the socket session entry details.
+     */
+    private boolean isRoomFull(UUID socketRoomId, SocketSessionEntry socketSessionEntry) {
+        int roomCapacity = this.getRoomCapacity(socketSessionEntry.getSocketRoomCategoryKey());
+        return roomCapacity > 0 && this.sessionRegistry.getRoomSize(socketRoomId, socketSessionEntry) >= roomCapacity;
+    }
+
     /**
      * This method is used to create a new socket session entry.
      *
@@ -72,8 +268,9 @@ public class SocketSessionMapper {
             Boolean isMultipleUsers
     ) {
         return SocketSessionEntry.builder()
-                .socketUserList(new CopyOnWriteArrayList<>())
+                .socketUserMap(new ConcurrentHashMap<>())
                 .socketRoomCategoryList(categories)
+                .socketRoomCategoryKey(toCategoryKey(categories))
                 .isForMultipleUsers(isMultipleUsers)
                 .build();
     }
@@ -97,11 +294,10 @@ public class SocketSessionMapper {
             Boolean isMultipleUsers
     ) {
         if (!categories.isEmpty()) {
-            UUID existingRoomId = findExistingRoomByCategories(categories, senderSocketId, isMultipleUsers, organizationId);
-            if (existingRoomId != null) {
-                return buildSocketMappingResponse(existingRoomId, true);
-            } else {
-                return handleRoomCreationOrUpdate(socketRoomId, categories, senderSocketId, organizationId, isMultipleUsers);
+            SocketMappingResponse existingRoomResponse = findExistingRoomByCategories(categories, senderSocketId, isMultipleUsers, organizationId);
+            this.socketMetrics.recordCategoryLookup(existingRoomResponse != null);
+            if (existingRoomResponse != null) {
+                return existingRoomResponse;
             }
         }
 
@@ -110,8 +306,11 @@ public class SocketSessionMapper {
 
     /**
      * This method is used to handle the room creation or update.
+     * The room is created or joined in a single atomic operation on the room key, so concurrent JOINs on a fresh room cannot overwrite each other.
+     * If the room has reached the capacity of its category set, the JOIN is refused with ROOM_FULL rather than moved to another room,
+     * since the caller asked for this room by its ID. Category JOINs only get here after the category index found no open room.
      *
-     * @param socketRoomId The UUID of the socket room.
+     * @param socketRoomId The UUID of the socket room, or null to create a new room for the categories.
      * @param categories The list of categories.
      * @param senderSocketId The UUID of the sender socket.
      * @param organizationId The UUID of the organization.
@@ -124,21 +323,46 @@ public class SocketSessionMapper {
             UUID organizationId,
             Boolean isMultipleUsers
     ) {
-        if (this.doesSocketRoomExist(socketRoomId)) {
-            UUID activeRoomId = this.handleExistingRoom(socketRoomId, senderSocketId, organizationId, isMultipleUsers);
-            if (activeRoomId != null) {
-                return this.buildSocketMappingResponse(activeRoomId, true);
-            } else {
-                return this.buildSocketMappingResponse(null, false);
+        if (socketRoomId == null) {
+            if (categories == null || categories.isEmpty()) {
+                return this.buildSocketMappingResponse(null, false, 0);
+            }
+            // A category JOIN without a room ID that matched no open room starts a new one
+            socketRoomId = UUID.randomUUID();
+        }
+
+        AtomicInteger socketRoomCount = new AtomicInteger(-1);
+        AtomicBoolean isRoomCreated = new AtomicBoolean(false);
+        AtomicBoolean isRoomFull = new AtomicBoolean(false);
+        this.sessionRegistry.computeRoom(socketRoomId, (roomId, socketSessionEntry) -> {
+            if (socketSessionEntry == null) {
+                SocketSessionEntry newSocketSessionEntry = this.createNewRoom(roomId, categories, senderSocketId, organizationId, isMultipleUsers);
+                socketRoomCount.set(this.sessionRegistry.getRoomSize(roomId, newSocketSessionEntry));
+                isRoomCreated.set(true);
+                return newSocketSessionEntry;
+            }
+            if (this.isRoomFull(roomId, socketSessionEntry) && !this.isUserInRoom(socketSessionEntry, senderSocketId)) {
+                isRoomFull.set(true);
+                return socketSessionEntry;
             }
-        } else {
-            UUID newRoomId = this.createNewRoom(socketRoomId, categories, senderSocketId, organizationId, isMultipleUsers);
-            if (newRoomId != null) {
-                return this.buildSocketMappingResponse(newRoomId, true);
-            } else {
-                return this.buildSocketMappingResponse(null, false);
+            if (this.handleExistingRoom(roomId, socketSessionEntry, senderSocketId, organizationId, isMultipleUsers)) {
+                socketRoomCount.set(this.sessionRegistry.getRoomSize(roomId, socketSessionEntry));
             }
+            return socketSessionEntry;
+        });
+
+        if (isRoomFull.get()) {
+            SocketMappingResponse fullRoomResponse = this.buildSocketMappingResponse(null, false, 0);
+            fullRoomResponse.setRejectionReason(SocketRejectionReason.ROOM_FULL);
+            return fullRoomResponse;
+        }
+        if (socketRoomCount.get() < 0) {
+            return this.buildSocketMappingResponse(null, false, 0);
         }
+        // Logged outside the atomic operation so the room key is not held while logging
+        this.socketEventLogger.log(isRoomCreated.get() ? SocketEventType.ROOM_CREATED : SocketEventType.ROOM_JOINED, null, socketRoomId, socketRoomCount.get());
+        this.socketMetrics.recordRoomSockets(socketRoomCount.get());
+        return this.buildSocketMappingResponse(socketRoomId, true, socketRoomCount.get());
     }
 
     /**
@@ -146,79 +370,166 @@ public class SocketSessionMapper {
      *
      * @param roomId The UUID of the room.
      * @param status The boolean value indicating the status.
+     * @param socketRoomCount The number of users in the room, captured when the room was updated.
+     */
+    private SocketMappingResponse buildSocketMappingResponse(UUID roomId, boolean status, int socketRoomCount) {
+        int roomCount = (roomId != null) ? socketRoomCount : 0;
+        Integer roomGroupCount = null;
+        RoomGroup roomGroup = (roomId != null) ? this.roomGroups.get(roomId) : null;
+        if (roomGroup != null) {
+            // The rooms of a group are told the number of people in the member rooms, and the member rooms are told the number of people in the parent room
+            roomGroupCount = this.getMemberSocketCount(roomGroup);
+            if (!roomGroup.isParentRoom(roomId)) {
+                roomCount = this.sessionRegistry.getRoomSize(roomGroup.getParentRoomId());
+            }
+        }
+        // ExIncHub clients always expect a number here, so rooms in no group are told the member count of the default group
+        Integer exIncHubGamingRoomCount = (roomGroupCount != null) ? roomGroupCount
+                : (this.defaultRoomGroup != null) ? this.getMemberSocketCount(this.defaultRoomGroup) : bufferUserCountDisplayTemp - bufferDecrementTemp;
+        return SocketMappingResponse.builder()
+                .socketRoomId(roomId)
+                .socketRoomCount(roomCount + bufferUserCountDisplayTemp)
+                .processStatus(status)
+                .roomGroupCount(roomGroupCount)
+                .exIncHubGamingRoomCount(exIncHubGamingRoomCount)
+                .build();
+    }
+
+    /**
+     * This method is used to get the number of people in the member rooms of a room group, across every instance, plus the display buffer.
+     * The count is kept up to date on every join and leave, so it is read without visiting the member rooms.
+     *
+     * @param roomGroup The RoomGroup object containing the room group details.
      */
-    private SocketMappingResponse buildSocketMappingResponse(UUID roomId, boolean status) {
-        int roomCount = (roomId != null) ? this.socketSessionMapping.get(roomId).getSocketUserList().size() : 0;
-        // Special Case for ExIncHub (tell the user how many people are in the main room and the number of people in the gaming room)
-        exIncHubGamingRoomCount = this.socketSessionMapping.containsKey(UUID.fromString("e615ee39-c350-4f50-ba2c-baf6b30900e7")) ? this.socketSessionMapping.get(UUID.fromString("e615ee39-c350-4f50-ba2c-baf6b30900e7")).getSocketUserList().size() : 0;
-        if (roomId != null && roomId.equals(UUID.fromString("e615ee39-c350-4f50-ba2c-baf6b30900e7"))) {
-            exIncHubMainRoomCount = this.socketSessionMapping.containsKey(UUID.fromString("91c4b664-1bfd-4311-b7fd-e52e63658f46")) ? this.socketSessionMapping.get(UUID.fromString("91c4b664-1bfd-4311-b7fd-e52e63658f46")).getSocketUserList().size() : 0;
-            roomCount = exIncHubMainRoomCount + bufferUserCountDisplayTemp;
+    private int getMemberSocketCount(RoomGroup roomGroup) {
+        return this.sessionRegistry.getRoomGroupMemberCount(roomGroup) + (bufferUserCountDisplayTemp - bufferDecrementTemp);
+    }
 
-            return SocketMappingResponse.builder()
-                    .socketRoomId(roomId)
-                    .socketRoomCount(roomCount)
-                    .processStatus(status)
-                    .exIncHubGamingRoomCount(exIncHubGamingRoomCount + (bufferUserCountDisplayTemp - bufferDecrementTemp))
-                    .build();
-        } else {
-            roomCount += bufferUserCountDisplayTemp;
-            return SocketMappingResponse.builder()
-                    .socketRoomId(roomId)
-                    .socketRoomCount(roomCount)
-                    .processStatus(status)
-                    .exIncHubGamingRoomCount(exIncHubGamingRoomCount + (bufferUserCountDisplayTemp - bufferDecrementTemp))
-                    .build();
+    /**
+     * This method is used to get one page of the socket rooms, for inspecting the registry without rendering all of it.
+     * The rooms are read while joins and leaves go on, so a page reflects the registry at roughly the time it was read.
+     *
+     * @param page The zero-based page number.
+     * @param size The number of rooms per page.
+     */
+    public SocketRoomSnapshotPage getSocketRoomSnapshotPage(int page, int size) {
+        Map<UUID, SocketSessionEntry> socketSessionMapping = this.sessionRegistry.getRooms();
+        List<SocketRoomSnapshot> socketRoomSnapshots = new ArrayList<>(size);
+        long skippedRooms = (long) page * size;
+        for (Map.Entry<UUID, SocketSessionEntry> socketRoom : socketSessionMapping.entrySet()) {
+            if (socketRoomSnapshots.size() >= size) {
+                break;
+            }
+            if (skippedRooms > 0) {
+                skippedRooms--;
+                continue;
+            }
+            socketRoomSnapshots.add(SocketRoomSnapshot.builder()
+                    .socketRoomId(socketRoom.getKey())
+                    .socketRoomCategoryList(socketRoom.getValue().getSocketRoomCategoryList())
+                    .isForMultipleUsers(socketRoom.getValue().getIsForMultipleUsers())
+                    .socketRoomCount(this.sessionRegistry.getRoomSize(socketRoom.getKey(), socketRoom.getValue()))
+                    .build());
         }
+
+        return SocketRoomSnapshotPage.builder()
+                .page(page)
+                .size(size)
+                .totalSocketRooms(socketSessionMapping.size())
+                .socketRooms(socketRoomSnapshots)
+                .build();
     }
 
     /**
-     * This method is used to find an existing room by categories.
+     * This method is used to get the current presence of a socket room, with the same counts as a join or leave response.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    public SocketMappingResponse getSocketRoomPresence(UUID socketRoomId) {
+        return this.buildSocketMappingResponse(socketRoomId, true, this.getSocketRoomSize(socketRoomId));
+    }
+
+    /**
+     * This method is used to get the number of users in a room, or 0 if the room does not exist.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     */
+    private int getSocketRoomSize(UUID socketRoomId) {
+        return this.sessionRegistry.getRoomSize(socketRoomId);
+    }
+
+    /**
+     * This method is used to find an existing room by categories and join it.
+     * Each candidate room is joined atomically; a candidate that is removed or fills up concurrently is skipped.
+     * Full rooms are taken out of the category index, so the first candidate is usually open and the lookup stays O(1).
+     * If the return value is null, no room was joined.
      *
      * @param categories The list of categories.
      * @param senderSocketId The UUID of the sender socket.
      * @param isMultipleUsers The boolean value indicating if the session is for multiple users.
      * @param organizationId The UUID of the organization.
      */
-    private UUID findExistingRoomByCategories(List<String> categories, UUID senderSocketId, Boolean isMultipleUsers, UUID organizationId) {
-        for (Map.Entry<UUID, SocketSessionEntry> entry : this.socketSessionMapping.entrySet()) {
-            SocketSessionEntry socketSessionEntry = entry.getValue();
-            if (socketSessionEntry.getSocketRoomCategoryList().equals(categories)) {
-                if (isUserInRoom(socketSessionEntry, senderSocketId) || isUserTypeMismatch(socketSessionEntry, isMultipleUsers)) {
-                    return null;
+    private SocketMappingResponse findExistingRoomByCategories(List<String> categories, UUID senderSocketId, Boolean isMultipleUsers, UUID organizationId) {
+        Set<UUID> candidateRoomIds = this.sessionRegistry.findRoomsByCategoryKey(toCategoryKey(categories));
+        for (UUID candidateRoomId : candidateRoomIds) {
+            AtomicBoolean isRoomPresent = new AtomicBoolean(false);
+            AtomicBoolean isRoomFull = new AtomicBoolean(false);
+            AtomicInteger socketRoomCount = new AtomicInteger(-1);
+            this.sessionRegistry.computeRoomIfPresent(candidateRoomId, (roomId, socketSessionEntry) -> {
+                isRoomPresent.set(true);
+                if (this.isRoomFull(roomId, socketSessionEntry)) {
+                    // e.g., a shared room that filled up on another instance
+                    isRoomFull.set(true);
+                    this.sessionRegistry.unindexRoomCategories(roomId, socketSessionEntry);
+                    return socketSessionEntry;
                 }
-                this.addUserToRoom(socketSessionEntry, senderSocketId, organizationId);
-                this.socketSessionMapping.put(entry.getKey(), socketSessionEntry);
-                log.info("[Category] Socket room updated: {}", entry.getKey());
-                log.info("[Category] Updated Socket room mapping: {}", this.socketSessionMapping);
-                return entry.getKey();
+                if (this.handleExistingRoom(roomId, socketSessionEntry, senderSocketId, organizationId, isMultipleUsers)) {
+                    socketRoomCount.set(this.sessionRegistry.getRoomSize(roomId, socketSessionEntry));
+                }
+                return socketSessionEntry;
+            });
+            if (!isRoomPresent.get() || isRoomFull.get()) {
+                // The room was removed or filled up after the index lookup
+                continue;
+            }
+            if (socketRoomCount.get() < 0) {
+                return null;
             }
+            this.socketEventLogger.log(SocketEventType.ROOM_JOINED, null, candidateRoomId, socketRoomCount.get());
+            this.socketMetrics.recordRoomSockets(socketRoomCount.get());
+            return this.buildSocketMappingResponse(candidateRoomId, true, socketRoomCount.get());
         }
         return null;
     }
 
     /**
      * This method is used to handle the existing room.
+     * It must only be called from within an atomic operation on the room key.
+     * If the return value is true, the user is added to the room.
      *
      * @param socketRoomId The UUID of the socket room.
+     * @param socketSessionEntry The SocketSessionEntry object containing the socket session entry details.
      * @param senderSocketId The UUID of the sender socket.
      * @param organizationId The UUID of the organization.
      * @param isMultipleUsers The boolean value indicating if the session is for multiple users.
      */
-    private UUID handleExistingRoom(UUID socketRoomId, UUID senderSocketId, UUID organizationId, Boolean isMultipleUsers) {
-        SocketSessionEntry socketSessionEntry = this.socketSessionMapping.get(socketRoomId);
+    private boolean handleExistingRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry, UUID senderSocketId, UUID organizationId, Boolean isMultipleUsers) {
         if (isUserInRoom(socketSessionEntry, senderSocketId) || isUserTypeMismatch(socketSessionEntry, isMultipleUsers)) {
-            return null;
+            return false;
+        }
+        if (!addUserToRoom(socketRoomId, socketSessionEntry, senderSocketId, organizationId)) {
+            return false;
         }
-        addUserToRoom(socketSessionEntry, senderSocketId, organizationId);
-        this.socketSessionMapping.put(socketRoomId, socketSessionEntry);
-        log.info("[UUID] Socket room updated: {}", socketRoomId);
-        log.info("[UUID] Updated Socket room mapping: {}", this.socketSessionMapping);
-        return socketRoomId;
+        if (this.isRoomFull(socketRoomId, socketSessionEntry)) {
+            // A full room is taken out of matchmaking until a member leaves
+            this.sessionRegistry.unindexRoomCategories(socketRoomId, socketSessionEntry);
+        }
+        return true;
     }
 
     /**
      * This method is used to create a new room.
+     * It must only be called from within an atomic operation on the room key.
      *
      * @param socketRoomId The UUID of the socket room.
      * @param categories The list of categories.
@@ -226,13 +537,14 @@ public class SocketSessionMapper {
      * @param organizationId The UUID of the organization.
      * @param isMultipleUsers The boolean value indicating if the session is for multiple users.
      */
-    private UUID createNewRoom(UUID socketRoomId, List<String> categories, UUID senderSocketId, UUID organizationId, Boolean isMultipleUsers) {
+    private SocketSessionEntry createNewRoom(UUID socketRoomId, List<String> categories, UUID senderSocketId, UUID organizationId, Boolean isMultipleUsers) {
         SocketSessionEntry socketSessionEntry = this.createSocketSessionEntry(categories, isMultipleUsers);
-        socketSessionEntry.getSocketUserList().add(this.createSocketUser(senderSocketId, organizationId));
-        this.socketSessionMapping.put(socketRoomId, socketSessionEntry);
-        log.info("Socket room created: {}", socketRoomId);
-        log.info("Current Socket room mapping: {}", this.socketSessionMapping);
-        return socketRoomId;
+        socketSessionEntry.setOrganizationId(organizationId);
+        addUserToRoom(socketRoomId, socketSessionEntry, senderSocketId, organizationId);
+        if (!this.isRoomFull(socketRoomId, socketSessionEntry)) {
+            this.sessionRegistry.indexRoomCategories(socketRoomId, socketSessionEntry);
+        }
+        return socketSessionEntry;
     }
 
     /**
@@ -242,12 +554,7 @@ public class SocketSessionMapper {
      * @param senderSocketId The UUID of the sender socket.
      */
     private boolean isUserInRoom(SocketSessionEntry socketSessionEntry, UUID senderSocketId) {
-        for (SocketUser socketUser : socketSessionEntry.getSocketUserList()) {
-            if (socketUser.getSenderSocketId().equals(senderSocketId)) {
-                return true;
-            }
-        }
-        return false;
+        return socketSessionEntry.getSocketUserMap().containsKey(senderSocketId);
     }
 
     /**
@@ -263,17 +570,38 @@ public class SocketSessionMapper {
 
     /**
      * This method is used to add a user to the room.
+     * If the return value is true, the user is added to the room.
      *
+     * @param socketRoomId The UUID of the socket room.
      * @param socketSessionEntry The SocketSessionEntry object containing the socket session entry details.
      * @param senderSocketId The UUID of the sender socket.
      * @param organizationId The UUID of the organization.
      */
-    private void addUserToRoom(SocketSessionEntry socketSessionEntry, UUID senderSocketId, UUID organizationId) {
-        socketSessionEntry.getSocketUserList().add(this.createSocketUser(senderSocketId, organizationId));
+    private boolean addUserToRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry, UUID senderSocketId, UUID organizationId) {
+        boolean isAdded = this.sessionRegistry.addSocketToRoom(socketRoomId, socketSessionEntry, this.createSocketUser(senderSocketId, organizationId));
+        if (isAdded) {
+            this.updateRoomGroupMemberCount(socketRoomId, 1);
+        }
+        return isAdded;
+    }
+
+    /**
+     * This method is used to update the member count of the room group that a room is a member room of, if any.
+     *
+     * @param socketRoomId The UUID of the socket room.
+     * @param memberDelta The number of users that joined the room, or the negated number of users that left it.
+     */
+    private void updateRoomGroupMemberCount(UUID socketRoomId, int memberDelta) {
+        RoomGroup roomGroup = this.roomGroups.get(socketRoomId);
+        if (roomGroup != null && !roomGroup.isParentRoom(socketRoomId)) {
+            this.sessionRegistry.updateRoomGroupMemberCount(roomGroup, memberDelta);
+        }
     }
 
     /**
      * This method is used for socket sessions that are trying to LEAVE a room.
+     * The user is removed and the room is cleaned up in a single atomic operation on the room key,
+     * so a LEAVE cannot delete a room that a concurrent JOIN has just repopulated.
      * If the return value is true, the user is successfully removed from the room.
      * If the return value is false, the user is not in the room.
      *
@@ -284,38 +612,24 @@ public class SocketSessionMapper {
         UUID senderSocketId,
         UUID socketRoomId
     ) {
-        if (this.doesSocketRoomExist(socketRoomId)) {
-            SocketSessionEntry socketSessionEntry = this.socketSessionMapping.get(socketRoomId);
-            List<SocketUser> socketUserList = socketSessionEntry.getSocketUserList();
-
-            for (SocketUser socketUser : socketUserList) {
-                if (socketUser.getSenderSocketId().equals(senderSocketId)) {
-                    socketUserList.remove(socketUser);
-                    socketSessionEntry.setSocketUserList(socketUserList);
-                    this.socketSessionMapping.put(socketRoomId, socketSessionEntry);
-
-                    this.cleanUpSocketRoom(socketRoomId);
-
-                    // This logic section is for ExIncHub telling the main room to update the count for both online user count and games count
-                    exIncHubGamingRoomCount = this.socketSessionMapping.containsKey(UUID.fromString("e615ee39-c350-4f50-ba2c-baf6b30900e7")) ? this.socketSessionMapping.get(UUID.fromString("e615ee39-c350-4f50-ba2c-baf6b30900e7")).getSocketUserList().size() : 0;
-                    if (socketRoomId != null && socketRoomId.equals(UUID.fromString("e615ee39-c350-4f50-ba2c-baf6b30900e7"))) {
-                        exIncHubMainRoomCount = this.socketSessionMapping.containsKey(UUID.fromString("91c4b664-1bfd-4311-b7fd-e52e63658f46")) ? this.socketSessionMapping.get(UUID.fromString("91c4b664-1bfd-4311-b7fd-e52e63658f46")).getSocketUserList().size() : 0;
-                        return SocketMappingResponse.builder()
-                                .socketRoomId(socketRoomId)
-                                .socketRoomCount(exIncHubMainRoomCount + bufferUserCountDisplayTemp)
-                                .processStatus(true)
-                                .exIncHubGamingRoomCount(exIncHubGamingRoomCount + (bufferUserCountDisplayTemp - bufferDecrementTemp))
-                                .build();
-                    }
-
-                    return SocketMappingResponse.builder()
-                            .socketRoomId(socketRoomId)
-                            .socketRoomCount(socketUserList.size() + bufferUserCountDisplayTemp)
-                            .processStatus(true)
-                            .exIncHubGamingRoomCount(exIncHubGamingRoomCount + (bufferUserCountDisplayTemp - bufferDecrementTemp))
-                            .build();
+        AtomicInteger socketRoomCount = new AtomicInteger(-1);
+        if (socketRoomId != null) {
+            this.sessionRegistry.computeRoomIfPresent(socketRoomId, (roomId, socketSessionEntry) -> {
+                if (!this.sessionRegistry.removeSocketFromRoom(roomId, socketSessionEntry, senderSocketId)) {
+                    return socketSessionEntry;
                 }
+                this.updateRoomGroupMemberCount(roomId, -1);
+                socketRoomCount.set(this.sessionRegistry.getRoomSize(roomId, socketSessionEntry));
+                return this.cleanUpSocketRoom(roomId, socketSessionEntry);
+            });
+        }
+
+        if (socketRoomCount.get() >= 0) {
+            this.socketEventLogger.log(SocketEventType.ROOM_LEFT, null, socketRoomId, socketRoomCount.get());
+            if (socketRoomCount.get() == 0) {
+                this.socketEventLogger.log(SocketEventType.ROOM_REMOVED, null, socketRoomId, 0);
             }
+            return this.buildSocketMappingResponse(socketRoomId, true, socketRoomCount.get());
         }
         return SocketMappingResponse.builder()
                 .socketRoomId(null)
@@ -326,17 +640,91 @@ public class SocketSessionMapper {
 
     /**
      * This method is used to clean up the socket room.
+     * It must only be called from within an atomic operation on the room key.
+     * If the return value is null, the room is empty and must be removed from the mapping.
      *
      * @param socketRoomId The UUID of the socket room.
+     * @param socketSessionEntry The SocketSessionEntry object containing the socket session entry details.
+     */
+    private SocketSessionEntry cleanUpSocketRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry) {
+        if (socketSessionEntry.getSocketUserMap().isEmpty()) {
+            this.sessionRegistry.unindexRoomCategories(socketRoomId, socketSessionEntry);
+            return null;
+        }
+        if (this.getRoomCapacity(socketSessionEntry.getSocketRoomCategoryKey()) > 0 && !this.isRoomFull(socketRoomId, socketSessionEntry)) {
+            // A room that was full is back in matchmaking once a member leaves
+            this.sessionRegistry.indexRoomCategories(socketRoomId, socketSessionEntry);
+        }
+        return socketSessionEntry;
+    }
+
+    /**
+     * This method is used to bind a sender socket to the STOMP session that linked it.
+     * The binding is used to remove the socket from every room when the STOMP session disconnects.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     * @param senderSocketId The UUID of the sender socket.
      */
-    private void cleanUpSocketRoom(UUID socketRoomId) {
-        if (this.doesSocketRoomExist(socketRoomId)) {
-            SocketSessionEntry socketSessionEntry = this.socketSessionMapping.get(socketRoomId);
-            if (socketSessionEntry.getSocketUserList().isEmpty()) {
-                log.info("Socket room removed: {}", socketRoomId);
-                this.socketSessionMapping.remove(socketRoomId);
+    public void bindStompSession(String stompSessionId, UUID senderSocketId) {
+        if (stompSessionId == null || senderSocketId == null) {
+            return;
+        }
+        this.sessionRegistry.bindStompSession(stompSessionId, senderSocketId);
+    }
+
+    /**
+     * This method is used to get the STOMP session that currently owns a sender socket on this instance, for direct messages.
+     * If the return value is null, the socket is not linked through this instance or is not a member of the socket room.
+     *
+     * @param senderSocketId The UUID of the sender socket.
+     * @param socketRoomId The UUID of the socket room the socket must be a member of.
+     */
+    public String getStompSessionId(UUID senderSocketId, UUID socketRoomId) {
+        if (senderSocketId == null || socketRoomId == null || !this.sessionRegistry.getSocketRooms(senderSocketId).contains(socketRoomId)) {
+            return null;
+        }
+        return this.sessionRegistry.getStompSessionId(senderSocketId);
+    }
+
+    /**
+     * This method is used for STOMP sessions that have disconnected.
+     * Every sender socket owned by the session is removed from every room it has joined, without scanning the rooms.
+     * Each element of the returned list is the LEAVE response of one room.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     */
+    public List<SocketMappingResponse> removeStompSession(String stompSessionId) {
+        if (stompSessionId == null) {
+            return Collections.emptyList();
+        }
+
+        List<SocketMappingResponse> removeSocketSessionResponses = new ArrayList<>();
+        for (UUID senderSocketId : this.sessionRegistry.unbindStompSession(stompSessionId)) {
+            removeSocketSessionResponses.addAll(this.removeSocketFromAllRooms(senderSocketId));
+        }
+        return removeSocketSessionResponses;
+    }
+
+    /**
+     * This method is used to remove a sender socket from every room it has joined.
+     * Each element of the returned list is the LEAVE response of one room.
+     *
+     * @param senderSocketId The UUID of the sender socket.
+     */
+    public List<SocketMappingResponse> removeSocketFromAllRooms(UUID senderSocketId) {
+        Set<UUID> socketRoomIds = this.sessionRegistry.getSocketRooms(senderSocketId);
+        if (socketRoomIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<SocketMappingResponse> removeSocketSessionResponses = new ArrayList<>(socketRoomIds.size());
+        for (UUID socketRoomId : socketRoomIds) {
+            SocketMappingResponse removeSocketSessionResponse = this.removeSocketSession(senderSocketId, socketRoomId);
+            if (removeSocketSessionResponse.isProcessStatus()) {
+                removeSocketSessionResponses.add(removeSocketSessionResponse);
             }
         }
+        return removeSocketSessionResponses;
     }
 
     /**
@@ -0,0 +1,41 @@
+package github.gtopinio.STOMPaaS.models.interfaces;
+
+import github.gtopinio.STOMPaaS.models.classes.RoomGroup;
+import github.gtopinio.STOMPaaS.models.classes.SocketSessionEntry;
+import github.gtopinio.STOMPaaS.models.classes.SocketUser;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * SessionRegistry
+ * This holds the room state behind the SocketSessionMapper: the rooms, their members, and the indexes used for matchmaking and disconnects.
+ * Room updates go through computeRoom and computeRoomIfPresent, which must be atomic per room key.
+ * Room group counts are kept apart from the rooms: the mapper reports each join and leave of a member room once, so reading a count never sums the member rooms.
+ * The membership and index methods must only be called from within those atomic operations, except for the STOMP session bindings.
+ */
+public interface SessionRegistry {
+    SocketSessionEntry getRoom(UUID socketRoomId);
+    boolean containsRoom(UUID socketRoomId);
+    Map<UUID, SocketSessionEntry> getRooms();
+    SocketSessionEntry computeRoom(UUID socketRoomId, BiFunction<UUID, SocketSessionEntry, SocketSessionEntry> remappingFunction);
+    SocketSessionEntry computeRoomIfPresent(UUID socketRoomId, BiFunction<UUID, SocketSessionEntry, SocketSessionEntry> remappingFunction);
+
+    boolean addSocketToRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry, SocketUser socketUser);
+    boolean removeSocketFromRoom(UUID socketRoomId, SocketSessionEntry socketSessionEntry, UUID senderSocketId);
+    int getRoomSize(UUID socketRoomId, SocketSessionEntry socketSessionEntry);
+    int getRoomSize(UUID socketRoomId);
+    void updateRoomGroupMemberCount(RoomGroup roomGroup, int memberDelta);
+    int getRoomGroupMemberCount(RoomGroup roomGroup);
+
+    void indexRoomCategories(UUID socketRoomId, SocketSessionEntry socketSessionEntry);
+    void unindexRoomCategories(UUID socketRoomId, SocketSessionEntry socketSessionEntry);
+    Set<UUID> findRoomsByCategoryKey(String categoryKey);
+    Set<UUID> getSocketRooms(UUID senderSocketId);
+
+    void bindStompSession(String stompSessionId, UUID senderSocketId);
+    Set<UUID> unbindStompSession(String stompSessionId);
+    String getStompSessionId(UUID senderSocketId);
+}
@@ -0,0 +1,31 @@
+package github.gtopinio.STOMPaaS.models.interfaces;
+
+import github.gtopinio.STOMPaaS.models.classes.RoomUpdate;
+import github.gtopinio.STOMPaaS.models.classes.SharedRoomState;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * SessionRegistryStore
+ * This is the shared backend of the DistributedSessionRegistry (e.g., Redis).
+ * applyRoomUpdates is called with a whole batch so implementations can send it in a single pipelined round trip.
+ * Each update carries the absolute member count of a room on one instance, which replaces the count that instance published before,
+ * so a repeated or late update never counts members twice. A room whose shared member count drops to zero must be removed together with its category index entry.
+ * Each instance holds a lease that it renews while it is alive; removeDeadInstances removes the members of every instance whose lease has run out
+ * from the shared counts, so the rooms of a crashed instance do not keep their counts or their category index entries.
+ * Room group counts follow the same rules: applyRoomGroupUpdates replaces the member count of each group on one instance, and the counts of dead instances are swept too.
+ * renewInstanceLease returns false if the lease had run out, so the instance can publish its rooms again in case they were swept.
+ */
+public interface SessionRegistryStore {
+    Map<UUID, Long> applyRoomUpdates(List<RoomUpdate> roomUpdates);
+    Map<UUID, Long> applyRoomGroupUpdates(String instanceId, Map<UUID, Integer> instanceMemberCounts);
+    long getRemoteRoomGroupMemberCount(UUID parentRoomId, String instanceId);
+    SharedRoomState getRoomState(UUID socketRoomId);
+    Set<UUID> findRoomsByCategoryKey(String categoryKey);
+    boolean renewInstanceLease(String instanceId, long leaseTtl);
+    void releaseInstanceLease(String instanceId);
+    Set<UUID> removeDeadInstances();
+}
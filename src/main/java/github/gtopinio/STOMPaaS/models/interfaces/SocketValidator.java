@@ -1,9 +1,11 @@
 package github.gtopinio.STOMPaaS.models.interfaces;
 
 import github.gtopinio.STOMPaaS.models.DTOs.SocketDTO;
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
 
 public interface SocketValidator {
     boolean validate(SocketDTO input);
+    SocketRejectionReason getRejectionReason(SocketDTO input);
     boolean isUUID(String value);
     <T extends Enum<T>> boolean isEnumValue(String value, Class<T> enumClass);
 }
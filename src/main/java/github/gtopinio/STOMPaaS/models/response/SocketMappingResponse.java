@@ -1,5 +1,6 @@
 package github.gtopinio.STOMPaaS.models.response;
 
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -15,6 +16,8 @@ public class SocketMappingResponse {
     private UUID socketRoomId;
     private Integer socketRoomCount;
     private boolean processStatus;
-    private Integer exIncHubGamingRoomCount;
+    private Integer roomGroupCount; // Sockets in the member rooms of the room's group; null if the room is in no group
+    private Integer exIncHubGamingRoomCount; // roomGroupCount, or the member count of the default room group for rooms in no group; kept for the existing ExIncHub clients
     private Integer exIncHubMainRoomCount;
+    private SocketRejectionReason rejectionReason; // Why the socket was not mapped; null if it was, or if there is no specific reason
 }
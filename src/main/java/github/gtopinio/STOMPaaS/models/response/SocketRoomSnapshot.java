@@ -0,0 +1,20 @@
+package github.gtopinio.STOMPaaS.models.response;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.UUID;
+
+@ToString
+@Getter
+@Setter
+@Builder
+public class SocketRoomSnapshot {
+    private UUID socketRoomId;
+    private List<String> socketRoomCategoryList;
+    private Boolean isForMultipleUsers;
+    private Integer socketRoomCount;
+}
@@ -0,0 +1,19 @@
+package github.gtopinio.STOMPaaS.models.response;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+@ToString
+@Getter
+@Setter
+@Builder
+public class SocketRoomSnapshotPage {
+    private int page;
+    private int size;
+    private int totalSocketRooms;
+    private List<SocketRoomSnapshot> socketRooms;
+}
@@ -0,0 +1,85 @@
+package github.gtopinio.STOMPaaS.services;
+
+import github.gtopinio.STOMPaaS.models.helpers.SessionActivityTracker;
+import github.gtopinio.STOMPaaS.models.helpers.SessionBackpressureMonitor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionIdleReaper
+ * This removes the STOMP sessions that stopped sending heartbeats, e.g., behind a dead TCP connection.
+ * On every tick the idle sessions found by the SessionActivityTracker are first removed from their rooms in one pass,
+ * so the room counts and the fan-out are corrected right away, and then their WebSocket sessions are closed.
+ */
+@Service
+@Slf4j
+public class SessionIdleReaper implements AutoCloseable {
+    private final SessionActivityTracker sessionActivityTracker;
+    private final SocketService socketService;
+    private final SessionBackpressureMonitor sessionBackpressureMonitor;
+    private final ScheduledExecutorService reaperScheduler;
+
+    public SessionIdleReaper(
+            SessionActivityTracker sessionActivityTracker,
+            SocketService socketService,
+            SessionBackpressureMonitor sessionBackpressureMonitor
+    ) {
+        this.sessionActivityTracker = sessionActivityTracker;
+        this.socketService = socketService;
+        this.sessionBackpressureMonitor = sessionBackpressureMonitor;
+
+        if (sessionActivityTracker.isEnabled()) {
+            this.reaperScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stompaas-idle-reaper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long tickInterval = sessionActivityTracker.getTickInterval();
+            this.reaperScheduler.scheduleWithFixedDelay(this::reapSafely, tickInterval, tickInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.reaperScheduler = null;
+        }
+    }
+
+    /**
+     * This method is used to remove and close the sessions that have been idle for too long.
+     *
+     * @return The number of idle sessions found.
+     */
+    public int reap() {
+        List<String> idleStompSessionIds = this.sessionActivityTracker.pollIdleSessions(System.currentTimeMillis());
+        if (idleStompSessionIds.isEmpty()) {
+            return 0;
+        }
+
+        int unlinkedSessionCount = this.socketService.unlinkIdleSessions(idleStompSessionIds);
+        for (String stompSessionId : idleStompSessionIds) {
+            this.sessionBackpressureMonitor.closeSession(stompSessionId, SessionActivityTracker.IDLE_CLOSE_STATUS);
+        }
+        log.info("Reaped {} idle sessions, {} of them linked to rooms", idleStompSessionIds.size(), unlinkedSessionCount);
+        return idleStompSessionIds.size();
+    }
+
+    @Override
+    public void close() {
+        if (this.reaperScheduler != null) {
+            this.reaperScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * This method is used to reap without letting an exception cancel the scheduled ticks.
+     */
+    private void reapSafely() {
+        try {
+            this.reap();
+        } catch (Exception e) {
+            log.error("Error reaping idle sessions: {}", e.getMessage());
+        }
+    }
+}
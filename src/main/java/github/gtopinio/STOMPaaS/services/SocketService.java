@@ -3,17 +3,25 @@ package github.gtopinio.STOMPaaS.services;
 import github.gtopinio.STOMPaaS.models.DTOs.SocketDTO;
 import github.gtopinio.STOMPaaS.models.classes.SocketMessage;
 import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.SocketEventType;
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
 import github.gtopinio.STOMPaaS.models.enums.UserType;
 import github.gtopinio.STOMPaaS.models.factories.SocketSessionResponseFactory;
+import github.gtopinio.STOMPaaS.models.helpers.MessageJournal;
+import github.gtopinio.STOMPaaS.models.helpers.RoomMessageHistory;
+import github.gtopinio.STOMPaaS.models.helpers.RoomPresenceAggregator;
+import github.gtopinio.STOMPaaS.models.helpers.SessionActivityTracker;
+import github.gtopinio.STOMPaaS.models.helpers.SocketEventLogger;
 import github.gtopinio.STOMPaaS.models.helpers.SocketInputValidator;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMessageBroadcaster;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMetrics;
+import github.gtopinio.STOMPaaS.models.helpers.SocketRateLimiter;
 import github.gtopinio.STOMPaaS.models.helpers.SocketSessionMapper;
 import github.gtopinio.STOMPaaS.models.response.SocketMappingResponse;
 import github.gtopinio.STOMPaaS.models.response.SocketSessionResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
@@ -22,18 +30,39 @@ import java.util.*;
 @Service
 @Slf4j
 public class SocketService {
-    private final SimpMessagingTemplate messagingTemplate;
+    public static final String HISTORY_DESTINATION = "/queue/history";
+    public static final String DIRECT_MESSAGE_DESTINATION = "/queue/messages";
+
+    private final SocketMessageBroadcaster socketMessageBroadcaster;
     private final SocketInputValidator socketInputValidator;
     private final SocketSessionMapper socketSessionMapper;
+    private final RoomPresenceAggregator roomPresenceAggregator;
+    private final SocketEventLogger socketEventLogger;
+    private final SocketMetrics socketMetrics;
+    private final RoomMessageHistory roomMessageHistory;
+    private final MessageJournal messageJournal;
+    private final SocketRateLimiter socketRateLimiter;
 
     public SocketService(
-        SimpMessagingTemplate messagingTemplate,
+        SocketMessageBroadcaster socketMessageBroadcaster,
         SocketInputValidator socketInputValidator,
-        SocketSessionMapper socketSessionMapper
+        SocketSessionMapper socketSessionMapper,
+        RoomPresenceAggregator roomPresenceAggregator,
+        SocketEventLogger socketEventLogger,
+        SocketMetrics socketMetrics,
+        RoomMessageHistory roomMessageHistory,
+        MessageJournal messageJournal,
+        SocketRateLimiter socketRateLimiter
     ) {
-        this.messagingTemplate = messagingTemplate;
+        this.socketMessageBroadcaster = socketMessageBroadcaster;
         this.socketInputValidator = socketInputValidator;
         this.socketSessionMapper = socketSessionMapper;
+        this.roomPresenceAggregator = roomPresenceAggregator;
+        this.socketEventLogger = socketEventLogger;
+        this.socketMetrics = socketMetrics;
+        this.roomMessageHistory = roomMessageHistory;
+        this.messageJournal = messageJournal;
+        this.socketRateLimiter = socketRateLimiter;
     }
 
     /**
@@ -47,13 +76,16 @@ public class SocketService {
         SimpMessageHeaderAccessor headerAccessor
     ) {
         // Validate input
-        if (!this.socketInputValidator.validate(input)) {
-            log.error("Linking socket session failed: Invalid input");
+        SocketRejectionReason rejectionReason = this.socketInputValidator.getRejectionReason(input);
+        if (rejectionReason != null) {
+            log.error("Linking socket session failed: Invalid input ({})", rejectionReason);
+            this.socketMetrics.recordRejection(rejectionReason);
             return SocketSessionResponseFactory.createBadRequestResponse(null, "Invalid input");
         }
 
         if (!input.getMessageType().equals(MessageType.JOIN)) {
             log.error("Linking socket session failed: Invalid message type when linking socket session");
+            this.socketMetrics.recordRejection(SocketRejectionReason.INVALID_MESSAGE_TYPE);
             return SocketSessionResponseFactory.createBadRequestResponse(null, "Invalid message type when linking socket session");
         }
 
@@ -65,101 +97,173 @@ public class SocketService {
             input.getIsForMultipleUsers()
         );
 
+        if (upsertSocketSessionResponse != null && upsertSocketSessionResponse.getRejectionReason() == SocketRejectionReason.ROOM_FULL) {
+            log.error("Linking socket session failed: Socket room is full");
+            this.socketMetrics.recordRejection(SocketRejectionReason.ROOM_FULL);
+            return SocketSessionResponseFactory.createConflictResponse(input.getSocketRoomId(), "Socket room is full");
+        }
         if (upsertSocketSessionResponse == null || !upsertSocketSessionResponse.isProcessStatus()) {
             log.error("Linking socket session failed: Response ID is null");
+            this.socketMetrics.recordRejection(SocketRejectionReason.LINK_FAILED);
             return SocketSessionResponseFactory.createErrorResponse(null, "Error linking socket session");
         }
 
+        this.socketSessionMapper.bindStompSession(headerAccessor.getSessionId(), input.getSenderSocketId());
+
+        // Category matchmaking may have put the socket in another room than the one asked for, e.g., an open room with the same categories
+        UUID socketRoomId = upsertSocketSessionResponse.getSocketRoomId();
+
         // This is a message to be sent to the socket room by the system
         var responseMessage = SocketMessage.builder()
                 .content("User " + input.getSenderUsername() + " has joined the chat")
                 .senderUsername(UserType.SYSTEM.toString())
                 .senderSocketId(null)
+                .socketRoomId(socketRoomId)
                 .type(MessageType.JOIN)
                 .socketRoomCount(upsertSocketSessionResponse.getSocketRoomCount())
+                .roomGroupCount(upsertSocketSessionResponse.getRoomGroupCount())
                 .exIncHubGamingRoomCount(upsertSocketSessionResponse.getExIncHubGamingRoomCount())
                 .build();
 
-        this.handleJoinMessage(headerAccessor, input.getSenderSocketId(), input.getSocketRoomId(), responseMessage);
+        this.handleJoinMessage(headerAccessor, input.getSenderSocketId(), socketRoomId, responseMessage);
 
-        // This is telling the ExIncHubMainRoom that a new game has started, and it needs to update its count for both online users and games
-        if (input.getSocketRoomId().equals(UUID.fromString("e615ee39-c350-4f50-ba2c-baf6b30900e7"))) {
-            var pingMessageToExIncHubGamingRoom = SocketMessage.builder()
+        // The parent room of a member room is told the new counts, e.g., a lobby updating its count of players in game
+        UUID parentRoomId = this.socketSessionMapper.getParentRoomId(socketRoomId);
+        if (this.roomPresenceAggregator.isEnabled()) {
+            // The counts of this room, and of its parent room, go out with the next PRESENCE frames
+            this.roomPresenceAggregator.markRoomChanged(socketRoomId);
+            if (parentRoomId != null) {
+                this.roomPresenceAggregator.markRoomChanged(parentRoomId);
+            }
+        }
+        if (parentRoomId != null && this.roomPresenceAggregator.isMemberAnnouncementEnabled()) {
+            var pingMessageToParentRoom = SocketMessage.builder()
                     .content("New game instantiated")
                     .senderUsername(UserType.SYSTEM.toString())
                     .senderSocketId(null)
-                    .socketRoomId(input.getSocketRoomId())
+                    .socketRoomId(socketRoomId)
                     .type(MessageType.JOIN)
                     .socketRoomCount(upsertSocketSessionResponse.getSocketRoomCount())
+                    .roomGroupCount(upsertSocketSessionResponse.getRoomGroupCount())
                     .exIncHubGamingRoomCount(upsertSocketSessionResponse.getExIncHubGamingRoomCount())
                     .build();
-            this.broadcastMessage(UUID.fromString("91c4b664-1bfd-4311-b7fd-e52e63658f46"), pingMessageToExIncHubGamingRoom);
+            this.broadcastMessage(parentRoomId, pingMessageToParentRoom);
+        }
+
+        if (input.getHistoryCount() != null || input.getHistorySinceSequenceNumber() != null) {
+            this.replayHistory(headerAccessor.getSessionId(), socketRoomId, input);
         }
 
-        log.info("Linking socket session successful");
-        return SocketSessionResponseFactory.createSuccessResponse(input.getSocketRoomId(), "Socket session linked successfully");
+        this.socketEventLogger.log(SocketEventType.SESSION_LINKED, headerAccessor.getSessionId(), socketRoomId, upsertSocketSessionResponse.getSocketRoomCount());
+        return SocketSessionResponseFactory.createSuccessResponse(socketRoomId, "Socket session linked successfully");
     }
 
     /**
      * This service method is used to handle the session disconnect event.
+     * The socket is removed from every room it has joined, not only the last one.
      *
      * @param event The SessionDisconnectEvent object containing the session disconnect event details.
      */
     public SocketSessionResponse unlinkSocketSession(SessionDisconnectEvent event) {
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (event.getSessionId() == null) {
+            log.error("Unlinking socket session failed: Session ID is null");
+            this.socketMetrics.recordRejection(SocketRejectionReason.INVALID_INPUT);
+            return SocketSessionResponseFactory.createErrorResponse(null, "Session ID is null");
+        }
+
+        List<SocketMappingResponse> removeSocketSessionResponses = this.socketSessionMapper.removeStompSession(event.getSessionId());
 
-        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
-        if (sessionAttributes == null) {
-            log.error("Unlinking socket session failed: Session attributes are null");
-            return SocketSessionResponseFactory.createErrorResponse(null, "Session attributes are null");
+        if (removeSocketSessionResponses.isEmpty() && SessionActivityTracker.IDLE_CLOSE_STATUS.equals(event.getCloseStatus())) {
+            // The idle session reaper has already removed the socket from its rooms
+            return SocketSessionResponseFactory.createSuccessResponse(null, "Socket session unlinked successfully");
         }
 
-        Object socketRoomIdObj = sessionAttributes.get("socketRoomId");
-        Object senderSocketIdObj = sessionAttributes.get("senderSocketId");
+        if (removeSocketSessionResponses.isEmpty()) {
+            log.error("Unlinking socket session failed: Removing socket session failed");
+            this.socketMetrics.recordRejection(SocketRejectionReason.SESSION_NOT_FOUND);
+            return SocketSessionResponseFactory.createErrorResponse(null, "Error unlinking socket session");
+        }
 
-        if (socketRoomIdObj == null || senderSocketIdObj == null) {
-            log.error("Unlinking socket session failed: Required session attributes are missing");
-            return SocketSessionResponseFactory.createErrorResponse(null, "Required session attributes are missing");
+        for (SocketMappingResponse removeSocketSessionResponse : removeSocketSessionResponses) {
+            this.handleLeaveMessage(removeSocketSessionResponse);
         }
 
-        UUID socketRoomId = UUID.fromString(socketRoomIdObj.toString());
-        UUID senderSocketId = UUID.fromString(senderSocketIdObj.toString());
+        this.socketEventLogger.log(SocketEventType.SESSION_UNLINKED, event.getSessionId(), null, -1);
+        return SocketSessionResponseFactory.createSuccessResponse(null, "Socket session unlinked successfully");
+    }
 
-        var removeSocketSessionResponse = this.socketSessionMapper.removeSocketSession(senderSocketId, socketRoomId);
+    /**
+     * This service method is used to remove the sockets of idle STOMP sessions from every room they have joined.
+     * The rooms are told about the leaves as if the sessions had disconnected.
+     *
+     * @param stompSessionIds The IDs of the idle STOMP sessions.
+     * @return The number of STOMP sessions that had linked sockets.
+     */
+    public int unlinkIdleSessions(List<String> stompSessionIds) {
+        int unlinkedSessionCount = 0;
+        for (String stompSessionId : stompSessionIds) {
+            List<SocketMappingResponse> removeSocketSessionResponses = this.socketSessionMapper.removeStompSession(stompSessionId);
+            if (removeSocketSessionResponses.isEmpty()) {
+                continue;
+            }
+            for (SocketMappingResponse removeSocketSessionResponse : removeSocketSessionResponses) {
+                this.handleLeaveMessage(removeSocketSessionResponse);
+            }
+            this.socketEventLogger.log(SocketEventType.SESSION_UNLINKED, stompSessionId, null, -1);
+            unlinkedSessionCount++;
+        }
+        return unlinkedSessionCount;
+    }
 
-        if (removeSocketSessionResponse != null && removeSocketSessionResponse.isProcessStatus()) {
-            var responseMessage = SocketMessage.builder()
-                    .content("User has left the chat")
+    /**
+     * This service method is used to handle the LEAVE message of a single room.
+     *
+     * @param removeSocketSessionResponse The SocketMappingResponse object returned when the socket left the room.
+     */
+    private void handleLeaveMessage(SocketMappingResponse removeSocketSessionResponse) {
+        UUID socketRoomId = removeSocketSessionResponse.getSocketRoomId();
+        var responseMessage = SocketMessage.builder()
+                .content("User has left the chat")
+                .senderUsername(UserType.SYSTEM.toString())
+                .senderSocketId(null)
+                .socketRoomId(socketRoomId)
+                .type(MessageType.LEAVE)
+                .socketRoomCount(removeSocketSessionResponse.getSocketRoomCount())
+                .roomGroupCount(removeSocketSessionResponse.getRoomGroupCount())
+                .exIncHubGamingRoomCount(removeSocketSessionResponse.getExIncHubGamingRoomCount())
+                .build();
+
+        if (this.roomPresenceAggregator.isMemberAnnouncementEnabled()) {
+            this.broadcastMessage(socketRoomId, responseMessage);
+        }
+
+        // The room is gone once its last member has left
+        if (!this.socketSessionMapper.doesSocketRoomExist(socketRoomId)) {
+            this.socketMessageBroadcaster.evictDestination(socketRoomId);
+            this.roomMessageHistory.remove(socketRoomId);
+            this.socketRateLimiter.removeRoom(socketRoomId);
+        }
+
+        UUID parentRoomId = this.socketSessionMapper.getParentRoomId(socketRoomId);
+        if (this.roomPresenceAggregator.isEnabled()) {
+            this.roomPresenceAggregator.markRoomChanged(socketRoomId);
+            if (parentRoomId != null) {
+                this.roomPresenceAggregator.markRoomChanged(parentRoomId);
+            }
+        }
+        if (parentRoomId != null && this.roomPresenceAggregator.isMemberAnnouncementEnabled()) {
+            var pingMessageToParentRoom = SocketMessage.builder()
+                    .content("Game left by player")
                     .senderUsername(UserType.SYSTEM.toString())
                     .senderSocketId(null)
                     .socketRoomId(socketRoomId)
                     .type(MessageType.LEAVE)
                     .socketRoomCount(removeSocketSessionResponse.getSocketRoomCount())
+                    .roomGroupCount(removeSocketSessionResponse.getRoomGroupCount())
                     .exIncHubGamingRoomCount(removeSocketSessionResponse.getExIncHubGamingRoomCount())
                     .build();
-
-            this.broadcastMessage(socketRoomId, responseMessage);
-            log.info("Unlinking socket session successful");
-            log.info("Current socket room mapping: {}", this.socketSessionMapper.getSocketSessionMapping());
-
-            // This is telling the ExIncHubMainRoom that a game has ended, and it needs to update its count for both online users and games
-            if (removeSocketSessionResponse.getSocketRoomId().equals(UUID.fromString("e615ee39-c350-4f50-ba2c-baf6b30900e7"))) {
-                var pingMessageToExIncHubGamingRoom = SocketMessage.builder()
-                        .content("Game left by player")
-                        .senderUsername(UserType.SYSTEM.toString())
-                        .senderSocketId(null)
-                        .socketRoomId(removeSocketSessionResponse.getSocketRoomId())
-                        .type(MessageType.LEAVE)
-                        .socketRoomCount(removeSocketSessionResponse.getSocketRoomCount())
-                        .exIncHubGamingRoomCount(removeSocketSessionResponse.getExIncHubGamingRoomCount())
-                        .build();
-                this.broadcastMessage(UUID.fromString("91c4b664-1bfd-4311-b7fd-e52e63658f46"), pingMessageToExIncHubGamingRoom);
-            }
-            return SocketSessionResponseFactory.createSuccessResponse(null, "Socket session unlinked successfully");
+            this.broadcastMessage(parentRoomId, pingMessageToParentRoom);
         }
-
-        log.error("Unlinking socket session failed: Removing socket session failed");
-        return SocketSessionResponseFactory.createErrorResponse(null, "Error unlinking socket session");
     }
 
     /**
@@ -179,17 +283,44 @@ public class SocketService {
     {
         Objects.requireNonNull(headerAccessor.getSessionAttributes()).put("socketRoomId", socketRoomId);
         headerAccessor.getSessionAttributes().put("senderSocketId", senderSocketId);
-        this.broadcastMessage(socketRoomId, message);
+        if (this.roomPresenceAggregator.isMemberAnnouncementEnabled()) {
+            this.broadcastMessage(socketRoomId, message);
+        }
+    }
+
+    /**
+     * This service method is used to send the recent messages of a socket room to the STOMP session that joined it.
+     * The messages are sent as one HISTORY frame holding a JSON array, to /user/queue/history.
+     *
+     * @param stompSessionId The ID of the STOMP session.
+     * @param socketRoomId The UUID of the socket room that was joined.
+     * @param input The SocketDTO object of the JOIN, asking for the last messages or for the messages after a sequence number.
+     */
+    private void replayHistory(String stompSessionId, UUID socketRoomId, SocketDTO input) {
+        if (stompSessionId == null || socketRoomId == null || !this.roomMessageHistory.isEnabled()) {
+            return;
+        }
+
+        List<byte[]> payloads = (input.getHistorySinceSequenceNumber() != null)
+                ? this.roomMessageHistory.getMessagesSince(socketRoomId, input.getHistorySinceSequenceNumber())
+                : this.roomMessageHistory.getLastMessages(socketRoomId, input.getHistoryCount());
+        byte[] batchPayload = RoomMessageHistory.toBatchPayload(payloads);
+        if (!this.socketMessageBroadcaster.sendToSession(stompSessionId, HISTORY_DESTINATION, batchPayload, MessageType.HISTORY)) {
+            log.error("Replaying socket room history failed: {}", socketRoomId);
+        }
     }
 
     /**
      * This service method is used to broadcast the message to the socket room.
+     * The message is serialized once and handed straight to the broker channel.
      *
      * @param socketRoomId The UUID of the socket room.
      * @param message The SocketMessage object containing the message details.
      */
     private void broadcastMessage(UUID socketRoomId, SocketMessage message) {
-        this.messagingTemplate.convertAndSend("/topic/" + socketRoomId, message);
+        if (!this.socketMessageBroadcaster.broadcast(socketRoomId, message)) {
+            log.error("Broadcasting socket message failed: {}", socketRoomId);
+        }
     }
 
     /**
@@ -201,26 +332,49 @@ public class SocketService {
         @Payload SocketDTO input
     ) {
         // Validate input
-        if (!this.socketInputValidator.validate(input)) {
-            log.error("Socket message failed: Invalid input");
+        SocketRejectionReason rejectionReason = this.socketInputValidator.getRejectionReason(input);
+        if (rejectionReason != null) {
+            log.error("Socket message failed: Invalid input ({})", rejectionReason);
+            this.socketMetrics.recordRejection(rejectionReason);
             return SocketSessionResponseFactory.createBadRequestResponse(null, "Invalid input");
         }
 
         MessageType socketMessageType = input.getMessageType();
 
-        MessageType[] validMessageTypes = {MessageType.MESSAGE, MessageType.PING};
-        List<MessageType> validMessageTypesList = Arrays.asList(validMessageTypes);
-
-        if (!validMessageTypesList.contains(socketMessageType)) {
+        if (socketMessageType != MessageType.MESSAGE && socketMessageType != MessageType.PING) {
             log.error("Socket message failed: Invalid message type when sending socket message");
+            this.socketMetrics.recordRejection(SocketRejectionReason.INVALID_MESSAGE_TYPE);
             return SocketSessionResponseFactory.createBadRequestResponse(null, "Invalid message type when sending socket message");
         }
 
         if (!this.socketSessionMapper.doesSocketRoomExist(input.getSocketRoomId())) {
             log.error("Socket message failed: Socket room does not exist");
+            this.socketMetrics.recordRejection(SocketRejectionReason.SOCKET_ROOM_NOT_FOUND);
             return SocketSessionResponseFactory.createErrorResponse(null, "Socket room does not exist");
         }
 
+        // The organization of a room is set by the JOIN that created it, so a message cannot claim another organization
+        UUID organizationId = this.socketSessionMapper.getSocketRoomOrganizationId(input.getSocketRoomId());
+        if (input.getOrganizationId() != null && !input.getOrganizationId().equals(organizationId)) {
+            log.error("Socket message failed: Organization does not match the socket room");
+            this.socketMetrics.recordRejection(SocketRejectionReason.ORGANIZATION_MISMATCH);
+            return SocketSessionResponseFactory.createForbiddenResponse(null, "Organization does not match the socket room");
+        }
+
+        // Direct messages are not fanned out, so they only count against the sender socket
+        boolean isDirectMessage = socketMessageType.equals(MessageType.MESSAGE) && input.getReceiverSocketId() != null;
+        boolean isWithinRateLimit = isDirectMessage
+                ? this.socketRateLimiter.tryAcquireSocket(input.getSenderSocketId(), input.getSocketRoomId(), socketMessageType, 1)
+                : this.socketRateLimiter.tryAcquire(input.getSenderSocketId(), input.getSocketRoomId(), socketMessageType, 1);
+        if (!isWithinRateLimit) {
+            log.debug("Socket message failed: Rate limited ({})", input.getSenderSocketId());
+            return SocketSessionResponseFactory.createTooManyRequestsResponse(null, "Too many socket messages");
+        }
+
+        if (isDirectMessage) {
+            return this.sendDirectMessage(input);
+        }
+
         SocketMessage responseMessage = null;
 
         if (socketMessageType.equals(MessageType.PING)) {
@@ -242,11 +396,170 @@ public class SocketService {
                     .build();
         }
 
-        this.broadcastMessage(input.getSocketRoomId(), responseMessage);
+        if (socketMessageType.equals(MessageType.MESSAGE)) {
+            // Chat messages are numbered and kept in the room history, with the same payload that is broadcast
+            byte[] payload = this.roomMessageHistory.record(input.getSocketRoomId(), responseMessage, this.socketMessageBroadcaster::serialize);
+            if (!this.socketMessageBroadcaster.broadcast(input.getSocketRoomId(), responseMessage, payload)) {
+                log.error("Broadcasting socket message failed: {}", input.getSocketRoomId());
+            }
+            // Messages of organization rooms are persisted off this thread
+            if (organizationId != null) {
+                this.messageJournal.append(organizationId, input.getSocketRoomId(), payload);
+            }
+        } else {
+            this.broadcastMessage(input.getSocketRoomId(), responseMessage);
+        }
 
-        log.info("Socket message sent successfully: {}", input.getSocketMessage());
+        this.socketEventLogger.log(SocketEventType.MESSAGE_SENT, null, input.getSocketRoomId(), -1);
         return SocketSessionResponseFactory.createSuccessResponse(null, "Socket message sent successfully");
 
     }
 
+    /**
+     * This service method is used to send several chat messages, for one or more socket rooms, in one call.
+     * The inputs are validated in one pass and grouped by socket room, and the messages of each room are broadcast as one BATCH frame
+     * holding a JSON array, in the order they were given. Invalid inputs and inputs for missing rooms are skipped, and direct messages
+     * go through the same room and organization checks before they are sent to their receivers one by one.
+     *
+     * @param inputs The SocketDTO objects containing the socket message details.
+     */
+    public SocketSessionResponse sendSocketMessages(List<SocketDTO> inputs) {
+        SocketRejectionReason batchRejectionReason = this.socketInputValidator.getBatchRejectionReason(inputs);
+        if (batchRejectionReason != null) {
+            log.error("Socket message batch failed: Invalid input ({})", batchRejectionReason);
+            this.socketMetrics.recordRejection(batchRejectionReason);
+            return SocketSessionResponseFactory.createBadRequestResponse(null, "Invalid input");
+        }
+
+        Map<UUID, List<SocketDTO>> roomInputs = new LinkedHashMap<>();
+        int sentCount = 0;
+        boolean isRateLimited = false;
+        for (SocketDTO input : inputs) {
+            SocketRejectionReason rejectionReason = this.socketInputValidator.getRejectionReason(input);
+            if (rejectionReason == null && input.getMessageType() != MessageType.MESSAGE) {
+                rejectionReason = SocketRejectionReason.INVALID_MESSAGE_TYPE;
+            }
+            if (rejectionReason == null && input.getSocketRoomId() == null) {
+                rejectionReason = SocketRejectionReason.SOCKET_ROOM_NOT_FOUND;
+            }
+            if (rejectionReason != null) {
+                this.socketMetrics.recordRejection(rejectionReason);
+                continue;
+            }
+            // Every message counts against its sender socket on its own; the room bucket is charged once per room below
+            if (!this.socketRateLimiter.tryAcquireSocket(input.getSenderSocketId(), input.getSocketRoomId(), MessageType.MESSAGE, 1)) {
+                isRateLimited = true;
+                continue;
+            }
+            roomInputs.computeIfAbsent(input.getSocketRoomId(), key -> new ArrayList<>()).add(input);
+        }
+
+        for (Map.Entry<UUID, List<SocketDTO>> entry : roomInputs.entrySet()) {
+            UUID socketRoomId = entry.getKey();
+            List<SocketDTO> batchInputs = entry.getValue();
+            // The room is looked up once for all of its messages
+            if (!this.socketSessionMapper.doesSocketRoomExist(socketRoomId)) {
+                log.error("Socket message batch failed: Socket room does not exist");
+                for (int i = 0; i < batchInputs.size(); i++) {
+                    this.socketMetrics.recordRejection(SocketRejectionReason.SOCKET_ROOM_NOT_FOUND);
+                }
+                continue;
+            }
+            UUID organizationId = this.socketSessionMapper.getSocketRoomOrganizationId(socketRoomId);
+            int inputCount = batchInputs.size();
+            batchInputs.removeIf(input -> input.getOrganizationId() != null && !input.getOrganizationId().equals(organizationId));
+            for (int i = batchInputs.size(); i < inputCount; i++) {
+                this.socketMetrics.recordRejection(SocketRejectionReason.ORGANIZATION_MISMATCH);
+            }
+
+            // Direct messages are not fanned out, so they are sent on their own and not charged to the room bucket
+            List<SocketDTO> broadcastInputs = new ArrayList<>(batchInputs.size());
+            for (SocketDTO input : batchInputs) {
+                if (input.getReceiverSocketId() == null) {
+                    broadcastInputs.add(input);
+                } else if (this.sendDirectMessage(input).getResponseEntity().getStatusCode().is2xxSuccessful()) {
+                    sentCount++;
+                }
+            }
+            if (broadcastInputs.isEmpty()) {
+                continue;
+            }
+            if (!this.socketRateLimiter.tryAcquireRoom(socketRoomId, MessageType.MESSAGE, broadcastInputs.size())) {
+                log.debug("Socket message batch failed: Rate limited ({})", socketRoomId);
+                isRateLimited = true;
+                continue;
+            }
+
+            List<SocketMessage> responseMessages = new ArrayList<>(broadcastInputs.size());
+            List<byte[]> payloads = new ArrayList<>(broadcastInputs.size());
+            for (SocketDTO input : broadcastInputs) {
+                SocketMessage responseMessage = SocketMessage.builder()
+                        .content(input.getSocketMessage())
+                        .senderUsername(input.getSenderUsername())
+                        .senderSocketId(input.getSenderSocketId())
+                        .socketRoomId(socketRoomId)
+                        .type(MessageType.MESSAGE)
+                        .build();
+                // Every message of the batch is still numbered and kept in the room history on its own
+                byte[] payload = this.roomMessageHistory.record(socketRoomId, responseMessage, this.socketMessageBroadcaster::serialize);
+                if (payload == null) {
+                    continue;
+                }
+                if (organizationId != null) {
+                    this.messageJournal.append(organizationId, socketRoomId, payload);
+                }
+                responseMessages.add(responseMessage);
+                payloads.add(payload);
+            }
+
+            if (!payloads.isEmpty() && this.socketMessageBroadcaster.broadcastBatch(socketRoomId, responseMessages, RoomMessageHistory.toBatchPayload(payloads))) {
+                sentCount += payloads.size();
+            } else {
+                log.error("Broadcasting socket message batch failed: {}", socketRoomId);
+            }
+            this.socketEventLogger.log(SocketEventType.MESSAGE_SENT, null, socketRoomId, -1);
+        }
+
+        if (sentCount == 0 && isRateLimited) {
+            return SocketSessionResponseFactory.createTooManyRequestsResponse(null, "Too many socket messages");
+        }
+        if (sentCount == 0) {
+            return SocketSessionResponseFactory.createBadRequestResponse(null, "No socket messages were sent");
+        }
+        return SocketSessionResponseFactory.createSuccessResponse(null, sentCount + " of " + inputs.size() + " socket messages sent successfully");
+    }
+
+    /**
+     * This service method is used to send a chat message to one member of the socket room only, through /user/queue/messages.
+     * The receiver is found through the STOMP session that linked its socket, so the message costs one send instead of a fan-out.
+     * Direct messages are not numbered or kept in the room history.
+     *
+     * @param input The SocketDTO object containing the socket message details and the receiverSocketId.
+     */
+    private SocketSessionResponse sendDirectMessage(SocketDTO input) {
+        String receiverStompSessionId = this.socketSessionMapper.getStompSessionId(input.getReceiverSocketId(), input.getSocketRoomId());
+        if (receiverStompSessionId == null) {
+            log.error("Socket message failed: Receiver socket is not in the socket room");
+            this.socketMetrics.recordRejection(SocketRejectionReason.RECEIVER_NOT_FOUND);
+            return SocketSessionResponseFactory.createErrorResponse(null, "Receiver socket is not in the socket room");
+        }
+
+        SocketMessage responseMessage = SocketMessage.builder()
+                .content(input.getSocketMessage())
+                .senderUsername(input.getSenderUsername())
+                .senderSocketId(input.getSenderSocketId())
+                .receiverSocketId(input.getReceiverSocketId())
+                .socketRoomId(input.getSocketRoomId())
+                .type(MessageType.MESSAGE)
+                .build();
+        byte[] payload = this.socketMessageBroadcaster.serialize(responseMessage);
+        // The receiver session can be gone before its disconnect is handled, so a failed send is not counted as sent
+        if (payload == null || !this.socketMessageBroadcaster.sendToSession(receiverStompSessionId, DIRECT_MESSAGE_DESTINATION, payload, MessageType.MESSAGE)) {
+            log.error("Sending direct socket message failed: {}", input.getSocketRoomId());
+            return SocketSessionResponseFactory.createErrorResponse(null, "Sending direct socket message failed");
+        }
+
+        this.socketEventLogger.log(SocketEventType.MESSAGE_SENT, null, input.getSocketRoomId(), -1);
+        return SocketSessionResponseFactory.createSuccessResponse(null, "Socket message sent successfully");
+    }
 }
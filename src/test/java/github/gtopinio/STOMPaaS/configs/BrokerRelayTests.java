@@ -0,0 +1,55 @@
+package github.gtopinio.STOMPaaS.configs;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "stompaas.broker.mode=relay",
+        "stompaas.broker.relay.host=127.0.0.1",
+        "email=test@example.com",
+        "emailPassword=test"
+})
+class BrokerRelayTests {
+    private static EmbeddedStompBroker embeddedStompBroker;
+
+    @Autowired
+    @Qualifier("stompBrokerRelayMessageHandler")
+    private AbstractBrokerMessageHandler stompBrokerRelayMessageHandler;
+
+    @BeforeAll
+    static void startBroker() throws Exception {
+        embeddedStompBroker = EmbeddedStompBroker.start();
+    }
+
+    @AfterAll
+    static void stopBroker() throws Exception {
+        embeddedStompBroker.close();
+    }
+
+    @DynamicPropertySource
+    static void relayProperties(DynamicPropertyRegistry registry) {
+        registry.add("stompaas.broker.relay.port", () -> embeddedStompBroker.getPort());
+    }
+
+    @Test
+    void relayConnectsToExternalBroker() throws InterruptedException {
+        assertInstanceOf(StompBrokerRelayMessageHandler.class, this.stompBrokerRelayMessageHandler);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!this.stompBrokerRelayMessageHandler.isBrokerAvailable() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(this.stompBrokerRelayMessageHandler.isBrokerAvailable());
+    }
+}
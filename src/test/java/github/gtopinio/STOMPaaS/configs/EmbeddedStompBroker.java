@@ -0,0 +1,54 @@
+package github.gtopinio.STOMPaaS.configs;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * EmbeddedStompBroker
+ * This is a local stand-in for the external STOMP broker used by the relay broker mode.
+ * It runs an in-memory ActiveMQ Artemis server with a STOMP acceptor on a random local port.
+ */
+public class EmbeddedStompBroker implements AutoCloseable {
+    private final EmbeddedActiveMQ embeddedActiveMQ;
+    private final int port;
+
+    private EmbeddedStompBroker(EmbeddedActiveMQ embeddedActiveMQ, int port) {
+        this.embeddedActiveMQ = embeddedActiveMQ;
+        this.port = port;
+    }
+
+    /**
+     * This method is used to start a broker on a free local port.
+     */
+    public static EmbeddedStompBroker start() throws Exception {
+        int port = findFreePort();
+        ConfigurationImpl configuration = new ConfigurationImpl();
+        configuration.setPersistenceEnabled(false);
+        configuration.setSecurityEnabled(false);
+        configuration.addAcceptorConfiguration("stomp",
+                "tcp://127.0.0.1:" + port + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+
+        EmbeddedActiveMQ embeddedActiveMQ = new EmbeddedActiveMQ();
+        embeddedActiveMQ.setConfiguration(configuration);
+        embeddedActiveMQ.start();
+        return new EmbeddedStompBroker(embeddedActiveMQ, port);
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.embeddedActiveMQ.stop();
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
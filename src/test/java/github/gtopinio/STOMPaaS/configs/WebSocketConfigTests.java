@@ -0,0 +1,33 @@
+package github.gtopinio.STOMPaaS.configs;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketConfigTests {
+
+    @Test
+    void channelExecutorsRunTasksInEveryExecutionMode() throws Exception {
+        for (String channelExecutionMode : new String[] {"pool", WebSocketConfig.VIRTUAL_EXECUTION_MODE}) {
+            ThreadPoolTaskExecutor taskExecutor = WebSocketConfig.createChannelExecutor("stompaas-test-", channelExecutionMode);
+            taskExecutor.setCorePoolSize(2);
+            taskExecutor.setMaxPoolSize(2);
+            taskExecutor.initialize();
+            try {
+                Future<Thread> taskThread = taskExecutor.submit(Thread::currentThread);
+                Thread thread = taskThread.get(5, TimeUnit.SECONDS);
+                assertTrue(thread.getName().startsWith("stompaas-test-"));
+
+                boolean isVirtualThreadExpected = WebSocketConfig.VIRTUAL_EXECUTION_MODE.equals(channelExecutionMode) && Runtime.version().feature() >= 21;
+                boolean isVirtualThread = Runtime.version().feature() >= 21 && (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+                assertEquals(isVirtualThreadExpected, isVirtualThread);
+            } finally {
+                taskExecutor.shutdown();
+            }
+        }
+    }
+}
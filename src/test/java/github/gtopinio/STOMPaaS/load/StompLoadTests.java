@@ -0,0 +1,301 @@
+package github.gtopinio.STOMPaaS.load;
+
+import github.gtopinio.STOMPaaS.models.DTOs.SocketDTO;
+import github.gtopinio.STOMPaaS.models.classes.SocketMessage;
+import github.gtopinio.STOMPaaS.models.classes.SocketSessionEntry;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.helpers.SocketSessionMapper;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StompLoadTests
+ * This is the in-process load test. It starts the application on a random port, connects the STOMP clients,
+ * links them to the rooms, publishes chat messages from one client per room, and reports the end-to-end broadcast latency,
+ * the delivered messages per second, and the peak heap use.
+ * The websocket transport connects to /ws-native and the sockjs transport to /ws.
+ * It only runs when stompaas.load.clients is set, e.g.:
+ * mvn test -Dtest=StompLoadTests -Dstompaas.load.clients=5000 -Dstompaas.load.rooms=50 -Dstompaas.load.max-p99-ms=250
+ * With stompaas.load.max-p99-ms or stompaas.load.min-delivery-ratio set, it fails when the run misses them, so it can be used as a regression gate.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "email=test@example.com",
+        "emailPassword=test",
+        "stompaas.presence.member-announcements=false",
+        "stompaas.logging.event-sample-rate=100000",
+        "stompaas.rate-limit.enabled=false",
+        "server.tomcat.max-connections=100000"
+})
+@EnabledIfSystemProperty(named = "stompaas.load.clients", matches = "[0-9]+")
+@Slf4j
+class StompLoadTests {
+    private static final int CLIENTS = Integer.getInteger("stompaas.load.clients", 1000);
+    private static final int ROOMS = Integer.getInteger("stompaas.load.rooms", 10);
+    private static final int MESSAGES_PER_ROOM = Integer.getInteger("stompaas.load.messages-per-room", 200);
+    private static final int PUBLISH_RATE = Integer.getInteger("stompaas.load.publish-rate", 50); // Messages per second per room
+    private static final int CONNECT_CONCURRENCY = Integer.getInteger("stompaas.load.connect-concurrency", 256);
+    private static final String TRANSPORT = System.getProperty("stompaas.load.transport", "websocket"); // websocket or sockjs
+    private static final long MAX_P99_MILLIS = Long.getLong("stompaas.load.max-p99-ms", -1);
+    private static final double MIN_DELIVERY_RATIO = Double.parseDouble(System.getProperty("stompaas.load.min-delivery-ratio", "1.0"));
+    private static final long TIMEOUT_MILLIS = Long.getLong("stompaas.load.timeout-ms", 120_000);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private SocketSessionMapper socketSessionMapper;
+
+    private final AtomicLong receivedMessageCount = new AtomicLong();
+    private final AtomicLong lastReceivedTime = new AtomicLong();
+    private Timer broadcastLatencyTimer;
+
+    @Test
+    void broadcastLatencyUnderLoad() throws Exception {
+        this.broadcastLatencyTimer = Timer.builder("stompaas.load.broadcast.latency")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .distributionStatisticExpiry(Duration.ofHours(1))
+                .distributionStatisticBufferLength(1)
+                .register(new SimpleMeterRegistry());
+        resetHeapPeaks();
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(this.createWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        String url = "sockjs".equals(TRANSPORT)
+                ? "http://localhost:" + this.port + "/ws"
+                : "ws://localhost:" + this.port + "/ws-native";
+
+        UUID[] socketRoomIds = new UUID[ROOMS];
+        for (int i = 0; i < ROOMS; i++) {
+            socketRoomIds[i] = UUID.randomUUID();
+        }
+
+        long connectStartTime = System.nanoTime();
+        List<StompSession> stompSessions = this.connectClients(stompClient, url);
+        long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStartTime);
+
+        StompFrameHandler roomFrameHandler = new RoomFrameHandler();
+        for (int i = 0; i < stompSessions.size(); i++) {
+            UUID socketRoomId = socketRoomIds[i % ROOMS];
+            stompSessions.get(i).subscribe("/topic/" + socketRoomId, roomFrameHandler);
+            stompSessions.get(i).send("/app/stomp.linkSocketSession", SocketDTO.builder()
+                    .socketMessage("join")
+                    .senderUsername("load-user-" + i)
+                    .senderSocketId(UUID.randomUUID())
+                    .socketRoomId(socketRoomId)
+                    .categories(Collections.emptyList())
+                    .messageType(MessageType.JOIN)
+                    .isForMultipleUsers(true)
+                    .build());
+        }
+        this.awaitLinkedClients(socketRoomIds, stompSessions.size());
+        // The subscriptions are handled on the inbound channel next to the links; give the last ones time to register
+        Thread.sleep(1_000);
+
+        long expectedMessageCount = (long) MESSAGES_PER_ROOM * stompSessions.size();
+        long publishStartTime = System.nanoTime();
+        this.publishMessages(stompSessions, socketRoomIds);
+        this.awaitReceivedMessages(expectedMessageCount);
+
+        long receivedMessageCount = this.receivedMessageCount.get();
+        double deliverySeconds = Math.max(1, this.lastReceivedTime.get() - publishStartTime) / 1_000_000_000.0;
+        double p50 = 0, p99 = 0, p999 = 0;
+        for (ValueAtPercentile valueAtPercentile : this.broadcastLatencyTimer.takeSnapshot().percentileValues()) {
+            double millis = valueAtPercentile.value(TimeUnit.MILLISECONDS);
+            if (valueAtPercentile.percentile() == 0.5) {
+                p50 = millis;
+            } else if (valueAtPercentile.percentile() == 0.99) {
+                p99 = millis;
+            } else if (valueAtPercentile.percentile() == 0.999) {
+                p999 = millis;
+            }
+        }
+
+        log.info("Load test: transport={} clients={} rooms={} messagesPerRoom={} publishRate={}/s", TRANSPORT, stompSessions.size(), ROOMS, MESSAGES_PER_ROOM, PUBLISH_RATE);
+        log.info("Load test: connected in {} ms, delivered {}/{} messages, {} messages/s", connectMillis, receivedMessageCount, expectedMessageCount, String.format("%.0f", receivedMessageCount / deliverySeconds));
+        log.info("Load test: broadcast latency p50={} ms p99={} ms p999={} ms max={} ms", String.format("%.2f", p50), String.format("%.2f", p99), String.format("%.2f", p999), String.format("%.2f", this.broadcastLatencyTimer.max(TimeUnit.MILLISECONDS)));
+        log.info("Load test: peak heap {} MiB", getHeapPeak() / (1024 * 1024));
+
+        for (StompSession stompSession : stompSessions) {
+            stompSession.disconnect();
+        }
+        stompClient.stop();
+
+        assertTrue(receivedMessageCount >= (long) (expectedMessageCount * MIN_DELIVERY_RATIO),
+                "Delivered " + receivedMessageCount + " of " + expectedMessageCount + " messages");
+        if (MAX_P99_MILLIS >= 0) {
+            assertTrue(p99 <= MAX_P99_MILLIS, "p99 broadcast latency " + p99 + " ms is over " + MAX_P99_MILLIS + " ms");
+        }
+    }
+
+    private WebSocketClient createWebSocketClient() {
+        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+        if ("sockjs".equals(TRANSPORT)) {
+            return new SockJsClient(List.of(new WebSocketTransport(webSocketClient)));
+        }
+        return webSocketClient;
+    }
+
+    /**
+     * This method is used to connect the clients, with at most CONNECT_CONCURRENCY handshakes in flight.
+     */
+    private List<StompSession> connectClients(WebSocketStompClient stompClient, String url) throws Exception {
+        Semaphore connectPermits = new Semaphore(CONNECT_CONCURRENCY);
+        List<CompletableFuture<StompSession>> connectFutures = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            connectPermits.acquire();
+            CompletableFuture<StompSession> connectFuture = stompClient.connectAsync(url, new StompSessionHandlerAdapter() {});
+            connectFuture.whenComplete((stompSession, e) -> connectPermits.release());
+            connectFutures.add(connectFuture);
+        }
+
+        List<StompSession> stompSessions = new ArrayList<>(CLIENTS);
+        for (CompletableFuture<StompSession> connectFuture : connectFutures) {
+            stompSessions.add(connectFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+        return stompSessions;
+    }
+
+    private void awaitLinkedClients(UUID[] socketRoomIds, int expectedClientCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            int linkedClientCount = 0;
+            for (UUID socketRoomId : socketRoomIds) {
+                SocketSessionEntry socketSessionEntry = this.socketSessionMapper.getSocketSessionMapping().get(socketRoomId);
+                linkedClientCount += (socketSessionEntry != null) ? socketSessionEntry.getSocketUserMap().size() : 0;
+            }
+            if (linkedClientCount >= expectedClientCount) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        throw new IllegalStateException("Timed out linking " + expectedClientCount + " clients");
+    }
+
+    /**
+     * This method is used to publish MESSAGES_PER_ROOM messages to every room at PUBLISH_RATE, from the first client of each room.
+     * Each message carries its send time, so the receivers can measure the end-to-end latency on the same clock.
+     */
+    private void publishMessages(List<StompSession> stompSessions, UUID[] socketRoomIds) throws InterruptedException {
+        int publisherCount = Math.min(ROOMS, stompSessions.size());
+        ScheduledExecutorService publishScheduler = Executors.newScheduledThreadPool(Math.min(publisherCount, Runtime.getRuntime().availableProcessors()));
+        CountDownLatch publishedRooms = new CountDownLatch(publisherCount);
+        long publishInterval = Math.max(1, 1_000_000 / PUBLISH_RATE);
+
+        for (int i = 0; i < publisherCount; i++) {
+            StompSession publisherSession = stompSessions.get(i);
+            UUID senderSocketId = UUID.randomUUID();
+            UUID socketRoomId = socketRoomIds[i];
+            AtomicInteger publishedMessageCount = new AtomicInteger();
+            publishScheduler.scheduleAtFixedRate(() -> {
+                int messageIndex = publishedMessageCount.getAndIncrement();
+                if (messageIndex >= MESSAGES_PER_ROOM) {
+                    if (messageIndex == MESSAGES_PER_ROOM) {
+                        publishedRooms.countDown();
+                    }
+                    return;
+                }
+                publisherSession.send("/app/stomp.sendChatMessage", SocketDTO.builder()
+                        .socketMessage(String.valueOf(System.nanoTime()))
+                        .senderUsername("load-publisher")
+                        .senderSocketId(senderSocketId)
+                        .socketRoomId(socketRoomId)
+                        .messageType(MessageType.MESSAGE)
+                        .build());
+            }, i % publishInterval, publishInterval, TimeUnit.MICROSECONDS);
+        }
+
+        publishedRooms.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        publishScheduler.shutdownNow();
+    }
+
+    private void awaitReceivedMessages(long expectedMessageCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long lastCount = -1;
+        long lastProgressTime = System.currentTimeMillis();
+        while (System.currentTimeMillis() < deadline && this.receivedMessageCount.get() < expectedMessageCount) {
+            long count = this.receivedMessageCount.get();
+            if (count != lastCount) {
+                lastCount = count;
+                lastProgressTime = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastProgressTime > 10_000) {
+                // Nothing arrived for a while; the missing messages were dropped
+                return;
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static void resetHeapPeaks() {
+        for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPoolMXBean.getType() == MemoryType.HEAP) {
+                memoryPoolMXBean.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getHeapPeak() {
+        long heapPeak = 0;
+        for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPoolMXBean.getType() == MemoryType.HEAP) {
+                heapPeak += memoryPoolMXBean.getPeakUsage().getUsed();
+            }
+        }
+        return heapPeak;
+    }
+
+    /**
+     * RoomFrameHandler
+     * This records the latency of every chat message received on a room topic.
+     */
+    private class RoomFrameHandler implements StompFrameHandler {
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return SocketMessage.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            SocketMessage socketMessage = (SocketMessage) payload;
+            if (socketMessage == null || socketMessage.getType() != MessageType.MESSAGE) {
+                return;
+            }
+            long receivedTime = System.nanoTime();
+            broadcastLatencyTimer.record(receivedTime - Long.parseLong(socketMessage.getContent()), TimeUnit.NANOSECONDS);
+            receivedMessageCount.incrementAndGet();
+            lastReceivedTime.accumulateAndGet(receivedTime, Math::max);
+        }
+    }
+}
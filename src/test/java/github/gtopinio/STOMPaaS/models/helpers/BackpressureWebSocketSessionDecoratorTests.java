@@ -0,0 +1,136 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.SessionQueueStats;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.SlowConsumerPolicy;
+import github.gtopinio.STOMPaaS.models.enums.SocketTransport;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackpressureWebSocketSessionDecoratorTests {
+    private static final int BUFFER_SIZE_LIMIT = 1024;
+
+    @Test
+    void dropOldestKeepsTheBufferWithinItsLimit() throws Exception {
+        BlockingWebSocketSession session = new BlockingWebSocketSession();
+        BackpressureWebSocketSessionDecorator sessionDecorator = blockedDecorator(session, SlowConsumerPolicy.DROP_OLDEST);
+
+        for (int i = 0; i < 100; i++) {
+            sessionDecorator.sendMessage(frame(MessageType.MESSAGE, "message-" + i));
+        }
+
+        SessionQueueStats sessionQueueStats = sessionDecorator.getSessionQueueStats();
+        assertTrue(sessionQueueStats.getBufferSize() <= BUFFER_SIZE_LIMIT);
+        assertTrue(sessionQueueStats.getDroppedMessageCount() > 0);
+        assertEquals(100, sessionQueueStats.getQueueDepth() + sessionQueueStats.getDroppedMessageCount());
+    }
+
+    @Test
+    void dropPingFirstKeepsOtherMessages() throws Exception {
+        BlockingWebSocketSession session = new BlockingWebSocketSession();
+        BackpressureWebSocketSessionDecorator sessionDecorator = blockedDecorator(session, SlowConsumerPolicy.DROP_PING_FIRST);
+
+        for (int i = 0; i < 5; i++) {
+            sessionDecorator.sendMessage(frame(MessageType.MESSAGE, "message-" + i));
+        }
+        for (int i = 0; i < 50; i++) {
+            sessionDecorator.sendMessage(frame(MessageType.PING, "ping-" + i));
+        }
+
+        session.releaseSends();
+        sessionDecorator.sendMessage(frame(MessageType.MESSAGE, "flush"));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (countChatMessages(session) < 7 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        long sentChatMessages = countChatMessages(session);
+        // The blocked message, the five messages, and the flush message
+        assertEquals(7, sentChatMessages);
+        assertTrue(sessionDecorator.getSessionQueueStats().getDroppedMessageCount() > 0);
+    }
+
+    @Test
+    void disconnectClosesTheSlowSession() throws Exception {
+        BlockingWebSocketSession session = new BlockingWebSocketSession();
+        BackpressureWebSocketSessionDecorator sessionDecorator = blockedDecorator(session, SlowConsumerPolicy.DISCONNECT);
+
+        assertThrows(SessionLimitExceededException.class, () -> {
+            for (int i = 0; i < 100; i++) {
+                sessionDecorator.sendMessage(frame(MessageType.MESSAGE, "message-" + i));
+            }
+        });
+    }
+
+    @Test
+    void pingMessagesAreDetectedFromTheHeadersOnly() {
+        assertTrue(BackpressureWebSocketSessionDecorator.isPingMessage(frame(MessageType.PING, "body")));
+        assertFalse(BackpressureWebSocketSessionDecorator.isPingMessage(frame(MessageType.MESSAGE, "\nmessage-type:PING\n")));
+    }
+
+    @Test
+    void cborFramesAreSentAsBinaryMessages() throws Exception {
+        BlockingWebSocketSession session = new BlockingWebSocketSession();
+        BackpressureWebSocketSessionDecorator sessionDecorator = new BackpressureWebSocketSessionDecorator(session, 60_000, BUFFER_SIZE_LIMIT, SlowConsumerPolicy.DISCONNECT);
+        TextMessage cborFrame = new TextMessage("MESSAGE\ndestination:/topic/room.cbor\ncontent-type:application/cbor\n\n\u00a1\u0000");
+
+        assertTrue(BackpressureWebSocketSessionDecorator.isCborMessage(cborFrame));
+        assertFalse(BackpressureWebSocketSessionDecorator.isCborMessage(frame(MessageType.MESSAGE, "\ncontent-type:application/cbor\n")));
+
+        session.releaseSends();
+        sessionDecorator.sendMessage(cborFrame);
+        WebSocketMessage<?> sentMessage = session.getSentMessages().get(0);
+        assertInstanceOf(BinaryMessage.class, sentMessage);
+        assertArrayEquals(cborFrame.asBytes(), ((BinaryMessage) sentMessage).getPayload().array());
+    }
+
+    @Test
+    void outboundMessagesAreCountedByTransport() throws Exception {
+        SocketMetrics socketMetrics = SocketMetrics.inMemory();
+        BlockingWebSocketSession session = new BlockingWebSocketSession();
+        BackpressureWebSocketSessionDecorator sessionDecorator = new BackpressureWebSocketSessionDecorator(
+                session, 60_000, BUFFER_SIZE_LIMIT, SlowConsumerPolicy.DISCONNECT, BackpressureSubProtocolWebSocketHandler.getTransport(session), socketMetrics);
+        WebSocketMessage<?> message = frame(MessageType.MESSAGE, "hello");
+
+        session.releaseSends();
+        sessionDecorator.sendMessage(message);
+
+        assertEquals(SocketTransport.NATIVE, sessionDecorator.getSessionQueueStats().getTransport());
+        assertEquals(1, socketMetrics.getMeterRegistry().get("stompaas.transport.messages").tag("transport", "native").tag("direction", "outbound").counter().count());
+        assertEquals(message.getPayloadLength(), socketMetrics.getMeterRegistry().get("stompaas.transport.bytes").tag("transport", "native").tag("direction", "outbound").counter().count());
+        assertEquals(0, socketMetrics.getMeterRegistry().get("stompaas.transport.messages").tag("transport", "sockjs_websocket").tag("direction", "outbound").counter().count());
+    }
+
+    /**
+     * This method is used to create a decorator whose session is blocked on its first send, so later sends are buffered.
+     */
+    private static BackpressureWebSocketSessionDecorator blockedDecorator(BlockingWebSocketSession session, SlowConsumerPolicy slowConsumerPolicy) throws Exception {
+        BackpressureWebSocketSessionDecorator sessionDecorator = new BackpressureWebSocketSessionDecorator(session, 60_000, BUFFER_SIZE_LIMIT, slowConsumerPolicy);
+        CompletableFuture.runAsync(() -> {
+            try {
+                sessionDecorator.sendMessage(frame(MessageType.MESSAGE, "blocked"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        session.awaitSendStarted();
+        return sessionDecorator;
+    }
+
+    private static long countChatMessages(BlockingWebSocketSession session) {
+        return session.getSentMessages().stream()
+                .filter(message -> !BackpressureWebSocketSessionDecorator.isPingMessage(message))
+                .count();
+    }
+
+    private static WebSocketMessage<?> frame(MessageType messageType, String body) {
+        return new TextMessage("MESSAGE\ndestination:/topic/room\n" + SocketMessageBroadcaster.MESSAGE_TYPE_HEADER + ":" + messageType + "\n\n" + body + "\u0000");
+    }
+}
@@ -0,0 +1,132 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * BlockingWebSocketSession
+ * This is a WebSocketSession for tests whose sends block until released, like a client that stopped reading.
+ */
+class BlockingWebSocketSession implements WebSocketSession {
+    private final String id = UUID.randomUUID().toString();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final List<WebSocketMessage<?>> sentMessages = new CopyOnWriteArrayList<>();
+    private final CountDownLatch sendStarted = new CountDownLatch(1);
+    private final CountDownLatch sendReleased = new CountDownLatch(1);
+    private volatile CloseStatus closeStatus;
+
+    public void awaitSendStarted() throws InterruptedException {
+        this.sendStarted.await();
+    }
+
+    public void releaseSends() {
+        this.sendReleased.countDown();
+    }
+
+    public List<WebSocketMessage<?>> getSentMessages() {
+        return this.sentMessages;
+    }
+
+    public CloseStatus getCloseStatus() {
+        return this.closeStatus;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        this.sendStarted.countDown();
+        try {
+            this.sendReleased.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.sentMessages.add(message);
+    }
+
+    @Override
+    public void close() {
+        this.close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        this.closeStatus = status;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.closeStatus == null;
+    }
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+    @Override
+    public URI getUri() {
+        return null;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return this.attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return 0;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return 0;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return Collections.emptyList();
+    }
+}
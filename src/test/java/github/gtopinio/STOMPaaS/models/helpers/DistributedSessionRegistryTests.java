@@ -0,0 +1,195 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.response.SocketMappingResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistributedSessionRegistryTests {
+    private static final long NEAR_CACHE_TTL = 60_000;
+
+    @Test
+    void categoryRoomIsSharedAcrossInstances() {
+        InMemorySessionRegistryStore sessionRegistryStore = new InMemorySessionRegistryStore();
+        // A zero near-cache TTL makes every flush refresh the shared counts of the local rooms
+        DistributedSessionRegistry firstRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, 0);
+        DistributedSessionRegistry secondRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, 0);
+        SocketSessionMapper firstMapper = new SocketSessionMapper(firstRegistry);
+        SocketSessionMapper secondMapper = new SocketSessionMapper(secondRegistry);
+        UUID socketRoomId = UUID.randomUUID();
+
+        assertTrue(firstMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("chess"), socketRoomId, true).isProcessStatus());
+        firstRegistry.flush();
+
+        SocketMappingResponse response = secondMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("chess"), UUID.randomUUID(), true);
+        assertTrue(response.isProcessStatus());
+        assertEquals(socketRoomId, response.getSocketRoomId());
+
+        secondRegistry.flush();
+        firstRegistry.flush();
+        assertEquals(2, sessionRegistryStore.getRoomState(socketRoomId).getMemberCount());
+        assertEquals(2, firstRegistry.getRoomSize(socketRoomId, firstRegistry.getRoom(socketRoomId)));
+        assertEquals(2, secondRegistry.getRoomSize(socketRoomId, secondRegistry.getRoom(socketRoomId)));
+    }
+
+    @Test
+    void roomGroupCountsAreSharedAcrossInstances() {
+        InMemorySessionRegistryStore sessionRegistryStore = new InMemorySessionRegistryStore();
+        DistributedSessionRegistry firstRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, 0);
+        DistributedSessionRegistry secondRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, 0);
+        UUID parentRoomId = UUID.randomUUID();
+        UUID memberRoomId = UUID.randomUUID();
+        String roomGroups = parentRoomId + "=" + memberRoomId;
+        SocketSessionMapper firstMapper = new SocketSessionMapper(firstRegistry, new SocketEventLogger(SocketEventLogger.DEFAULT_SAMPLE_RATE), SocketMetrics.inMemory(), 0, "", roomGroups);
+        SocketSessionMapper secondMapper = new SocketSessionMapper(secondRegistry, new SocketEventLogger(SocketEventLogger.DEFAULT_SAMPLE_RATE), SocketMetrics.inMemory(), 0, "", roomGroups);
+
+        firstMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), parentRoomId, true);
+        firstMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), memberRoomId, true);
+        firstMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), memberRoomId, true);
+        firstRegistry.flush();
+        secondMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), memberRoomId, true);
+        secondRegistry.flush();
+        firstRegistry.flush();
+
+        // Both instances report the members of every instance, not only their own
+        SocketMappingResponse firstPresence = firstMapper.getSocketRoomPresence(parentRoomId);
+        SocketMappingResponse secondPresence = secondMapper.getSocketRoomPresence(memberRoomId);
+        assertEquals(3, firstRegistry.getRoomSize(memberRoomId));
+        assertEquals(3, secondRegistry.getRoomSize(memberRoomId));
+        assertEquals(1, secondRegistry.getRoomSize(parentRoomId));
+        assertEquals(firstPresence.getRoomGroupCount(), secondPresence.getRoomGroupCount());
+        assertEquals(firstPresence.getSocketRoomCount(), secondPresence.getSocketRoomCount());
+    }
+
+    @Test
+    void roomGroupCountsOfDeadInstanceAreSwept() throws Exception {
+        InMemorySessionRegistryStore sessionRegistryStore = new InMemorySessionRegistryStore();
+        DistributedSessionRegistry deadRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, NEAR_CACHE_TTL, 3);
+        DistributedSessionRegistry aliveRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, 0);
+        UUID parentRoomId = UUID.randomUUID();
+        String roomGroups = parentRoomId + "=" + UUID.randomUUID() + "+" + UUID.randomUUID();
+        SocketSessionMapper deadMapper = new SocketSessionMapper(deadRegistry, new SocketEventLogger(SocketEventLogger.DEFAULT_SAMPLE_RATE), SocketMetrics.inMemory(), 0, "", roomGroups);
+        SocketSessionMapper aliveMapper = new SocketSessionMapper(aliveRegistry, new SocketEventLogger(SocketEventLogger.DEFAULT_SAMPLE_RATE), SocketMetrics.inMemory(), 0, "", roomGroups);
+        List<UUID> memberRoomIds = List.copyOf(SocketSessionMapper.parseRoomGroups(roomGroups).get(parentRoomId).getMemberRoomIds());
+
+        deadRegistry.renewInstanceLease();
+        aliveRegistry.renewInstanceLease();
+        deadMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), memberRoomIds.get(0), true);
+        deadMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), memberRoomIds.get(1), true);
+        deadRegistry.flush();
+        UUID aliveSocketId = UUID.randomUUID();
+        aliveMapper.upsertSocketSession(aliveSocketId, null, Collections.emptyList(), memberRoomIds.get(1), true);
+        aliveRegistry.flush();
+        int roomGroupCount = aliveMapper.getSocketRoomPresence(parentRoomId).getRoomGroupCount();
+        assertEquals(2, sessionRegistryStore.getRemoteRoomGroupMemberCount(parentRoomId, aliveRegistry.getInstanceId()));
+        assertEquals(1, sessionRegistryStore.getRemoteRoomGroupMemberCount(parentRoomId, deadRegistry.getInstanceId()));
+
+        // The dead instance stops renewing its lease, as if it had crashed
+        Thread.sleep(20);
+        aliveRegistry.renewInstanceLease();
+        aliveRegistry.sweepDeadInstances();
+
+        assertEquals(roomGroupCount - 2, aliveMapper.getSocketRoomPresence(parentRoomId).getRoomGroupCount());
+        assertTrue(aliveMapper.removeSocketSession(aliveSocketId, memberRoomIds.get(1)).isProcessStatus());
+        aliveRegistry.flush();
+        assertEquals(roomGroupCount - 3, aliveMapper.getSocketRoomPresence(parentRoomId).getRoomGroupCount());
+        assertEquals(0, sessionRegistryStore.getRemoteRoomGroupMemberCount(parentRoomId, deadRegistry.getInstanceId()));
+    }
+
+    @Test
+    void membershipChangesAreCoalescedIntoOneBatch() {
+        InMemorySessionRegistryStore sessionRegistryStore = new InMemorySessionRegistryStore();
+        DistributedSessionRegistry sessionRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, NEAR_CACHE_TTL);
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(sessionRegistry);
+        UUID socketRoomId = UUID.randomUUID();
+
+        for (int i = 0; i < 100; i++) {
+            socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), socketRoomId, true);
+        }
+        assertEquals(0, sessionRegistryStore.getBatchCount());
+
+        sessionRegistry.flush();
+        assertEquals(1, sessionRegistryStore.getBatchCount());
+        assertEquals(100, sessionRegistryStore.getRoomState(socketRoomId).getMemberCount());
+    }
+
+    @Test
+    void emptiedRoomIsRemovedFromTheStore() {
+        InMemorySessionRegistryStore sessionRegistryStore = new InMemorySessionRegistryStore();
+        DistributedSessionRegistry sessionRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, NEAR_CACHE_TTL);
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(sessionRegistry);
+        UUID senderSocketId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+
+        socketSessionMapper.upsertSocketSession(senderSocketId, null, List.of("chess"), socketRoomId, true);
+        sessionRegistry.flush();
+        assertTrue(socketSessionMapper.removeSocketSession(senderSocketId, socketRoomId).isProcessStatus());
+        sessionRegistry.flush();
+
+        assertNull(sessionRegistryStore.getRoomState(socketRoomId));
+        assertTrue(sessionRegistryStore.findRoomsByCategoryKey("chess").isEmpty());
+        assertFalse(sessionRegistry.containsRoom(socketRoomId));
+    }
+
+    @Test
+    void membersOfDeadInstanceAreSweptFromTheStore() throws Exception {
+        InMemorySessionRegistryStore sessionRegistryStore = new InMemorySessionRegistryStore();
+        DistributedSessionRegistry deadRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, NEAR_CACHE_TTL, 3);
+        DistributedSessionRegistry aliveRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, 0);
+        SocketSessionMapper deadMapper = new SocketSessionMapper(deadRegistry);
+        SocketSessionMapper aliveMapper = new SocketSessionMapper(aliveRegistry);
+        UUID sharedRoomId = UUID.randomUUID();
+        UUID deadRoomId = UUID.randomUUID();
+
+        deadRegistry.renewInstanceLease();
+        aliveRegistry.renewInstanceLease();
+        deadMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("chess"), sharedRoomId, true);
+        deadMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("poker"), deadRoomId, true);
+        deadRegistry.flush();
+        assertEquals(sharedRoomId, aliveMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("chess"), UUID.randomUUID(), true).getSocketRoomId());
+        aliveRegistry.flush();
+        assertEquals(2, sessionRegistryStore.getRoomState(sharedRoomId).getMemberCount());
+
+        // The dead instance stops renewing its lease, as if it had crashed
+        Thread.sleep(20);
+        aliveRegistry.renewInstanceLease();
+        aliveRegistry.sweepDeadInstances();
+
+        assertEquals(1, sessionRegistryStore.getRoomState(sharedRoomId).getMemberCount());
+        assertNull(sessionRegistryStore.getRoomState(deadRoomId));
+        assertTrue(sessionRegistryStore.findRoomsByCategoryKey("poker").isEmpty());
+        assertNotEquals(deadRoomId, aliveMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("poker"), UUID.randomUUID(), true).getSocketRoomId());
+    }
+
+    @Test
+    void sweptLiveInstancePublishesItsRoomsAgain() throws Exception {
+        InMemorySessionRegistryStore sessionRegistryStore = new InMemorySessionRegistryStore();
+        DistributedSessionRegistry pausedRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, NEAR_CACHE_TTL, 3);
+        DistributedSessionRegistry aliveRegistry = new DistributedSessionRegistry(sessionRegistryStore, 0, 500, 0);
+        SocketSessionMapper pausedMapper = new SocketSessionMapper(pausedRegistry);
+        UUID socketRoomId = UUID.randomUUID();
+
+        pausedRegistry.renewInstanceLease();
+        aliveRegistry.renewInstanceLease();
+        pausedMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("chess"), socketRoomId, true);
+        pausedMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("chess"), socketRoomId, true);
+        pausedRegistry.flush();
+        assertEquals(2, sessionRegistryStore.getRoomState(socketRoomId).getMemberCount());
+
+        // The instance misses its lease renewal, as if it were stuck in a long GC pause, and gets swept
+        Thread.sleep(20);
+        aliveRegistry.renewInstanceLease();
+        aliveRegistry.sweepDeadInstances();
+        assertNull(sessionRegistryStore.getRoomState(socketRoomId));
+
+        pausedRegistry.renewInstanceLease();
+        pausedRegistry.flush();
+
+        assertEquals(2, sessionRegistryStore.getRoomState(socketRoomId).getMemberCount());
+        assertTrue(sessionRegistryStore.findRoomsByCategoryKey("chess").contains(socketRoomId));
+    }
+}
@@ -0,0 +1,158 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.RoomUpdate;
+import github.gtopinio.STOMPaaS.models.classes.SharedRoomState;
+import github.gtopinio.STOMPaaS.models.interfaces.SessionRegistryStore;
+
+import java.util.*;
+
+/**
+ * InMemorySessionRegistryStore
+ * This is a local stand-in for the Redis-compatible store, shared by several DistributedSessionRegistry instances in tests.
+ * It follows the same semantics as the Redis scripts: a room is removed with its category index entry when its count drops to zero,
+ * and the members of an instance are removed when its lease has run out or was released.
+ */
+public class InMemorySessionRegistryStore implements SessionRegistryStore {
+    private final Map<UUID, SharedRoomState> rooms = new HashMap<>();
+    private final Map<String, Set<UUID>> categories = new HashMap<>();
+    private final Map<String, Map<UUID, Long>> instanceMemberCounts = new HashMap<>();
+    private final Map<UUID, Long> roomGroupMemberCounts = new HashMap<>();
+    private final Map<String, Map<UUID, Long>> instanceRoomGroupCounts = new HashMap<>();
+    private final Map<String, Long> instanceLeaseExpiries = new HashMap<>();
+    private int batchCount;
+
+    @Override
+    public synchronized Map<UUID, Long> applyRoomUpdates(List<RoomUpdate> roomUpdates) {
+        this.batchCount++;
+        Map<UUID, Long> memberCounts = new HashMap<>();
+        for (RoomUpdate roomUpdate : roomUpdates) {
+            SharedRoomState sharedRoomState = this.rooms.computeIfAbsent(roomUpdate.getSocketRoomId(), roomId -> SharedRoomState.builder()
+                    .socketRoomCategoryKey(roomUpdate.getSocketRoomCategoryKey())
+                    .isForMultipleUsers(roomUpdate.getIsForMultipleUsers())
+                    .organizationId(roomUpdate.getOrganizationId())
+                    .build());
+            Map<UUID, Long> roomMemberCounts = this.instanceMemberCounts.computeIfAbsent(roomUpdate.getInstanceId(), instanceId -> new HashMap<>());
+            long instanceMemberCount = roomUpdate.getInstanceMemberCount();
+            Long previousInstanceMemberCount = (instanceMemberCount > 0)
+                    ? roomMemberCounts.put(roomUpdate.getSocketRoomId(), instanceMemberCount)
+                    : roomMemberCounts.remove(roomUpdate.getSocketRoomId());
+            long previousCount = (previousInstanceMemberCount != null) ? previousInstanceMemberCount : 0;
+            sharedRoomState.setMemberCount(sharedRoomState.getMemberCount() + instanceMemberCount - previousCount);
+
+            String categoryKey = roomUpdate.getSocketRoomCategoryKey();
+            if (instanceMemberCount > 0 && categoryKey != null) {
+                this.categories.computeIfAbsent(categoryKey, key -> new HashSet<>()).add(roomUpdate.getSocketRoomId());
+            }
+            this.removeRoomIfEmpty(roomUpdate.getSocketRoomId(), sharedRoomState);
+            memberCounts.put(roomUpdate.getSocketRoomId(), sharedRoomState.getMemberCount());
+        }
+        return memberCounts;
+    }
+
+    @Override
+    public synchronized Map<UUID, Long> applyRoomGroupUpdates(String instanceId, Map<UUID, Integer> instanceMemberCounts) {
+        Map<UUID, Long> roomGroupCounts = this.instanceRoomGroupCounts.computeIfAbsent(instanceId, key -> new HashMap<>());
+        Map<UUID, Long> memberCounts = new HashMap<>();
+        for (Map.Entry<UUID, Integer> instanceMemberCount : instanceMemberCounts.entrySet()) {
+            UUID parentRoomId = instanceMemberCount.getKey();
+            long memberCount = instanceMemberCount.getValue();
+            Long previousInstanceMemberCount = (memberCount > 0) ? roomGroupCounts.put(parentRoomId, memberCount) : roomGroupCounts.remove(parentRoomId);
+            long previousCount = (previousInstanceMemberCount != null) ? previousInstanceMemberCount : 0;
+            memberCounts.put(parentRoomId, this.addRoomGroupMembers(parentRoomId, memberCount - previousCount));
+        }
+        return memberCounts;
+    }
+
+    @Override
+    public synchronized long getRemoteRoomGroupMemberCount(UUID parentRoomId, String instanceId) {
+        long instanceMemberCount = this.instanceRoomGroupCounts.getOrDefault(instanceId, Collections.emptyMap()).getOrDefault(parentRoomId, 0L);
+        return Math.max(0, this.roomGroupMemberCounts.getOrDefault(parentRoomId, 0L) - instanceMemberCount);
+    }
+
+    private long addRoomGroupMembers(UUID parentRoomId, long memberDelta) {
+        Long memberCount = this.roomGroupMemberCounts.merge(parentRoomId, memberDelta, Long::sum);
+        if (memberCount <= 0) {
+            this.roomGroupMemberCounts.remove(parentRoomId);
+            return 0;
+        }
+        return memberCount;
+    }
+
+    @Override
+    public synchronized boolean renewInstanceLease(String instanceId, long leaseTtl) {
+        long now = System.currentTimeMillis();
+        Long leaseExpiry = this.instanceLeaseExpiries.put(instanceId, now + leaseTtl);
+        return leaseExpiry != null && leaseExpiry > now;
+    }
+
+    @Override
+    public synchronized void releaseInstanceLease(String instanceId) {
+        this.instanceLeaseExpiries.remove(instanceId);
+    }
+
+    @Override
+    public synchronized Set<UUID> removeDeadInstances() {
+        Set<UUID> socketRoomIds = new HashSet<>();
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Map<UUID, Long>>> instances = this.instanceMemberCounts.entrySet().iterator();
+        while (instances.hasNext()) {
+            Map.Entry<String, Map<UUID, Long>> instance = instances.next();
+            Long leaseExpiry = this.instanceLeaseExpiries.get(instance.getKey());
+            if (leaseExpiry != null && leaseExpiry > now) {
+                continue;
+            }
+            for (Map.Entry<UUID, Long> roomMemberCount : instance.getValue().entrySet()) {
+                SharedRoomState sharedRoomState = this.rooms.get(roomMemberCount.getKey());
+                if (sharedRoomState != null) {
+                    sharedRoomState.setMemberCount(sharedRoomState.getMemberCount() - roomMemberCount.getValue());
+                    this.removeRoomIfEmpty(roomMemberCount.getKey(), sharedRoomState);
+                    socketRoomIds.add(roomMemberCount.getKey());
+                }
+            }
+            instances.remove();
+        }
+        this.instanceRoomGroupCounts.entrySet().removeIf(instance -> {
+            Long leaseExpiry = this.instanceLeaseExpiries.get(instance.getKey());
+            if (leaseExpiry != null && leaseExpiry > now) {
+                return false;
+            }
+            instance.getValue().forEach((parentRoomId, memberCount) -> this.addRoomGroupMembers(parentRoomId, -memberCount));
+            return true;
+        });
+        return socketRoomIds;
+    }
+
+    private void removeRoomIfEmpty(UUID socketRoomId, SharedRoomState sharedRoomState) {
+        if (sharedRoomState.getMemberCount() > 0) {
+            return;
+        }
+        this.rooms.remove(socketRoomId);
+        String categoryKey = sharedRoomState.getSocketRoomCategoryKey();
+        if (categoryKey != null && this.categories.containsKey(categoryKey)) {
+            this.categories.get(categoryKey).remove(socketRoomId);
+        }
+    }
+
+    @Override
+    public synchronized SharedRoomState getRoomState(UUID socketRoomId) {
+        SharedRoomState sharedRoomState = this.rooms.get(socketRoomId);
+        if (sharedRoomState == null) {
+            return null;
+        }
+        return SharedRoomState.builder()
+                .socketRoomCategoryKey(sharedRoomState.getSocketRoomCategoryKey())
+                .isForMultipleUsers(sharedRoomState.getIsForMultipleUsers())
+                .organizationId(sharedRoomState.getOrganizationId())
+                .memberCount(sharedRoomState.getMemberCount())
+                .build();
+    }
+
+    @Override
+    public synchronized Set<UUID> findRoomsByCategoryKey(String categoryKey) {
+        return new HashSet<>(this.categories.getOrDefault(categoryKey, Collections.emptySet()));
+    }
+
+    public synchronized int getBatchCount() {
+        return this.batchCount;
+    }
+}
@@ -0,0 +1,78 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageJournalTests {
+
+    private static List<String> read(MessageJournal messageJournal, UUID organizationId, UUID socketRoomId, long fromTime, long toTime) throws Exception {
+        List<String> payloads = new ArrayList<>();
+        messageJournal.read(organizationId, socketRoomId, fromTime, toTime, payload -> payloads.add(new String(payload, StandardCharsets.UTF_8)));
+        return payloads;
+    }
+
+    @Test
+    void messagesAreReadBackByRoomAcrossSegments(@TempDir Path directory) throws Exception {
+        UUID organizationId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+        UUID otherSocketRoomId = UUID.randomUUID();
+        long startTime = System.currentTimeMillis();
+
+        try (MessageJournal messageJournal = new MessageJournal(true, directory.toString(), 512, 5, 0, 1024, SocketMetrics.inMemory())) {
+            for (int i = 0; i < 20; i++) {
+                assertTrue(messageJournal.append(organizationId, socketRoomId, ("{\"content\":\"message-" + i + "\"}").getBytes(StandardCharsets.UTF_8)));
+                assertTrue(messageJournal.append(organizationId, otherSocketRoomId, "{}".getBytes(StandardCharsets.UTF_8)));
+            }
+            assertFalse(messageJournal.append(organizationId, socketRoomId, new byte[512]));
+        }
+
+        try (Stream<Path> segments = Files.list(directory)) {
+            assertTrue(segments.count() > 1);
+        }
+
+        MessageJournal messageJournal = new MessageJournal(true, directory.toString(), 512, 5, 0, 1024, SocketMetrics.inMemory());
+        List<String> payloads = read(messageJournal, organizationId, socketRoomId, startTime, Long.MAX_VALUE);
+        assertEquals(20, payloads.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("{\"content\":\"message-" + i + "\"}", payloads.get(i));
+        }
+        assertTrue(read(messageJournal, UUID.randomUUID(), socketRoomId, startTime, Long.MAX_VALUE).isEmpty());
+        assertTrue(read(messageJournal, organizationId, socketRoomId, 0, startTime - 1).isEmpty());
+        messageJournal.close();
+    }
+
+    @Test
+    void readStopsAtATornRecord(@TempDir Path directory) throws Exception {
+        UUID organizationId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+
+        try (MessageJournal messageJournal = new MessageJournal(true, directory.toString(), 4096, 5, 0, 1024, SocketMetrics.inMemory())) {
+            messageJournal.append(organizationId, socketRoomId, "first".getBytes(StandardCharsets.UTF_8));
+            messageJournal.append(organizationId, socketRoomId, "second".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path segment;
+        try (Stream<Path> segments = Files.list(directory)) {
+            segment = segments.findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        // The last byte of the payload of the second record, before its CRC32
+        int secondRecordStart = 4 + 8 + 16 + 16 + "first".length() + 4;
+        bytes[secondRecordStart + 4 + 8 + 16 + 16 + "second".length() - 1] ^= 1;
+        Files.write(segment, bytes);
+
+        MessageJournal messageJournal = new MessageJournal(true, directory.toString(), 4096, 5, 0, 1024, SocketMetrics.inMemory());
+        assertEquals(List.of("first"), read(messageJournal, organizationId, socketRoomId, 0, Long.MAX_VALUE));
+        messageJournal.close();
+    }
+}
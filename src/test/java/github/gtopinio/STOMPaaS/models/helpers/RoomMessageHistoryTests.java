@@ -0,0 +1,79 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.gtopinio.STOMPaaS.models.classes.SocketMessage;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomMessageHistoryTests {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SocketMessageBroadcaster socketMessageBroadcaster = new SocketMessageBroadcaster((message, timeout) -> true, this.objectMapper);
+
+    private byte[] record(RoomMessageHistory roomMessageHistory, UUID socketRoomId, String content) {
+        SocketMessage socketMessage = SocketMessage.builder()
+                .content(content)
+                .socketRoomId(socketRoomId)
+                .type(MessageType.MESSAGE)
+                .build();
+        return roomMessageHistory.record(socketRoomId, socketMessage, this.socketMessageBroadcaster::serialize);
+    }
+
+    @Test
+    void lastMessagesAreReplayedInOrderAsOneBatch() throws Exception {
+        RoomMessageHistory roomMessageHistory = new RoomMessageHistory(3, 60_000, 32_768, 1_000_000);
+        UUID socketRoomId = UUID.randomUUID();
+        for (int i = 1; i <= 5; i++) {
+            this.record(roomMessageHistory, socketRoomId, "message-" + i);
+        }
+
+        SocketMessage[] lastMessages = this.objectMapper.readValue(RoomMessageHistory.toBatchPayload(roomMessageHistory.getLastMessages(socketRoomId, 2)), SocketMessage[].class);
+        assertEquals(2, lastMessages.length);
+        assertEquals("message-4", lastMessages[0].getContent());
+        assertEquals(4L, lastMessages[0].getSequenceNumber());
+        assertEquals("message-5", lastMessages[1].getContent());
+
+        SocketMessage[] messagesSince = this.objectMapper.readValue(RoomMessageHistory.toBatchPayload(roomMessageHistory.getMessagesSince(socketRoomId, 1)), SocketMessage[].class);
+        assertEquals(3, messagesSince.length);
+        assertEquals(3L, messagesSince[0].getSequenceNumber());
+        assertTrue(roomMessageHistory.getMessagesSince(socketRoomId, 5).isEmpty());
+        assertEquals("[]", new String(RoomMessageHistory.toBatchPayload(List.of())));
+    }
+
+    @Test
+    void historyStaysWithinItsByteLimits() {
+        RoomMessageHistory roomMessageHistory = new RoomMessageHistory(10, 60_000, 300, 500);
+        UUID firstSocketRoomId = UUID.randomUUID();
+        UUID secondSocketRoomId = UUID.randomUUID();
+        for (int i = 0; i < 10; i++) {
+            this.record(roomMessageHistory, firstSocketRoomId, "first-room-message-" + i);
+            this.record(roomMessageHistory, secondSocketRoomId, "second-room-message-" + i);
+            assertTrue(roomMessageHistory.getTotalBytes() <= 500);
+        }
+        int firstRoomBytes = roomMessageHistory.getLastMessages(firstSocketRoomId, 10).stream().mapToInt(payload -> payload.length).sum();
+        assertTrue(firstRoomBytes <= 300);
+
+        roomMessageHistory.remove(firstSocketRoomId);
+        roomMessageHistory.remove(secondSocketRoomId);
+        assertEquals(0, roomMessageHistory.getTotalBytes());
+        assertEquals(0, roomMessageHistory.getRoomCount());
+        assertNotNull(this.record(roomMessageHistory, firstSocketRoomId, "after-removal"));
+    }
+
+    @Test
+    void expiredMessagesAreNotReplayed() throws Exception {
+        RoomMessageHistory roomMessageHistory = new RoomMessageHistory(10, 50, 32_768, 1_000_000);
+        UUID socketRoomId = UUID.randomUUID();
+        this.record(roomMessageHistory, socketRoomId, "old");
+        Thread.sleep(100);
+        this.record(roomMessageHistory, socketRoomId, "new");
+
+        List<byte[]> payloads = roomMessageHistory.getLastMessages(socketRoomId, 10);
+        assertEquals(1, payloads.size());
+        assertEquals("new", this.objectMapper.readValue(payloads.get(0), SocketMessage.class).getContent());
+    }
+}
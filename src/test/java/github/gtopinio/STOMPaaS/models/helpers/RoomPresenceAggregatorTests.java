@@ -0,0 +1,87 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.gtopinio.STOMPaaS.models.classes.RoomPresence;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomPresenceAggregatorTests {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Message<?>> sentMessages = new CopyOnWriteArrayList<>();
+    private final SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+    private final SocketMessageBroadcaster socketMessageBroadcaster = new SocketMessageBroadcaster((message, timeout) -> this.sentMessages.add(message), this.objectMapper);
+
+    @Test
+    void changesWithinAWindowAreCoalescedIntoOneFrame() throws Exception {
+        RoomPresenceAggregator roomPresenceAggregator = new RoomPresenceAggregator(this.socketSessionMapper, this.socketMessageBroadcaster, 0, false);
+        UUID socketRoomId = UUID.randomUUID();
+
+        for (int i = 0; i < 50; i++) {
+            this.socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), socketRoomId, true);
+            roomPresenceAggregator.markRoomChanged(socketRoomId);
+        }
+        roomPresenceAggregator.flush();
+
+        assertEquals(1, this.sentMessages.size());
+        RoomPresence roomPresence = this.objectMapper.readValue((byte[]) this.sentMessages.get(0).getPayload(), RoomPresence.class);
+        assertEquals(MessageType.PRESENCE, roomPresence.getType());
+        assertEquals(this.socketSessionMapper.getSocketRoomPresence(socketRoomId).getSocketRoomCount(), roomPresence.getSocketRoomCount());
+        assertEquals(roomPresence.getSocketRoomCount(), roomPresence.getSocketRoomCountDelta());
+
+        roomPresenceAggregator.flush();
+        assertEquals(1, this.sentMessages.size());
+    }
+
+    @Test
+    void framesAreCompactAndCarryTheCountDelta() throws Exception {
+        RoomPresenceAggregator roomPresenceAggregator = new RoomPresenceAggregator(this.socketSessionMapper, this.socketMessageBroadcaster, 0, false);
+        UUID socketRoomId = UUID.randomUUID();
+        UUID leavingSocketId = UUID.randomUUID();
+
+        this.socketSessionMapper.upsertSocketSession(leavingSocketId, null, Collections.emptyList(), socketRoomId, true);
+        this.socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), socketRoomId, true);
+        roomPresenceAggregator.markRoomChanged(socketRoomId);
+        roomPresenceAggregator.flush();
+        this.socketSessionMapper.removeSocketSession(leavingSocketId, socketRoomId);
+        roomPresenceAggregator.markRoomChanged(socketRoomId);
+        roomPresenceAggregator.flush();
+
+        assertEquals(2, this.sentMessages.size());
+        String payload = new String((byte[]) this.sentMessages.get(1).getPayload(), StandardCharsets.UTF_8);
+        assertFalse(payload.contains("content"));
+        assertFalse(payload.contains("senderUsername"));
+        RoomPresence roomPresence = this.objectMapper.readValue(payload, RoomPresence.class);
+        assertEquals(-1, roomPresence.getSocketRoomCountDelta());
+    }
+
+    @Test
+    void removedRoomsGetNoFrame() {
+        RoomPresenceAggregator roomPresenceAggregator = new RoomPresenceAggregator(this.socketSessionMapper, this.socketMessageBroadcaster, 0, false);
+
+        roomPresenceAggregator.markRoomChanged(UUID.randomUUID());
+        roomPresenceAggregator.flush();
+
+        assertTrue(this.sentMessages.isEmpty());
+    }
+
+    @Test
+    void memberAnnouncementsAreOptionalOnlyWhenPresenceIsEnabled() {
+        RoomPresenceAggregator disabledAggregator = new RoomPresenceAggregator(this.socketSessionMapper, this.socketMessageBroadcaster, 0, false);
+        assertFalse(disabledAggregator.isEnabled());
+        assertTrue(disabledAggregator.isMemberAnnouncementEnabled());
+
+        try (RoomPresenceAggregator enabledAggregator = new RoomPresenceAggregator(this.socketSessionMapper, this.socketMessageBroadcaster, 100, false)) {
+            assertTrue(enabledAggregator.isEnabled());
+            assertFalse(enabledAggregator.isMemberAnnouncementEnabled());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionActivityTrackerTests {
+    private static final long IDLE_TIMEOUT = 3_000;
+    private static final long TICK_INTERVAL = 100;
+
+    @Test
+    void quietSessionsAreReapedOnce() {
+        SessionActivityTracker sessionActivityTracker = new SessionActivityTracker(IDLE_TIMEOUT, TICK_INTERVAL, 1_000);
+        long now = System.currentTimeMillis();
+
+        sessionActivityTracker.track("quiet", 1_000, now);
+        sessionActivityTracker.track("active", 1_000, now);
+        for (long time = now; time < now + IDLE_TIMEOUT; time += TICK_INTERVAL) {
+            sessionActivityTracker.recordActivity("active", time);
+            assertTrue(sessionActivityTracker.pollIdleSessions(time).isEmpty());
+        }
+
+        List<String> idleStompSessionIds = sessionActivityTracker.pollIdleSessions(now + IDLE_TIMEOUT + TICK_INTERVAL);
+        assertEquals(List.of("quiet"), idleStompSessionIds);
+        assertEquals(1, sessionActivityTracker.getTrackedSessionCount());
+        assertTrue(sessionActivityTracker.pollIdleSessions(now + IDLE_TIMEOUT + 2 * TICK_INTERVAL).isEmpty());
+
+        // The active session is reaped once it goes quiet as well
+        long lastActivityTime = now + IDLE_TIMEOUT - TICK_INTERVAL;
+        assertEquals(List.of("active"), sessionActivityTracker.pollIdleSessions(lastActivityTime + IDLE_TIMEOUT + 2 * TICK_INTERVAL));
+        assertEquals(0, sessionActivityTracker.getTrackedSessionCount());
+    }
+
+    @Test
+    void sessionsWithoutHeartbeatsOrDisconnectedAreNotReaped() {
+        SessionActivityTracker sessionActivityTracker = new SessionActivityTracker(IDLE_TIMEOUT, TICK_INTERVAL, 1_000);
+        long now = System.currentTimeMillis();
+
+        sessionActivityTracker.track("no-heartbeats", 0, now);
+        sessionActivityTracker.track("disconnected", 1_000, now);
+        sessionActivityTracker.untrack("disconnected");
+
+        assertTrue(sessionActivityTracker.pollIdleSessions(now + 10 * IDLE_TIMEOUT).isEmpty());
+        assertEquals(0, sessionActivityTracker.getTrackedSessionCount());
+    }
+
+    @Test
+    void idleTimeoutCoversThreeNegotiatedHeartbeats() {
+        SessionActivityTracker sessionActivityTracker = new SessionActivityTracker(IDLE_TIMEOUT, TICK_INTERVAL, 1_000);
+        long now = System.currentTimeMillis();
+
+        // The client sends a heartbeat every 5 seconds, so 3 seconds of silence is not enough to be idle
+        sessionActivityTracker.track("slow-heartbeats", 5_000, now);
+        assertTrue(sessionActivityTracker.pollIdleSessions(now + IDLE_TIMEOUT + TICK_INTERVAL).isEmpty());
+        assertTrue(sessionActivityTracker.pollIdleSessions(now + 14_000).isEmpty());
+        assertEquals(List.of("slow-heartbeats"), sessionActivityTracker.pollIdleSessions(now + 15_000 + TICK_INTERVAL));
+    }
+}
@@ -0,0 +1,70 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.DTOs.SocketDTO;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketInputValidatorTests {
+    private final SocketInputValidator socketInputValidator = new SocketInputValidator(10, 2, 5);
+
+    private SocketDTO.SocketDTOBuilder validInput() {
+        return SocketDTO.builder()
+                .socketMessage("Hello")
+                .senderUsername("user")
+                .senderSocketId(UUID.randomUUID())
+                .socketRoomId(UUID.randomUUID())
+                .categories(List.of("a", "b"))
+                .messageType(MessageType.MESSAGE);
+    }
+
+    @Test
+    void validInputHasNoRejectionReason() {
+        assertNull(this.socketInputValidator.getRejectionReason(this.validInput().build()));
+        assertTrue(this.socketInputValidator.validate(this.validInput().categories(null).build()));
+    }
+
+    @Test
+    void missingFieldsAreRejected() {
+        assertEquals(SocketRejectionReason.INVALID_INPUT, this.socketInputValidator.getRejectionReason(this.validInput().socketMessage("").build()));
+        assertEquals(SocketRejectionReason.INVALID_INPUT, this.socketInputValidator.getRejectionReason(this.validInput().senderUsername(null).build()));
+        assertEquals(SocketRejectionReason.INVALID_INPUT, this.socketInputValidator.getRejectionReason(this.validInput().senderSocketId(null).build()));
+        assertEquals(SocketRejectionReason.INVALID_INPUT, this.socketInputValidator.getRejectionReason(this.validInput().categories(Collections.singletonList(null)).build()));
+        assertEquals(SocketRejectionReason.INVALID_MESSAGE_TYPE, this.socketInputValidator.getRejectionReason(this.validInput().messageType(null).build()));
+    }
+
+    @Test
+    void oversizedFieldsAreRejected() {
+        assertEquals(SocketRejectionReason.MESSAGE_TOO_LONG, this.socketInputValidator.getRejectionReason(this.validInput().socketMessage("12345678901").build()));
+        assertEquals(SocketRejectionReason.TOO_MANY_CATEGORIES, this.socketInputValidator.getRejectionReason(this.validInput().categories(List.of("a", "b", "c")).build()));
+        assertEquals(SocketRejectionReason.CATEGORY_TOO_LONG, this.socketInputValidator.getRejectionReason(this.validInput().categories(List.of("abcdef")).build()));
+    }
+
+    @Test
+    void emptyAndOversizedBatchesAreRejected() {
+        SocketInputValidator batchValidator = new SocketInputValidator(10, 2, 5, 2);
+        assertNull(batchValidator.getBatchRejectionReason(List.of(this.validInput().build(), this.validInput().build())));
+        assertEquals(SocketRejectionReason.INVALID_INPUT, batchValidator.getBatchRejectionReason(null));
+        assertEquals(SocketRejectionReason.INVALID_INPUT, batchValidator.getBatchRejectionReason(Collections.emptyList()));
+        assertEquals(SocketRejectionReason.BATCH_TOO_LARGE, batchValidator.getBatchRejectionReason(List.of(this.validInput().build(), this.validInput().build(), this.validInput().build())));
+    }
+
+    @Test
+    void stringChecksDoNotNeedExceptions() {
+        assertTrue(this.socketInputValidator.isUUID(UUID.randomUUID().toString()));
+        assertTrue(this.socketInputValidator.isUUID(UUID.randomUUID().toString().toUpperCase()));
+        assertFalse(this.socketInputValidator.isUUID("not-a-uuid"));
+        assertFalse(this.socketInputValidator.isUUID("0000000g-0000-0000-0000-000000000000"));
+        assertFalse(this.socketInputValidator.isUUID(null));
+
+        assertTrue(this.socketInputValidator.isEnumValue("PING", MessageType.class));
+        assertFalse(this.socketInputValidator.isEnumValue("ping", MessageType.class));
+        assertFalse(this.socketInputValidator.isEnumValue(null, MessageType.class));
+    }
+}
@@ -0,0 +1,161 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import github.gtopinio.STOMPaaS.models.classes.SocketMessage;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.SocketTransport;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketMessageBroadcasterTests {
+
+    @Test
+    void broadcastSendsPreparedMessageToBrokerChannel() throws Exception {
+        List<Message<?>> sentMessages = new ArrayList<>();
+        ObjectMapper objectMapper = new ObjectMapper();
+        SocketMessageBroadcaster socketMessageBroadcaster = new SocketMessageBroadcaster((message, timeout) -> sentMessages.add(message), objectMapper);
+        UUID socketRoomId = UUID.randomUUID();
+        SocketMessage socketMessage = SocketMessage.builder()
+                .content("User test has joined the chat")
+                .socketRoomId(socketRoomId)
+                .type(MessageType.JOIN)
+                .socketRoomCount(1)
+                .build();
+
+        assertTrue(socketMessageBroadcaster.broadcast(socketRoomId, socketMessage));
+
+        assertEquals(1, sentMessages.size());
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(sentMessages.get(0));
+        assertEquals(SimpMessageType.MESSAGE, headerAccessor.getMessageType());
+        assertEquals("/topic/" + socketRoomId, headerAccessor.getDestination());
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, headerAccessor.getContentType());
+        assertEquals(MessageType.JOIN.toString(), headerAccessor.getFirstNativeHeader(SocketMessageBroadcaster.MESSAGE_TYPE_HEADER));
+
+        SocketMessage sentSocketMessage = objectMapper.readValue((byte[]) sentMessages.get(0).getPayload(), SocketMessage.class);
+        assertEquals(socketMessage.getContent(), sentSocketMessage.getContent());
+        assertEquals(socketMessage.getSocketRoomCount(), sentSocketMessage.getSocketRoomCount());
+    }
+
+    @Test
+    void destinationIsCachedUntilEvicted() {
+        SocketMessageBroadcaster socketMessageBroadcaster = new SocketMessageBroadcaster((message, timeout) -> true, new ObjectMapper());
+        UUID socketRoomId = UUID.randomUUID();
+
+        String destination = socketMessageBroadcaster.getDestination(socketRoomId);
+        assertSame(destination, socketMessageBroadcaster.getDestination(socketRoomId));
+
+        socketMessageBroadcaster.evictDestination(socketRoomId);
+        assertNotSame(destination, socketMessageBroadcaster.getDestination(socketRoomId));
+        assertEquals(destination, socketMessageBroadcaster.getDestination(socketRoomId));
+    }
+
+    @Test
+    void cborDestinationIsOnlyPublishedWhileSubscribed() throws Exception {
+        List<Message<?>> sentMessages = new ArrayList<>();
+        CborSubscriptionTracker cborSubscriptionTracker = new CborSubscriptionTracker(true, "simple");
+        SocketMessageBroadcaster socketMessageBroadcaster = new SocketMessageBroadcaster((message, timeout) -> sentMessages.add(message), new ObjectMapper(), cborSubscriptionTracker);
+        UUID socketRoomId = UUID.randomUUID();
+        SocketMessage socketMessage = SocketMessage.builder()
+                .content("Hello")
+                .senderSocketId(UUID.randomUUID())
+                .socketRoomId(socketRoomId)
+                .type(MessageType.MESSAGE)
+                .build();
+
+        assertTrue(socketMessageBroadcaster.broadcast(socketRoomId, socketMessage));
+        assertEquals(1, sentMessages.size());
+
+        String cborDestination = socketMessageBroadcaster.getCborDestination(socketRoomId);
+        assertEquals("/topic/" + socketRoomId + ".cbor", cborDestination);
+        cborSubscriptionTracker.subscribe("session-1", "sub-1", cborDestination);
+        cborSubscriptionTracker.subscribe("session-2", "sub-1", cborDestination);
+        assertTrue(socketMessageBroadcaster.broadcast(socketRoomId, socketMessage));
+        assertEquals(3, sentMessages.size());
+
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(sentMessages.get(2));
+        assertEquals(cborDestination, headerAccessor.getDestination());
+        assertEquals(SocketMessageBroadcaster.APPLICATION_CBOR, headerAccessor.getContentType());
+        byte[] cborPayload = (byte[]) sentMessages.get(2).getPayload();
+        assertTrue(cborPayload.length < ((byte[]) sentMessages.get(1).getPayload()).length);
+        SocketMessage sentSocketMessage = new CBORMapper().readValue(cborPayload, SocketMessage.class);
+        assertEquals(socketMessage.getSenderSocketId(), sentSocketMessage.getSenderSocketId());
+        assertEquals(socketMessage.getSocketRoomId(), sentSocketMessage.getSocketRoomId());
+
+        cborSubscriptionTracker.unsubscribe("session-1", "sub-1");
+        assertTrue(cborSubscriptionTracker.hasSubscribers(cborDestination));
+        cborSubscriptionTracker.removeSession("session-2");
+        assertFalse(cborSubscriptionTracker.hasSubscribers(cborDestination));
+        assertTrue(socketMessageBroadcaster.broadcast(socketRoomId, socketMessage));
+        assertEquals(4, sentMessages.size());
+    }
+
+    @Test
+    void cborSubscriptionsAreRefusedOnSockJsSessions() {
+        CborSubscriptionTracker cborSubscriptionTracker = new CborSubscriptionTracker(true, "simple");
+        String cborDestination = "/topic/" + UUID.randomUUID() + ".cbor";
+
+        Message<byte[]> sockJsSubscribe = subscribeMessage("session-1", cborDestination, SocketTransport.SOCKJS_STREAMING);
+        assertThrows(MessageDeliveryException.class, () -> cborSubscriptionTracker.preSend(sockJsSubscribe, null));
+        assertFalse(cborSubscriptionTracker.hasAnySubscribers());
+
+        // SockJS sessions can still subscribe to the JSON topic of the room
+        Message<byte[]> sockJsJsonSubscribe = subscribeMessage("session-1", cborDestination.replace(".cbor", ""), SocketTransport.SOCKJS_WEBSOCKET);
+        assertSame(sockJsJsonSubscribe, cborSubscriptionTracker.preSend(sockJsJsonSubscribe, null));
+
+        Message<byte[]> nativeSubscribe = subscribeMessage("session-2", cborDestination, SocketTransport.NATIVE);
+        assertSame(nativeSubscribe, cborSubscriptionTracker.preSend(nativeSubscribe, null));
+        assertTrue(cborSubscriptionTracker.hasSubscribers(cborDestination));
+    }
+
+    private static Message<byte[]> subscribeMessage(String stompSessionId, String destination, SocketTransport transport) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        headerAccessor.setSessionId(stompSessionId);
+        headerAccessor.setSubscriptionId("sub-1");
+        headerAccessor.setDestination(destination);
+        headerAccessor.setSessionAttributes(new HashMap<>(Map.of(BackpressureSubProtocolWebSocketHandler.TRANSPORT_ATTRIBUTE, transport)));
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    @Test
+    void batchIsBroadcastAsOneFrame() throws Exception {
+        List<Message<?>> sentMessages = new ArrayList<>();
+        ObjectMapper objectMapper = new ObjectMapper();
+        SocketMessageBroadcaster socketMessageBroadcaster = new SocketMessageBroadcaster((message, timeout) -> sentMessages.add(message), objectMapper);
+        UUID socketRoomId = UUID.randomUUID();
+        List<SocketMessage> socketMessages = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            SocketMessage socketMessage = SocketMessage.builder()
+                    .content("message-" + i)
+                    .socketRoomId(socketRoomId)
+                    .type(MessageType.MESSAGE)
+                    .build();
+            socketMessages.add(socketMessage);
+            payloads.add(socketMessageBroadcaster.serialize(socketMessage));
+        }
+
+        assertTrue(socketMessageBroadcaster.broadcastBatch(socketRoomId, socketMessages, RoomMessageHistory.toBatchPayload(payloads)));
+
+        assertEquals(1, sentMessages.size());
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(sentMessages.get(0));
+        assertEquals("/topic/" + socketRoomId, headerAccessor.getDestination());
+        assertEquals(MessageType.BATCH.toString(), headerAccessor.getFirstNativeHeader(SocketMessageBroadcaster.MESSAGE_TYPE_HEADER));
+        SocketMessage[] sentSocketMessages = objectMapper.readValue((byte[]) sentMessages.get(0).getPayload(), SocketMessage[].class);
+        assertEquals(3, sentSocketMessages.length);
+        assertEquals("message-2", sentSocketMessages[2].getContent());
+    }
+}
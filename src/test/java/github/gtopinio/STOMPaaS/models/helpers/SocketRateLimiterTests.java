@@ -0,0 +1,142 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.RateLimitPolicy;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketRateLimiterTests {
+
+    @Test
+    void socketIsLimitedToItsBurstAndPingsAreShedFirst() {
+        SocketMetrics socketMetrics = SocketMetrics.inMemory();
+        SocketRateLimiter socketRateLimiter = new SocketRateLimiter(new SocketSessionMapper(new InMemorySessionRegistry()), socketMetrics,
+                new RateLimitPolicy(0.001, 4), new RateLimitPolicy(0, 0));
+        UUID senderSocketId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+
+        assertTrue(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.PING, 1));
+        assertTrue(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.PING, 1));
+        // Half of the burst is used, so only chat messages get through
+        assertFalse(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.PING, 1));
+        assertTrue(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 2));
+        assertFalse(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 1));
+        assertTrue(socketRateLimiter.tryAcquire(UUID.randomUUID(), socketRoomId, MessageType.MESSAGE, 1));
+
+        assertEquals(1, socketMetrics.getMeterRegistry().get("stompaas.ratelimit.rejected").tag("scope", "socket").tag("type", "PING").counter().count());
+        assertEquals(1, socketMetrics.getMeterRegistry().get("stompaas.ratelimit.rejected").tag("scope", "socket").tag("type", "MESSAGE").counter().count());
+        assertEquals(2, socketMetrics.getMeterRegistry().get("stompaas.socket.rejected").tag("reason", SocketRejectionReason.RATE_LIMITED.name().toLowerCase()).counter().count());
+    }
+
+    @Test
+    void exhaustedRoomGivesTheSocketTokensBack() {
+        SocketRateLimiter socketRateLimiter = new SocketRateLimiter(new SocketSessionMapper(new InMemorySessionRegistry()), SocketMetrics.inMemory(),
+                new RateLimitPolicy(0.001, 2), new RateLimitPolicy(0.001, 3));
+        UUID senderSocketId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+
+        assertTrue(socketRateLimiter.tryAcquire(UUID.randomUUID(), socketRoomId, MessageType.MESSAGE, 2));
+        assertTrue(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 1));
+        assertFalse(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 1));
+        // The room ran out, so the socket still has one token for another room
+        assertTrue(socketRateLimiter.tryAcquire(senderSocketId, UUID.randomUUID(), MessageType.MESSAGE, 1));
+        assertFalse(socketRateLimiter.tryAcquireSocket(senderSocketId, null, MessageType.MESSAGE, 1));
+    }
+
+    @Test
+    void policiesArePickedByOrganizationThenCategory() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID organizationId = UUID.randomUUID();
+        UUID gamingRoomId = UUID.randomUUID();
+        UUID organizationRoomId = UUID.randomUUID();
+        // The single-user gaming room is not matched by the multi-user JOIN, so the organization gets its own gaming room
+        socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("gaming"), gamingRoomId, false);
+        socketSessionMapper.upsertSocketSession(UUID.randomUUID(), organizationId, List.of("gaming"), organizationRoomId, true);
+        SocketRateLimiter socketRateLimiter = new SocketRateLimiter(socketSessionMapper, SocketMetrics.inMemory(), true,
+                0.001, 1, 0, 0, "gaming=0.001:3", "", organizationId + "=0:0", "");
+
+        UUID gamer = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(socketRateLimiter.tryAcquire(gamer, gamingRoomId, MessageType.MESSAGE, 1));
+        }
+        assertFalse(socketRateLimiter.tryAcquire(gamer, gamingRoomId, MessageType.MESSAGE, 1));
+
+        UUID organizationMember = UUID.randomUUID();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(socketRateLimiter.tryAcquire(organizationMember, organizationRoomId, MessageType.MESSAGE, 1));
+        }
+        socketRateLimiter.close();
+    }
+
+    @Test
+    void socketPolicyFollowsTheRoomOfEachMessage() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID gamingRoomId = UUID.randomUUID();
+        UUID lobbyRoomId = UUID.randomUUID();
+        socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("gaming"), gamingRoomId, true);
+        socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("lobby"), lobbyRoomId, true);
+        SocketRateLimiter socketRateLimiter = new SocketRateLimiter(socketSessionMapper, SocketMetrics.inMemory(), true,
+                0, 0, 0, 0, "gaming=0.001:1", "", "", "");
+
+        // The strict policy of the first room a socket uses does not follow it into a room without one, and the other way around
+        UUID gamer = UUID.randomUUID();
+        assertTrue(socketRateLimiter.tryAcquire(gamer, gamingRoomId, MessageType.MESSAGE, 1));
+        assertFalse(socketRateLimiter.tryAcquire(gamer, gamingRoomId, MessageType.MESSAGE, 1));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(socketRateLimiter.tryAcquire(gamer, lobbyRoomId, MessageType.MESSAGE, 1));
+        }
+        assertFalse(socketRateLimiter.tryAcquire(gamer, gamingRoomId, MessageType.MESSAGE, 1));
+
+        UUID lobbyMember = UUID.randomUUID();
+        assertTrue(socketRateLimiter.tryAcquire(lobbyMember, lobbyRoomId, MessageType.MESSAGE, 1));
+        assertTrue(socketRateLimiter.tryAcquire(lobbyMember, gamingRoomId, MessageType.MESSAGE, 1));
+        assertFalse(socketRateLimiter.tryAcquire(lobbyMember, gamingRoomId, MessageType.MESSAGE, 1));
+        socketRateLimiter.close();
+    }
+
+    @Test
+    void organizationPolicyComesFromTheRoomNotTheSender() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID organizationId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+        socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("gaming"), socketRoomId, true);
+        SocketRateLimiter socketRateLimiter = new SocketRateLimiter(socketSessionMapper, SocketMetrics.inMemory(), true,
+                0.001, 1, 0, 0, "", "", organizationId + "=0:0", "");
+
+        // The room has no organization, so the unlimited policy of the organization does not apply to its senders
+        UUID senderSocketId = UUID.randomUUID();
+        assertTrue(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 1));
+        assertFalse(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 1));
+        socketRateLimiter.close();
+    }
+
+    @Test
+    void sweepOnlyForgetsFullBuckets() {
+        SocketRateLimiter socketRateLimiter = new SocketRateLimiter(new SocketSessionMapper(new InMemorySessionRegistry()), SocketMetrics.inMemory(),
+                new RateLimitPolicy(0.001, 2), new RateLimitPolicy(1_000_000, 1));
+        UUID senderSocketId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+
+        assertTrue(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 1));
+        assertEquals(2, socketRateLimiter.getBucketCount());
+        socketRateLimiter.sweep();
+
+        // The room bucket refilled within a microsecond, while the socket bucket keeps what its sender has used
+        assertEquals(1, socketRateLimiter.getBucketCount());
+        assertTrue(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 1));
+        assertFalse(socketRateLimiter.tryAcquire(senderSocketId, socketRoomId, MessageType.MESSAGE, 1));
+        socketRateLimiter.close();
+    }
+
+    @Test
+    void malformedPoliciesAreRejected() {
+        assertEquals(2, SocketRateLimiter.parsePolicies("gaming=50:100, lobby=5:10").size());
+        assertTrue(SocketRateLimiter.parsePolicies(" ").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> SocketRateLimiter.parsePolicies("gaming=50"));
+    }
+}
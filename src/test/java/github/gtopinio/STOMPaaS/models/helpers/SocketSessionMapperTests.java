@@ -0,0 +1,302 @@
+package github.gtopinio.STOMPaaS.models.helpers;
+
+import github.gtopinio.STOMPaaS.models.classes.SocketSessionEntry;
+import github.gtopinio.STOMPaaS.models.enums.SocketRejectionReason;
+import github.gtopinio.STOMPaaS.models.response.SocketMappingResponse;
+import github.gtopinio.STOMPaaS.models.response.SocketRoomSnapshot;
+import github.gtopinio.STOMPaaS.models.response.SocketRoomSnapshotPage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketSessionMapperTests {
+    private static final int THREAD_COUNT = 16;
+    private static final int JOINS_PER_THREAD = 500;
+
+    @Test
+    void concurrentJoinsOnFreshRoomAreNotLost() throws Exception {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID socketRoomId = UUID.randomUUID();
+        AtomicInteger successfulJoins = new AtomicInteger();
+
+        runConcurrently(threadIndex -> {
+            for (int i = 0; i < JOINS_PER_THREAD; i++) {
+                SocketMappingResponse response = socketSessionMapper.upsertSocketSession(
+                        UUID.randomUUID(), null, Collections.emptyList(), socketRoomId, true);
+                if (response.isProcessStatus()) {
+                    successfulJoins.incrementAndGet();
+                }
+            }
+        });
+
+        SocketSessionEntry socketSessionEntry = socketSessionMapper.getSocketSessionMapping().get(socketRoomId);
+        assertNotNull(socketSessionEntry);
+        assertEquals(THREAD_COUNT * JOINS_PER_THREAD, successfulJoins.get());
+        assertEquals(THREAD_COUNT * JOINS_PER_THREAD, socketSessionEntry.getSocketUserMap().size());
+    }
+
+    @Test
+    void concurrentCategoryJoinsLandInTheSameRoom() throws Exception {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID socketRoomId = UUID.randomUUID();
+
+        runConcurrently(threadIndex -> {
+            // Alternate the category order to exercise the order-insensitive category key
+            List<String> categories = (threadIndex % 2 == 0) ? List.of("chess", "ranked") : List.of("ranked", "chess");
+            for (int i = 0; i < JOINS_PER_THREAD; i++) {
+                assertTrue(socketSessionMapper.upsertSocketSession(
+                        UUID.randomUUID(), null, categories, socketRoomId, true).isProcessStatus());
+            }
+        });
+
+        assertEquals(1, socketSessionMapper.getSocketSessionMapping().size());
+        assertEquals(THREAD_COUNT * JOINS_PER_THREAD, socketSessionMapper.getSocketSessionMapping().get(socketRoomId).getSocketUserMap().size());
+    }
+
+    @Test
+    void concurrentJoinAndLeaveKeepExactRoomCounts() throws Exception {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID socketRoomId = UUID.randomUUID();
+        List<UUID> stayingSocketIds = Collections.synchronizedList(new ArrayList<>());
+
+        runConcurrently(threadIndex -> {
+            for (int i = 0; i < JOINS_PER_THREAD; i++) {
+                UUID senderSocketId = UUID.randomUUID();
+                assertTrue(socketSessionMapper.upsertSocketSession(
+                        senderSocketId, null, List.of("lobby"), socketRoomId, true).isProcessStatus());
+                if (i % 2 == 0) {
+                    // Leaving may empty the room while other threads are joining it again
+                    assertTrue(socketSessionMapper.removeSocketSession(senderSocketId, socketRoomId).isProcessStatus());
+                } else {
+                    stayingSocketIds.add(senderSocketId);
+                }
+            }
+        });
+
+        SocketSessionEntry socketSessionEntry = socketSessionMapper.getSocketSessionMapping().get(socketRoomId);
+        assertNotNull(socketSessionEntry);
+        assertEquals(stayingSocketIds.size(), socketSessionEntry.getSocketUserMap().size());
+
+        for (UUID senderSocketId : stayingSocketIds) {
+            assertTrue(socketSessionMapper.removeSocketSession(senderSocketId, socketRoomId).isProcessStatus());
+        }
+        assertFalse(socketSessionMapper.doesSocketRoomExist(socketRoomId));
+        assertFalse(socketSessionMapper.removeSocketSession(stayingSocketIds.get(0), socketRoomId).isProcessStatus());
+    }
+
+    @Test
+    void removingStompSessionLeavesEveryJoinedRoom() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID senderSocketId = UUID.randomUUID();
+        UUID otherSocketId = UUID.randomUUID();
+        UUID firstRoomId = UUID.randomUUID();
+        UUID secondRoomId = UUID.randomUUID();
+
+        socketSessionMapper.upsertSocketSession(senderSocketId, null, Collections.emptyList(), firstRoomId, true);
+        socketSessionMapper.upsertSocketSession(senderSocketId, null, Collections.emptyList(), secondRoomId, true);
+        socketSessionMapper.upsertSocketSession(otherSocketId, null, Collections.emptyList(), secondRoomId, true);
+        socketSessionMapper.bindStompSession("session-1", senderSocketId);
+        socketSessionMapper.bindStompSession("session-2", otherSocketId);
+
+        List<SocketMappingResponse> removeSocketSessionResponses = socketSessionMapper.removeStompSession("session-1");
+
+        assertEquals(2, removeSocketSessionResponses.size());
+        assertFalse(socketSessionMapper.doesSocketRoomExist(firstRoomId));
+        assertEquals(1, socketSessionMapper.getSocketSessionMapping().get(secondRoomId).getSocketUserMap().size());
+        assertTrue(socketSessionMapper.removeStompSession("session-1").isEmpty());
+    }
+
+    @Test
+    void staleStompSessionDoesNotEvictRelinkedSocket() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID senderSocketId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+
+        socketSessionMapper.upsertSocketSession(senderSocketId, null, Collections.emptyList(), socketRoomId, true);
+        socketSessionMapper.bindStompSession("old-session", senderSocketId);
+        socketSessionMapper.bindStompSession("new-session", senderSocketId);
+
+        assertTrue(socketSessionMapper.removeStompSession("old-session").isEmpty());
+        assertTrue(socketSessionMapper.doesSocketRoomExist(socketRoomId));
+        assertEquals(1, socketSessionMapper.removeStompSession("new-session").size());
+    }
+
+    @Test
+    void directMessageReceiverResolvesToItsStompSessionWithinTheRoom() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID receiverSocketId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+
+        socketSessionMapper.upsertSocketSession(receiverSocketId, null, Collections.emptyList(), socketRoomId, true);
+        assertNull(socketSessionMapper.getStompSessionId(receiverSocketId, socketRoomId));
+
+        socketSessionMapper.bindStompSession("session-1", receiverSocketId);
+        assertEquals("session-1", socketSessionMapper.getStompSessionId(receiverSocketId, socketRoomId));
+        assertNull(socketSessionMapper.getStompSessionId(receiverSocketId, UUID.randomUUID()));
+
+        socketSessionMapper.removeStompSession("session-1");
+        assertNull(socketSessionMapper.getStompSessionId(receiverSocketId, socketRoomId));
+    }
+
+    @Test
+    void fullCategoryRoomsOverflowIntoSiblingShards() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry(), new SocketEventLogger(SocketEventLogger.DEFAULT_SAMPLE_RATE), SocketMetrics.inMemory(), 0, "chess=2");
+        List<String> categories = List.of("chess");
+        List<UUID> senderSocketIds = new ArrayList<>();
+        Set<UUID> socketRoomIds = new HashSet<>();
+
+        for (int i = 0; i < 5; i++) {
+            UUID senderSocketId = UUID.randomUUID();
+            senderSocketIds.add(senderSocketId);
+            SocketMappingResponse upsertResponse = socketSessionMapper.upsertSocketSession(senderSocketId, null, categories, null, true);
+            assertTrue(upsertResponse.isProcessStatus());
+            socketRoomIds.add(upsertResponse.getSocketRoomId());
+        }
+        assertEquals(3, socketRoomIds.size());
+        for (UUID socketRoomId : socketRoomIds) {
+            assertTrue(socketSessionMapper.getSocketSessionMapping().get(socketRoomId).getSocketUserMap().size() <= 2);
+        }
+
+        // A seat that frees up in a full room is matched before a new shard is started
+        UUID firstRoomId = socketSessionMapper.getSocketSessionMapping().entrySet().stream()
+                .filter(room -> room.getValue().getSocketUserMap().containsKey(senderSocketIds.get(0)))
+                .findFirst().orElseThrow().getKey();
+        assertTrue(socketSessionMapper.removeSocketSession(senderSocketIds.get(0), firstRoomId).isProcessStatus());
+        assertTrue(socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, categories, null, true).isProcessStatus());
+        assertTrue(socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, categories, null, true).isProcessStatus());
+        assertEquals(3, socketSessionMapper.getSocketSessionMapping().size());
+
+        // With every room full, a category JOIN starts a new shard with the same categories
+        SocketMappingResponse shardResponse = socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, categories, null, true);
+        assertTrue(shardResponse.isProcessStatus());
+        assertEquals(4, socketSessionMapper.getSocketSessionMapping().size());
+        assertEquals(categories, socketSessionMapper.getSocketRoomCategories(shardResponse.getSocketRoomId()));
+    }
+
+    @Test
+    void joinsNamingAFullRoomAreRefused() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry(), new SocketEventLogger(SocketEventLogger.DEFAULT_SAMPLE_RATE), SocketMetrics.inMemory(), 0, "chess=2");
+        UUID socketRoomId = UUID.randomUUID();
+        UUID memberSocketId = UUID.randomUUID();
+        assertTrue(socketSessionMapper.upsertSocketSession(memberSocketId, null, List.of("chess"), socketRoomId, true).isProcessStatus());
+        assertTrue(socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, List.of("chess"), socketRoomId, true).isProcessStatus());
+
+        // The JOIN names the room, so it is not moved to another room behind the caller's back
+        for (List<String> categories : List.of(List.of("chess"), List.<String>of())) {
+            SocketMappingResponse fullRoomResponse = socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, categories, socketRoomId, true);
+            assertFalse(fullRoomResponse.isProcessStatus());
+            assertEquals(SocketRejectionReason.ROOM_FULL, fullRoomResponse.getRejectionReason());
+        }
+        assertEquals(1, socketSessionMapper.getSocketSessionMapping().size());
+
+        // A freed seat can be taken by ID
+        assertTrue(socketSessionMapper.removeSocketSession(memberSocketId, socketRoomId).isProcessStatus());
+        assertEquals(socketRoomId, socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, List.<String>of(), socketRoomId, true).getSocketRoomId());
+    }
+
+    @Test
+    void roomsKeepTheOrganizationOfTheJoinThatCreatedThem() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        UUID organizationId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+
+        assertTrue(socketSessionMapper.upsertSocketSession(UUID.randomUUID(), organizationId, List.of("chess"), socketRoomId, true).isProcessStatus());
+        assertEquals(organizationId, socketSessionMapper.getSocketRoomOrganizationId(socketRoomId));
+
+        // JOINs are not filtered by organization, but later JOINs do not change the organization of the room
+        assertTrue(socketSessionMapper.upsertSocketSession(UUID.randomUUID(), UUID.randomUUID(), Collections.emptyList(), socketRoomId, true).isProcessStatus());
+        assertTrue(socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), socketRoomId, true).isProcessStatus());
+        assertEquals(organizationId, socketSessionMapper.getSocketRoomOrganizationId(socketRoomId));
+    }
+
+    @Test
+    void roomGroupCountsFollowJoinsAndLeavesOfMemberRooms() {
+        UUID parentRoomId = UUID.randomUUID();
+        UUID firstMemberRoomId = UUID.randomUUID();
+        UUID secondMemberRoomId = UUID.randomUUID();
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry(), new SocketEventLogger(SocketEventLogger.DEFAULT_SAMPLE_RATE), SocketMetrics.inMemory(), 0, "",
+                parentRoomId + "=" + firstMemberRoomId + "+" + secondMemberRoomId);
+        assertEquals(parentRoomId, socketSessionMapper.getParentRoomId(firstMemberRoomId));
+        assertNull(socketSessionMapper.getParentRoomId(parentRoomId));
+
+        UUID leavingSocketId = UUID.randomUUID();
+        socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), parentRoomId, true);
+        socketSessionMapper.upsertSocketSession(leavingSocketId, null, Collections.emptyList(), firstMemberRoomId, true);
+        SocketMappingResponse memberResponse = socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), secondMemberRoomId, true);
+        SocketMappingResponse parentPresence = socketSessionMapper.getSocketRoomPresence(parentRoomId);
+
+        // The member rooms are told the count of the parent room, and every room of the group the count of the member rooms
+        assertEquals(parentPresence.getSocketRoomCount(), memberResponse.getSocketRoomCount());
+        assertEquals(parentPresence.getRoomGroupCount(), memberResponse.getRoomGroupCount());
+        assertEquals(memberResponse.getRoomGroupCount(), memberResponse.getExIncHubGamingRoomCount());
+
+        SocketMappingResponse leaveResponse = socketSessionMapper.removeSocketSession(leavingSocketId, firstMemberRoomId);
+        assertEquals(parentPresence.getRoomGroupCount() - 1, leaveResponse.getRoomGroupCount());
+        assertEquals(parentPresence.getSocketRoomCount(), leaveResponse.getSocketRoomCount());
+
+        SocketMappingResponse ungroupedResponse = socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), UUID.randomUUID(), true);
+        assertNull(ungroupedResponse.getRoomGroupCount());
+        // Rooms in no group are still told the member count of the default group, as ExIncHub clients always read it
+        assertEquals(leaveResponse.getRoomGroupCount(), ungroupedResponse.getExIncHubGamingRoomCount());
+        assertThrows(IllegalArgumentException.class, () -> SocketSessionMapper.parseRoomGroups(parentRoomId + "=" + firstMemberRoomId + "," + UUID.randomUUID() + "=" + firstMemberRoomId));
+    }
+
+    private interface ThreadTask {
+        void run(int threadIndex) throws Exception;
+    }
+
+    @Test
+    void snapshotPagesCoverEveryRoomOnce() {
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        for (int i = 0; i < 25; i++) {
+            socketSessionMapper.upsertSocketSession(UUID.randomUUID(), null, Collections.emptyList(), UUID.randomUUID(), true);
+        }
+
+        Set<UUID> snapshotRoomIds = new HashSet<>();
+        for (int page = 0; page < 3; page++) {
+            SocketRoomSnapshotPage socketRoomSnapshotPage = socketSessionMapper.getSocketRoomSnapshotPage(page, 10);
+            assertEquals(25, socketRoomSnapshotPage.getTotalSocketRooms());
+            assertEquals((page < 2) ? 10 : 5, socketRoomSnapshotPage.getSocketRooms().size());
+            for (SocketRoomSnapshot socketRoomSnapshot : socketRoomSnapshotPage.getSocketRooms()) {
+                assertEquals(1, socketRoomSnapshot.getSocketRoomCount());
+                snapshotRoomIds.add(socketRoomSnapshot.getSocketRoomId());
+            }
+        }
+        assertEquals(25, snapshotRoomIds.size());
+    }
+
+    private static void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int threadIndex = 0; threadIndex < THREAD_COUNT; threadIndex++) {
+                int index = threadIndex;
+                futures.add(executorService.submit(() -> {
+                    startLatch.await();
+                    task.run(index);
+                    return null;
+                }));
+            }
+            startLatch.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
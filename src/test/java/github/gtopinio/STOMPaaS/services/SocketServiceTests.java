@@ -0,0 +1,131 @@
+package github.gtopinio.STOMPaaS.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.gtopinio.STOMPaaS.models.DTOs.SocketDTO;
+import github.gtopinio.STOMPaaS.models.classes.RateLimitPolicy;
+import github.gtopinio.STOMPaaS.models.enums.MessageType;
+import github.gtopinio.STOMPaaS.models.helpers.InMemorySessionRegistry;
+import github.gtopinio.STOMPaaS.models.helpers.MessageJournal;
+import github.gtopinio.STOMPaaS.models.helpers.RoomMessageHistory;
+import github.gtopinio.STOMPaaS.models.helpers.RoomPresenceAggregator;
+import github.gtopinio.STOMPaaS.models.helpers.SocketEventLogger;
+import github.gtopinio.STOMPaaS.models.helpers.SocketInputValidator;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMessageBroadcaster;
+import github.gtopinio.STOMPaaS.models.helpers.SocketMetrics;
+import github.gtopinio.STOMPaaS.models.helpers.SocketRateLimiter;
+import github.gtopinio.STOMPaaS.models.helpers.SocketSessionMapper;
+import github.gtopinio.STOMPaaS.models.response.SocketSessionResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketServiceTests {
+
+    @Test
+    void directMessageToAGoneReceiverSessionIsNotCountedAsSent() {
+        // The broker refuses messages for sessions that are gone, as if the receiver disconnected before the send
+        Set<String> goneStompSessionIds = ConcurrentHashMap.newKeySet();
+        SocketMessageBroadcaster socketMessageBroadcaster = new SocketMessageBroadcaster((message, timeout) -> {
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            return goneStompSessionIds.stream().noneMatch(stompSessionId -> destination != null && destination.endsWith(stompSessionId));
+        }, new ObjectMapper());
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        SocketMetrics socketMetrics = SocketMetrics.inMemory();
+        SocketService socketService = new SocketService(
+                socketMessageBroadcaster,
+                new SocketInputValidator(),
+                socketSessionMapper,
+                new RoomPresenceAggregator(socketSessionMapper, socketMessageBroadcaster, 0, false),
+                new SocketEventLogger(1),
+                socketMetrics,
+                new RoomMessageHistory(0, 0, 0, 0),
+                new MessageJournal(false, "", 0, 0, 0, 0, socketMetrics),
+                new SocketRateLimiter(socketSessionMapper, socketMetrics, new RateLimitPolicy(0, 0), new RateLimitPolicy(0, 0))
+        );
+
+        UUID socketRoomId = UUID.randomUUID();
+        UUID senderSocketId = UUID.randomUUID();
+        UUID receiverSocketId = UUID.randomUUID();
+        UUID goneReceiverSocketId = UUID.randomUUID();
+        socketSessionMapper.upsertSocketSession(senderSocketId, null, List.of("chess"), socketRoomId, true);
+        socketSessionMapper.upsertSocketSession(receiverSocketId, null, List.of("chess"), socketRoomId, true);
+        socketSessionMapper.upsertSocketSession(goneReceiverSocketId, null, List.of("chess"), socketRoomId, true);
+        socketSessionMapper.bindStompSession("sender", senderSocketId);
+        socketSessionMapper.bindStompSession("receiver", receiverSocketId);
+        socketSessionMapper.bindStompSession("gone-receiver", goneReceiverSocketId);
+        goneStompSessionIds.add("gone-receiver");
+
+        SocketSessionResponse goneResponse = socketService.sendSocketMessage(directMessage(senderSocketId, goneReceiverSocketId, socketRoomId));
+        assertTrue(goneResponse.getResponseEntity().getStatusCode().is5xxServerError());
+        assertTrue(socketService.sendSocketMessage(directMessage(senderSocketId, receiverSocketId, socketRoomId)).getResponseEntity().getStatusCode().is2xxSuccessful());
+
+        SocketSessionResponse batchResponse = socketService.sendSocketMessages(List.of(
+                directMessage(senderSocketId, receiverSocketId, socketRoomId),
+                directMessage(senderSocketId, goneReceiverSocketId, socketRoomId)
+        ));
+        assertEquals("1 of 2 socket messages sent successfully", batchResponse.getResponseEntity().getBody());
+        assertTrue(socketService.sendSocketMessages(List.of(directMessage(senderSocketId, goneReceiverSocketId, socketRoomId)))
+                .getResponseEntity().getStatusCode().is4xxClientError());
+    }
+
+    @Test
+    void batchedDirectMessagesAreCheckedLikeSingleOnes() {
+        List<String> destinations = new CopyOnWriteArrayList<>();
+        SocketMessageBroadcaster socketMessageBroadcaster = new SocketMessageBroadcaster((message, timeout) -> {
+            destinations.add(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+            return true;
+        }, new ObjectMapper());
+        SocketSessionMapper socketSessionMapper = new SocketSessionMapper(new InMemorySessionRegistry());
+        SocketMetrics socketMetrics = SocketMetrics.inMemory();
+        SocketService socketService = new SocketService(
+                socketMessageBroadcaster,
+                new SocketInputValidator(),
+                socketSessionMapper,
+                new RoomPresenceAggregator(socketSessionMapper, socketMessageBroadcaster, 0, false),
+                new SocketEventLogger(1),
+                socketMetrics,
+                new RoomMessageHistory(0, 0, 0, 0),
+                new MessageJournal(false, "", 0, 0, 0, 0, socketMetrics),
+                new SocketRateLimiter(socketSessionMapper, socketMetrics, new RateLimitPolicy(0, 0), new RateLimitPolicy(0, 0))
+        );
+
+        UUID organizationId = UUID.randomUUID();
+        UUID socketRoomId = UUID.randomUUID();
+        UUID senderSocketId = UUID.randomUUID();
+        UUID receiverSocketId = UUID.randomUUID();
+        socketSessionMapper.upsertSocketSession(senderSocketId, organizationId, List.of("chess"), socketRoomId, true);
+        socketSessionMapper.upsertSocketSession(receiverSocketId, organizationId, List.of("chess"), socketRoomId, true);
+        socketSessionMapper.bindStompSession("receiver", receiverSocketId);
+
+        SocketDTO otherOrganizationMessage = directMessage(senderSocketId, receiverSocketId, socketRoomId);
+        otherOrganizationMessage.setOrganizationId(UUID.randomUUID());
+        SocketSessionResponse batchResponse = socketService.sendSocketMessages(List.of(
+                otherOrganizationMessage,
+                directMessage(senderSocketId, receiverSocketId, UUID.randomUUID()),
+                directMessage(senderSocketId, receiverSocketId, socketRoomId)
+        ));
+
+        assertEquals("1 of 3 socket messages sent successfully", batchResponse.getResponseEntity().getBody());
+        assertEquals(1, destinations.size());
+        assertEquals(1, socketMetrics.getMeterRegistry().get("stompaas.socket.rejected").tag("reason", "organization_mismatch").counter().count());
+        assertEquals(1, socketMetrics.getMeterRegistry().get("stompaas.socket.rejected").tag("reason", "socket_room_not_found").counter().count());
+    }
+
+    private static SocketDTO directMessage(UUID senderSocketId, UUID receiverSocketId, UUID socketRoomId) {
+        return SocketDTO.builder()
+                .socketMessage("Hello")
+                .senderUsername("sender")
+                .senderSocketId(senderSocketId)
+                .receiverSocketId(receiverSocketId)
+                .socketRoomId(socketRoomId)
+                .messageType(MessageType.MESSAGE)
+                .build();
+    }
+}